@@ -0,0 +1,10 @@
+# Add project specific ProGuard rules here.
+# For more details, see
+#   http://developer.android.com/guide/developing/tools/proguard.html
+
+# Remove the debug and verbose log calls from the release builds (the hot paths are also guarded
+# by DebugLog.ENABLED, so their messages are not built at all).
+-assumenosideeffects class android.util.Log {
+    public static int v(...);
+    public static int d(...);
+}
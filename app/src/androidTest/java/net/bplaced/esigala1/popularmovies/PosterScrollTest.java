@@ -0,0 +1,299 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.ImageView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Scripted scroll of the grid against a local server of the pages and the posters, that reports
+ * the placeholder-visible rate: the share of the visible cells that show the placeholder instead
+ * of a poster, sampled on every frame.
+ *
+ * The server runs in the process of the test, on the port of the base URLs of the build, so the
+ * app must be built against it:
+ *
+ * ./gradlew :app:connectedAndroidTest -PtmdbBaseUrl=http://localhost:8089/3/
+ *     -PtmdbImageBaseUrl=http://localhost:8089/t/p/
+ *
+ * With the default base URLs the test is skipped. The latency of the posters and the speed of the
+ * flings are instrumentation arguments (e.g. -e imageLatencyMs 300 -e flingVelocity 6000).
+ */
+@RunWith(AndroidJUnit4.class)
+public class PosterScrollTest {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + PosterScrollTest.class.getSimpleName();
+
+    /* The defaults of the instrumentation arguments */
+    private static final String DEFAULT_IMAGE_LATENCY_MS = "150";
+    private static final String DEFAULT_FLING_VELOCITY = "4000";
+
+    /* The script: a number of flings down the grid, each followed by a pause of the user */
+    private static final int FLINGS = 12;
+    private static final long FLING_DURATION_MS = 1200;
+    private static final long PAUSE_MS = 400;
+
+    /* The interval of the samples (a frame at 60 fps) */
+    private static final long FRAME_MS = 16;
+
+    /* The maximum times to wait for the first content, and for the posters after the scroll */
+    private static final long FIRST_CONTENT_TIMEOUT_MS = 10000;
+    private static final long SETTLE_TIMEOUT_MS = 10000;
+
+    /* The limit of the placeholder-visible rate during the script */
+    private static final double MAX_PLACEHOLDER_RATE = 0.5;
+
+    /* The page and poster sizes of the synthetic responses */
+    private static final int PAGE_SIZE = 20;
+    private static final int TOTAL_PAGES = 500;
+    private static final int POSTER_WIDTH = 342;
+    private static final int POSTER_HEIGHT = 513;
+
+    @Rule
+    public final ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private MockWebServer mServer;
+    private Instrumentation mInstrumentation;
+    private Drawable.ConstantState mPlaceholderState;
+
+    @Before
+    public void setUp() throws IOException {
+        HttpUrl apiUrl = HttpUrl.parse(BuildConfig.TMDB_BASE_URL);
+        HttpUrl imageUrl = HttpUrl.parse(BuildConfig.TMDB_IMAGE_BASE_URL);
+        assumeTrue("The app is not built against a local server",
+                apiUrl != null && imageUrl != null
+                        && isLocal(apiUrl) && isLocal(imageUrl) && apiUrl.port() == imageUrl.port());
+
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        long imageLatencyMs = Long.parseLong(argument(arguments, "imageLatencyMs", DEFAULT_IMAGE_LATENCY_MS));
+
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new LocalDispatcher(apiUrl.encodedPath(), imageLatencyMs, poster()));
+        mServer.start(InetAddress.getByName(apiUrl.host()), apiUrl.port());
+
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mPlaceholderState = ContextCompat.getDrawable(InstrumentationRegistry.getTargetContext(),
+                R.drawable.ic_placeholder).getConstantState();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mServer != null) {
+            mServer.shutdown();
+        }
+    }
+
+    @Test
+    public void scriptedScroll_reportsThePlaceholderRate() {
+        int flingVelocity = Integer.parseInt(
+                argument(InstrumentationRegistry.getArguments(), "flingVelocity", DEFAULT_FLING_VELOCITY));
+        MainActivity activity = mActivityRule.launchActivity(null);
+        final RecyclerView recyclerView = activity.findViewById(R.id.rv);
+        waitForFirstContent(recyclerView);
+
+        /* The script: fling, sample every frame until the pause ends, and again */
+        int[] counts = new int[2];
+        for (int fling = 0; fling < FLINGS; fling++) {
+            final int velocity = flingVelocity;
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.fling(0, velocity);
+                }
+            });
+            long end = SystemClock.uptimeMillis() + FLING_DURATION_MS + PAUSE_MS;
+            while (SystemClock.uptimeMillis() < end) {
+                sample(recyclerView, counts);
+                SystemClock.sleep(FRAME_MS);
+            }
+        }
+        int visibleCells = counts[0];
+        int placeholderCells = counts[1];
+        double rate = visibleCells == 0 ? 0 : (double) placeholderCells / visibleCells;
+
+        Bundle results = new Bundle();
+        results.putInt("visibleCells", visibleCells);
+        results.putInt("placeholderCells", placeholderCells);
+        results.putDouble("placeholderRate", rate);
+        results.putInt("requests", mServer.getRequestCount());
+        mInstrumentation.sendStatus(0, results);
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "Placeholder-visible rate = %.3f (%d of %d sampled cells) ~ Requests = %d",
+                rate, placeholderCells, visibleCells, mServer.getRequestCount()));
+
+        assertTrue("Visible cells were sampled", visibleCells > 0);
+        assertTrue(String.format(Locale.US, "Placeholder-visible rate = %.3f", rate),
+                rate <= MAX_PLACEHOLDER_RATE);
+
+        /* Once the grid is at rest, every visible cell gets its poster */
+        long end = SystemClock.uptimeMillis() + SETTLE_TIMEOUT_MS;
+        int[] settled = new int[2];
+        do {
+            SystemClock.sleep(FRAME_MS * 10);
+            settled[0] = 0;
+            settled[1] = 0;
+            sample(recyclerView, settled);
+        } while (settled[1] > 0 && SystemClock.uptimeMillis() < end);
+        assertEquals("Placeholders left at rest", 0, settled[1]);
+    }
+
+    /**
+     * Method to count, on the main thread, the visible cells and the ones that show the placeholder.
+     *
+     * @param counts Receives the visible cells at index 0 and the placeholders at index 1.
+     */
+    private void sample(final RecyclerView recyclerView, final int[] counts) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < recyclerView.getChildCount(); i++) {
+                    ImageView poster = recyclerView.getChildAt(i).findViewById(R.id.rvi_image_view_poster);
+                    if (poster == null || poster.getBottom() <= 0 || poster.getTop() >= recyclerView.getHeight()) {
+                        continue;
+                    }
+                    counts[0]++;
+                    Drawable drawable = poster.getDrawable();
+                    if (drawable == null || drawable.getConstantState() == mPlaceholderState) {
+                        counts[1]++;
+                    }
+                }
+            }
+        });
+    }
+
+    private void waitForFirstContent(final RecyclerView recyclerView) {
+        long end = SystemClock.uptimeMillis() + FIRST_CONTENT_TIMEOUT_MS;
+        final int[] itemCount = new int[1];
+        while (SystemClock.uptimeMillis() < end) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    itemCount[0] = recyclerView.getAdapter() == null ? 0 : recyclerView.getAdapter().getItemCount();
+                }
+            });
+            if (itemCount[0] > 0) {
+                return;
+            }
+            SystemClock.sleep(FRAME_MS * 10);
+        }
+        throw new AssertionError("No content within " + FIRST_CONTENT_TIMEOUT_MS + " ms");
+    }
+
+    private static boolean isLocal(HttpUrl url) {
+        return "localhost".equals(url.host()) || "127.0.0.1".equals(url.host());
+    }
+
+    private static String argument(Bundle arguments, String key, String defaultValue) {
+        String value = arguments.getString(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @return a JPEG of the size of a w342 poster, served for every poster path.
+     */
+    private static byte[] poster() {
+        Bitmap bitmap = Bitmap.createBitmap(POSTER_WIDTH, POSTER_HEIGHT, Bitmap.Config.RGB_565);
+        new Canvas(bitmap).drawColor(Color.DKGRAY);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    /**
+     * Serves the list pages (every sort order gets the same synthetic pages) and, after the image
+     * latency, the same poster for every poster path. The poster paths are unique per run, so that
+     * no poster is served from the caches of an earlier run.
+     */
+    private static class LocalDispatcher extends Dispatcher {
+
+        private final String mApiPath;
+        private final long mImageLatencyMs;
+        private final byte[] mPoster;
+        private final long mRunId = System.currentTimeMillis();
+
+        LocalDispatcher(String apiPath, long imageLatencyMs, byte[] poster) {
+            mApiPath = apiPath;
+            mImageLatencyMs = imageLatencyMs;
+            mPoster = poster;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            if (url.encodedPath().startsWith("/t/p/")) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "image/jpeg")
+                        .setBody(new Buffer().write(mPoster))
+                        .setBodyDelay(mImageLatencyMs, TimeUnit.MILLISECONDS);
+            }
+            if (!url.encodedPath().startsWith(mApiPath)) {
+                return new MockResponse().setResponseCode(404);
+            }
+            String pageParameter = url.queryParameter("page");
+            int page = pageParameter == null ? 1 : Integer.parseInt(pageParameter);
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json;charset=utf-8")
+                    .setBody(page(page));
+        }
+
+        private String page(int page) {
+            StringBuilder json = new StringBuilder(PAGE_SIZE * 200);
+            json.append("{\"page\":").append(page)
+                    .append(",\"total_results\":").append(TOTAL_PAGES * PAGE_SIZE)
+                    .append(",\"total_pages\":").append(TOTAL_PAGES)
+                    .append(",\"results\":[");
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                int id = (page - 1) * PAGE_SIZE + i + 1;
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(id)
+                        .append(",\"vote_count\":").append(1000 + id)
+                        .append(",\"vote_average\":").append(5 + id % 50 / 10.0)
+                        .append(",\"popularity\":").append(10000.0 / id)
+                        .append(",\"original_title\":\"Movie ").append(id).append('"')
+                        .append(",\"poster_path\":\"/").append(mRunId).append('_').append(id).append(".jpg\"")
+                        .append(",\"overview\":\"Overview of movie ").append(id).append('"')
+                        .append(",\"release_date\":\"2018-03-").append(10 + id % 18).append("\"}");
+            }
+            json.append("]}");
+            return json.toString();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.bplaced.esigala1.popularmovies.data.PageFetchEngine;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.utilities.ImageLoader;
+import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.bplaced.esigala1.popularmovies.utilities.TMDBApi.SORT_ORDER_MOST_POPULAR;
+import static net.bplaced.esigala1.popularmovies.utilities.TMDBApi.SORT_ORDER_TOP_RATED;
+
+/**
+ * {@link CacheWarmingService} warms the caches in the background, so that a cold launch (and the
+ * first switch of the sort order) renders from local data instead of waiting for the network:
+ * the first {@link #WARM_PAGES} pages of both sort orders are revalidated into the repository
+ * (concurrently, see {@link PageFetchEngine}), and the posters of their movies (once per movie)
+ * are downloaded into the disk cache of the images, in the size of the grid cells.
+ *
+ * The job runs on an unmetered network only, while the device is either idle or charging. The
+ * JobScheduler requires all the constraints of a job, so there are two periodic jobs, one per
+ * alternative. Duplicate runs are collapsed:
+ * - {@link #schedule(Context)} does not reschedule a job that is already scheduled,
+ * - a run is skipped if another one is in progress, or if the caches were warmed less than
+ *   {@link #MIN_WARM_INTERVAL_MS} ago (e.g. by the other job).
+ * A run of the charging job that fails is retried with an exponential backoff; the idle job
+ * (that cannot have a backoff) is retried in the next idle window.
+ *
+ * The pages are requested with {@link TMDBApi.Priority#WARMING}, after the requests of the UI.
+ *
+ * To run the job at once (e.g. against the mock server, see the "mockserver" module):
+ * adb shell cmd jobscheduler run -f net.bplaced.esigala1.popularmovies 1
+ *
+ * Note: The JobScheduler is available from API 21 (Lollipop); on older devices there is no warming.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class CacheWarmingService extends JobService {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + CacheWarmingService.class.getSimpleName();
+
+    /* The ids of the jobs: while charging, and while idle */
+    private static final int JOB_ID_CHARGING = 1;
+    private static final int JOB_ID_IDLE = 2;
+
+    /* The period of the jobs, and the minimum time between two warmings */
+    private static final long WARM_PERIOD_MS = 12 * 60 * 60 * 1000L;
+    private static final long MIN_WARM_INTERVAL_MS = 4 * 60 * 60 * 1000L;
+
+    /* The initial backoff of a failed run (doubled on every failure) */
+    private static final long INITIAL_BACKOFF_MS = 60 * 1000L;
+
+    /* The sort orders to warm, and the number of their pages to warm */
+    private static final int WARM_PAGES = 2;
+    private static final String[] SORT_ORDERS = {SORT_ORDER_MOST_POPULAR, SORT_ORDER_TOP_RATED};
+
+    /* The preferences of the warming: the time of the last warming, and the poster width of the grid */
+    private static final String PREFERENCES = "cache_warming";
+    private static final String PREF_LAST_WARM_TIME = "last_warm_time";
+    private static final String PREF_POSTER_WIDTH = "poster_width";
+
+    /* True while a run is in progress (in this process) */
+    private static boolean sRunning;
+
+    /* The parameters of the run in progress, its page fetches, and its start time */
+    private JobParameters mParams;
+    private PageFetchEngine mEngine;
+    private long mStartTime;
+
+    /**
+     * Method to schedule the warming jobs, if they are not scheduled yet.
+     *
+     * @param context Any context.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        /* Rescheduling a pending job would restart its period, so keep the pending ones */
+        boolean chargingScheduled = false;
+        boolean idleScheduled = false;
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            chargingScheduled |= job.getId() == JOB_ID_CHARGING;
+            idleScheduled |= job.getId() == JOB_ID_IDLE;
+        }
+        ComponentName service = new ComponentName(context, CacheWarmingService.class);
+        if (!chargingScheduled) {
+            scheduler.schedule(newJob(JOB_ID_CHARGING, service)
+                    .setRequiresCharging(true)
+                    .setBackoffCriteria(INITIAL_BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                    .build());
+        }
+        if (!idleScheduled) {
+            scheduler.schedule(newJob(JOB_ID_IDLE, service).setRequiresDeviceIdle(true).build());
+        }
+        Log.d(LOG_TAG, "schedule(): Charging job " + (chargingScheduled ? "kept" : "scheduled")
+                + " ~ Idle job " + (idleScheduled ? "kept" : "scheduled"));
+    }
+
+    private static JobInfo.Builder newJob(int jobId, ComponentName service) {
+        return new JobInfo.Builder(jobId, service)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setPeriodic(WARM_PERIOD_MS)
+                .setPersisted(true);
+    }
+
+    /**
+     * Method to remember the width of the posters of the grid, so that the posters are warmed in
+     * the size that the grid requests.
+     *
+     * @param context     Any context.
+     * @param posterWidth The width (in pixels) of the posters of the grid cells.
+     */
+    public static void setGridPosterWidth(Context context, int posterWidth) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES, MODE_PRIVATE);
+        if (preferences.getInt(PREF_POSTER_WIDTH, 0) != posterWidth) {
+            preferences.edit().putInt(PREF_POSTER_WIDTH, posterWidth).apply();
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        SharedPreferences preferences = getSharedPreferences(PREFERENCES, MODE_PRIVATE);
+        long sinceLastWarm = System.currentTimeMillis() - preferences.getLong(PREF_LAST_WARM_TIME, 0);
+        if (sRunning || (sinceLastWarm >= 0 && sinceLastWarm < MIN_WARM_INTERVAL_MS)) {
+            Log.d(LOG_TAG, "onStartJob(): Job " + params.getJobId() + " skipped ~ Running = " + sRunning
+                    + " ~ Last warming " + sinceLastWarm / 1000 + " s ago.");
+            return false;
+        }
+        Log.d(LOG_TAG, "onStartJob(): Job " + params.getJobId());
+        sRunning = true;
+        mParams = params;
+        mStartTime = SystemClock.elapsedRealtime();
+        final int posterWidth = preferences.getInt(PREF_POSTER_WIDTH, NetworkUtils.DEFAULT_POSTER_WIDTH);
+        /* The pages of both sort orders are fetched concurrently; their posters once per movie */
+        mEngine = new PageFetchEngine(this,
+                PageFetchEngine.PageRequest.pages(SORT_ORDERS, TMDBApi.FIRST_PAGE, WARM_PAGES),
+                TMDBApi.Priority.WARMING, false, PageFetchEngine.DEFAULT_MAX_IN_FLIGHT);
+        mEngine.start(new PageFetchEngine.Listener() {
+            @Override
+            public void onPage(PageFetchEngine.PageRequest request, MoviePage page) {
+                /* The page is in the repository now; the posters follow once all the pages are settled */
+            }
+
+            @Override
+            public void onComplete(MovieStore movies, int failures) {
+                onPagesWarmed(params, movies, failures, posterWidth);
+            }
+        });
+        /* The work continues in the background */
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Log.d(LOG_TAG, "onStopJob(): Job " + params.getJobId() + " stopped (e.g. the network is metered now).");
+        /* The requests in flight complete into the caches anyway; the rest is retried later */
+        if (mEngine != null) {
+            mEngine.cancel();
+            mEngine = null;
+        }
+        mParams = null;
+        sRunning = false;
+        return true;
+    }
+
+    /**
+     * Method to download the posters of the warmed pages (the movies are already de-duplicated).
+     */
+    private void onPagesWarmed(final JobParameters params, MovieStore movies, final int failedPages,
+                               int posterWidth) {
+        if (params != mParams) {
+            return;
+        }
+        List<String> urls = new ArrayList<>(movies.size());
+        for (int row = 0; row < movies.size(); row++) {
+            if (movies.getImageThumbnail(row) != null) {
+                urls.add(NetworkUtils.buildImageURL(movies.getImageThumbnail(row), posterWidth));
+            }
+        }
+        ImageLoader.prefetchToDisk(this, urls, new TMDBApi.AsyncTaskCompleteListener<Integer>() {
+            @Override
+            public void onTaskComplete(Integer failedPosters) {
+                finish(params, failedPages > 0 || failedPosters > 0);
+            }
+        });
+    }
+
+    /**
+     * Method to finish the job: on success the warming is recorded, on failure the job is retried
+     * with a backoff.
+     *
+     * @param params The parameters of the run; a stopped run is ignored.
+     */
+    private void finish(JobParameters params, boolean failed) {
+        if (params != mParams) {
+            return;
+        }
+        mEngine = null;
+        Log.d(LOG_TAG, "finish(): Job " + mParams.getJobId() + " finished in "
+                + (SystemClock.elapsedRealtime() - mStartTime) + " ms ~ Failed = " + failed);
+        if (!failed) {
+            getSharedPreferences(PREFERENCES, MODE_PRIVATE).edit()
+                    .putLong(PREF_LAST_WARM_TIME, System.currentTimeMillis()).apply();
+        }
+        sRunning = false;
+        jobFinished(mParams, failed);
+        mParams = null;
+    }
+}
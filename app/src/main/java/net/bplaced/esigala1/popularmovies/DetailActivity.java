@@ -18,14 +18,20 @@ package net.bplaced.esigala1.popularmovies;
 import android.content.Intent;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 
+import net.bplaced.esigala1.popularmovies.data.MovieRepository;
 import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.utilities.DebugLog;
+import net.bplaced.esigala1.popularmovies.utilities.ImageLoader;
 import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
@@ -55,22 +61,72 @@ public class DetailActivity extends AppCompatActivity {
 
         if (intentThatStartedThisActivity != null) {
             /* If the intent has extended data associated with the given key name, then... */
-            if (intentThatStartedThisActivity.hasExtra(MainActivity.KEY_PARCELABLE_DATA)) {
-                /* Retrieve extended data (parcelable data) from the intent */
-                Movie mItemData = (Movie) intentThatStartedThisActivity.getParcelableExtra(MainActivity.KEY_PARCELABLE_DATA);
-                /* Set the data to the corresponding views */
-                tvOriginalTitle.setText(getResources().getString(R.string.item_original_title, mItemData.getOriginalTitle()));
-                tvReleaseDate.setText(getResources().getString(R.string.item_release_date, mItemData.getReleaseDate()));
-                tvRating.setText(getResources().getString(R.string.item_rating, mItemData.getRating()));
-                tvOverview.setText(getResources().getString(R.string.item_overview, mItemData.getOverview()));
-                /* Set the URI to the ImageView */
-                Picasso.with(this)
-                        .load(NetworkUtils.buildImageURL(mItemData.getImageThumbnail()))
-                        .placeholder(R.drawable.ic_placeholder)
-                        .error(R.drawable.ic_placeholder)
-                        .fit()
-                        .into(ivPoster); // ImageView
+            if (intentThatStartedThisActivity.hasExtra(MainActivity.KEY_MOVIE_ID)) {
+                /* Retrieve the id of the movie from the intent, and the movie from the repository */
+                int movieId = intentThatStartedThisActivity.getIntExtra(MainActivity.KEY_MOVIE_ID, 0);
+                final long startTime = SystemClock.elapsedRealtime();
+                MovieRepository.getInstance(this).loadMovie(movieId, new TMDBApi.AsyncTaskCompleteListener<Movie>() {
+                    @Override
+                    public void onTaskComplete(Movie movie) {
+                        if (DebugLog.ENABLED) {
+                            Log.d(LOG_TAG, "onTaskComplete(): Movie resolved in "
+                                    + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                        }
+                        /* The activity may be gone while the movie was read from the disk */
+                        if (isFinishing()) {
+                            return;
+                        }
+                        if (movie == null) {
+                            Log.e(LOG_TAG, "onTaskComplete(): The movie is not cached.");
+                            finish();
+                            return;
+                        }
+                        displayMovie(movie);
+                    }
+                });
             }
         }
     }
+
+    /**
+     * Method to set the data of the movie to the corresponding views.
+     */
+    private void displayMovie(final Movie movie) {
+        tvOriginalTitle.setText(getResources().getString(R.string.item_original_title, movie.getOriginalTitle()));
+        tvReleaseDate.setText(getResources().getString(R.string.item_release_date, movie.getReleaseDate()));
+        tvRating.setText(getResources().getString(R.string.item_rating, movie.getRating()));
+        tvOverview.setText(getResources().getString(R.string.item_overview, movie.getOverview()));
+        /* The poster is sized from the width of its view, which is known once the view is measured */
+        if (ivPoster.getWidth() > 0) {
+            displayPoster(movie.getImageThumbnail());
+            return;
+        }
+        ivPoster.setImageResource(R.drawable.ic_placeholder);
+        ivPoster.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                ivPoster.getViewTreeObserver().removeOnPreDrawListener(this);
+                displayPoster(movie.getImageThumbnail());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Method to set the poster to the (measured) ImageView, downloaded in the smallest size that
+     * covers the width of the view (at most w780), and decoded no wider than the view.
+     */
+    private void displayPoster(String imageName) {
+        int viewWidth = ivPoster.getWidth();
+        /* Set the URI to the ImageView */
+        RequestCreator request = ImageLoader.get(this)
+                .load(NetworkUtils.buildImageURL(imageName, viewWidth))
+                .placeholder(R.drawable.ic_placeholder)
+                .error(R.drawable.ic_placeholder);
+        /* A poster wider than the view is scaled down while it is decoded; a narrower one is scaled up on screen */
+        if (viewWidth > 0 && viewWidth < NetworkUtils.selectPosterWidth(viewWidth)) {
+            request.resize(viewWidth, 0);
+        }
+        request.into(ivPoster); // ImageView
+    }
 }
@@ -0,0 +1,78 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+
+/**
+ * {@link ImageRequestScheduler} governs the poster requests of the grid by its scroll state.
+ *
+ * During a fling most of the cells that the RecyclerView binds ahead of the viewport are scrolled
+ * past before their poster arrives, so their poster requests (tagged with
+ * {@link MyRVAdapter#OFFSCREEN_TAG}) and the prefetches of the {@link PosterPrefetcher} are paused
+ * while the grid is settling, and resumed as soon as it is idle or dragged again. The posters of
+ * the cells on screen ({@link MyRVAdapter#VISIBLE_TAG}) are never paused: a cell that is attached
+ * during the fling moves its request to that tag. The requests of the cells that are recycled in
+ * the meantime are cancelled by the adapter (see
+ * {@link MyRVAdapter#onViewRecycled(MyRVAdapter.MyViewHolder)}).
+ */
+
+class ImageRequestScheduler extends RecyclerView.OnScrollListener {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + ImageRequestScheduler.class.getSimpleName();
+
+    private final Picasso mPicasso;
+    private final PosterPrefetcher mPrefetcher;
+
+    /* True while the requests are paused */
+    private boolean mPaused;
+
+    /**
+     * Constructor
+     *
+     * @param picasso    The Picasso instance that loads the posters of the grid.
+     * @param prefetcher The prefetcher of the posters of the grid.
+     */
+    ImageRequestScheduler(Picasso picasso, PosterPrefetcher prefetcher) {
+        this.mPicasso = picasso;
+        this.mPrefetcher = prefetcher;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_SETTLING) {
+            pause();
+        } else {
+            resume();
+        }
+    }
+
+    /**
+     * Method to resume any paused request, e.g. before the grid is destroyed.
+     */
+    void release() {
+        resume();
+    }
+
+    private void pause() {
+        if (mPaused) {
+            return;
+        }
+        Log.d(LOG_TAG, "pause(): Fling started.");
+        mPaused = true;
+        mPicasso.pauseTag(MyRVAdapter.OFFSCREEN_TAG);
+        mPrefetcher.pause();
+    }
+
+    private void resume() {
+        if (!mPaused) {
+            return;
+        }
+        Log.d(LOG_TAG, "resume(): Scroll settled.");
+        mPaused = false;
+        mPicasso.resumeTag(MyRVAdapter.OFFSCREEN_TAG);
+        mPrefetcher.resume();
+    }
+}
@@ -15,25 +15,37 @@
  */
 package net.bplaced.esigala1.popularmovies;
 
+import android.content.Context;
 import android.content.Intent;
 import android.support.v7.app.AppCompatActivity;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.Surface;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import net.bplaced.esigala1.popularmovies.data.MovieRepository;
 import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieRanking;
+import net.bplaced.esigala1.popularmovies.utilities.ImageLoader;
 import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
+import net.bplaced.esigala1.popularmovies.utilities.StartupTrace;
 import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
 
+import java.util.List;
+
 import static net.bplaced.esigala1.popularmovies.utilities.TMDBApi.SORT_ORDER_MOST_POPULAR;
 import static net.bplaced.esigala1.popularmovies.utilities.TMDBApi.SORT_ORDER_TOP_RATED;
 
@@ -41,10 +53,10 @@ import static net.bplaced.esigala1.popularmovies.utilities.TMDBApi.SORT_ORDER_TO
 public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVAdapterOnClickHandler {
 
     /* Tag for the log messages. */
-    private final String LOG_TAG = "DEBUGGING " + MainActivity.class.getSimpleName();
+    private static final String LOG_TAG = "DEBUGGING " + MainActivity.class.getSimpleName();
 
-    /* Key to pass the parcelable data between activities within an intent */
-    public static final String KEY_PARCELABLE_DATA = "key_parcelable_data";
+    /* Key to pass the id of a movie between activities within an intent */
+    public static final String KEY_MOVIE_ID = "key_movie_id";
 
     /* Set integers for the number of grid columns depending on the orientation of the device */
     private static final int GRID_COLUMNS_PORTRAIT = 3;
@@ -53,18 +65,32 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
     /* Set strings to save the state of the activity */
     private static final String STATE_SORT_ORDER = "sort_order";
 
+    /* The maximum number of movies of the search results */
+    private static final int SEARCH_RESULTS_LIMIT = 100;
+
     private MyRVAdapter mRVAdapter;
+    /* The adapter of the search results, in place of mRVAdapter while the user searches */
+    private MyRVAdapter mSearchAdapter;
+    /* The latest query of the search, or null while the pages are displayed; older results are dropped */
+    private String mSearchQuery;
+    private PagedMovieLoader mPagedLoader;
+    private PosterPrefetcher mPosterPrefetcher;
+    private ImageRequestScheduler mImageScheduler;
     private RecyclerView mRecyclerView;
 
     private TextView mErrorMessageDisplay;
     private ProgressBar mLoadingIndicator;
 
+    /* The time that the current load started, to measure the time to first content (0 when measured) */
+    private long loadStartTime;
+
     /* String to keep the current sort order (Default: Most Popular) */
     private String sortOrderCurrent = SORT_ORDER_MOST_POPULAR;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         Log.d(LOG_TAG, "onCreate()");
+        StartupTrace.mark(StartupTrace.PHASE_ACTIVITY_CREATE);
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
@@ -87,7 +113,8 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
          * A GridLayoutManager is responsible for measuring and positioning item views within a
          * RecyclerView into a grid.
          */
-        mRecyclerView.setLayoutManager(new GridLayoutManager(this, getGridColumns()));
+        final int gridColumns = getGridColumns();
+        mRecyclerView.setLayoutManager(new GridLayoutManager(this, gridColumns));
         /*
          * The RecyclerViewAdapter is responsible for linking our data with the Views that
          * will end up displaying our data.
@@ -97,6 +124,29 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
         /* Set the adapter for the RecyclerView */
         mRecyclerView.setAdapter(mRVAdapter);
 
+        /* The posters are downloaded in the smallest size that covers a grid cell */
+        mRVAdapter.setPosterWidth(getPosterWidth(gridColumns), gridColumns);
+
+        /* The search results are displayed in the same grid, by their own adapter */
+        mSearchAdapter = new MyRVAdapter(this);
+        mSearchAdapter.setPosterWidth(getPosterWidth(gridColumns), gridColumns);
+
+        /* The loader requests the next pages while the user scrolls (infinite scroll) */
+        FetchDataTaskCompleteListener fetchListener = new FetchDataTaskCompleteListener();
+        mPagedLoader = new PagedMovieLoader(this, mRVAdapter, fetchListener, fetchListener);
+        mRecyclerView.addOnScrollListener(mPagedLoader);
+
+        /* The prefetcher warms the image cache with the posters of the next rows in the direction of travel */
+        mPosterPrefetcher = new PosterPrefetcher(ImageLoader.get(this), mRVAdapter, gridColumns);
+        mRecyclerView.addOnScrollListener(mPosterPrefetcher);
+
+        /* The scheduler pauses the poster requests during a fling and resumes them when it settles */
+        mImageScheduler = new ImageRequestScheduler(ImageLoader.get(this), mPosterPrefetcher);
+        mRecyclerView.addOnScrollListener(mImageScheduler);
+
+        /* The tracker reports the decoded bitmaps and the GC pauses per 100 scrolled rows */
+        mRecyclerView.addOnScrollListener(new ScrollMemoryTracker(ImageLoader.get(this), gridColumns));
+
         /* ------------ If there is a saved state, then restore it!! ------------ */
         if (savedInstanceState != null) {
             Log.d(LOG_TAG, "A saved instance state found...");
@@ -105,6 +155,92 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
 
         /* The views are setup, so load the data. */
         loadData();
+
+        /* The start-up timeline: the first frame, and then the first poster drawn (once per process) */
+        StartupTrace.mark(StartupTrace.PHASE_ACTIVITY_CREATED);
+        markOnNextDraw(getWindow().getDecorView(), StartupTrace.PHASE_INITIAL_DISPLAY, null);
+        if (!StartupTrace.isMarked(StartupTrace.PHASE_FULL_DISPLAY)) {
+            mRVAdapter.setOnFirstPosterListener(new Runnable() {
+                @Override
+                public void run() {
+                    markOnNextDraw(mRecyclerView, StartupTrace.PHASE_FULL_DISPLAY, new Runnable() {
+                        @Override
+                        public void run() {
+                            reportFullDisplay();
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Method to mark a phase of the start-up (see {@link StartupTrace}) when the next frame of
+     * the view is about to be drawn.
+     *
+     * @param then To run if the phase was marked then (i.e. for the first time), or null.
+     */
+    private static void markOnNextDraw(final View view, final String phase, final Runnable then) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                if (StartupTrace.mark(phase) && then != null) {
+                    then.run();
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Method to report that the Activity is fully drawn (the first posters are on screen), to
+     * the system and to the log with the whole start-up timeline.
+     */
+    private void reportFullDisplay() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            try {
+                reportFullyDrawn();
+            } catch (SecurityException e) {
+                /* Some API 19 builds require the UPDATE_DEVICE_STATS permission */
+                Log.e(LOG_TAG, "reportFullDisplay(): " + e.getMessage());
+            }
+        }
+        Log.d(LOG_TAG, "reportFullDisplay(): " + StartupTrace.summary());
+    }
+
+    @Override
+    protected void onDestroy() {
+        Log.d(LOG_TAG, "onDestroy()");
+        /* The requests in flight keep running for the recreated Activity, but must not reach this one */
+        mPagedLoader.release();
+        mRecyclerView.removeOnScrollListener(mPagedLoader);
+        mPosterPrefetcher.reset();
+        mRecyclerView.removeOnScrollListener(mPosterPrefetcher);
+        mImageScheduler.release();
+        mRecyclerView.removeOnScrollListener(mImageScheduler);
+        mSearchQuery = null;
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        /* Report how well the poster caches served the grid while it was visible */
+        ImageLoader.logCacheStats();
+        /* Report the end-to-end latencies of the loads */
+        Log.d(LOG_TAG, "onStop(): " + TMDBApi.getLoadLatency().summary());
+        for (TMDBApi.Priority priority : TMDBApi.Priority.values()) {
+            Log.d(LOG_TAG, "onStop(): " + TMDBApi.getLoadLatency(priority).summary());
+        }
+        /* Report how often the rate limiter held the requests back */
+        Log.d(LOG_TAG, "onStop(): Rate limiter ~ " + TMDBApi.getLimiterStats());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ImageLoader.onTrimMemory(level);
     }
 
     @Override
@@ -118,15 +254,25 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
      * Method to get the number of grid columns depending on the orientation of the device.
      */
     public int getGridColumns(){
+        return getGridColumns(this);
+    }
+
+    /**
+     * Method to get the number of grid columns depending on the orientation of the device.
+     *
+     * @param context Any context, e.g. to compute the grid before the Activity is created.
+     */
+    static int getGridColumns(Context context){
         Log.d(LOG_TAG, "getGridColumns()");
+        WindowManager windowManager = (WindowManager) context.getSystemService(WINDOW_SERVICE);
         /* If the WindowManager is null, then...  */
-        if (((WindowManager) getSystemService(WINDOW_SERVICE)) == null) {
+        if (windowManager == null) {
             Log.e(LOG_TAG, "Unable to retrieve the WindowManager for accessing the system's window manager.");
             /* Return the default number of columns. */
             return GRID_COLUMNS_PORTRAIT;
         }
         /* Get the orientation of the device */
-        final int rotation = ((WindowManager) getSystemService(WINDOW_SERVICE)).getDefaultDisplay().getOrientation();
+        final int rotation = windowManager.getDefaultDisplay().getOrientation();
         /* Return the number of grid columns depending on the orientation of the device */
         switch (rotation) {
             case Surface.ROTATION_0:
@@ -144,27 +290,48 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
         }
     }
 
+    /**
+     * Method to get the width (in pixels) of a poster of the grid, i.e. the width of a grid cell
+     * without its padding.
+     *
+     * @param gridColumns The number of grid columns.
+     */
+    private int getPosterWidth(int gridColumns) {
+        return getPosterWidth(this, gridColumns);
+    }
+
+    /**
+     * Method to get the width (in pixels) of a poster of the grid, i.e. the width of a grid cell
+     * without its padding.
+     *
+     * @param context     Any context, e.g. to compute the grid before the Activity is created.
+     * @param gridColumns The number of grid columns.
+     */
+    static int getPosterWidth(Context context, int gridColumns) {
+        int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+        int cellPadding = 2 * context.getResources().getDimensionPixelSize(R.dimen.activity_margin);
+        return Math.max(screenWidth / gridColumns - cellPadding, 1);
+    }
+
     /**
      * This method will get the user's preferred shorting option, and then tell some
      * background method to get the data in the background.
      */
     private void loadData() {
         Log.d(LOG_TAG, "loadData()");
-        /* If the device does not have an internet connection, then... */
-        if (!NetworkUtils.hasInternetConnection(this)){
-            showErrorMessage(true);
-            return;
-        }
         /* Make the View for the data visible and hide the error message */
         showDataView();
 
-        /* Fetch the data from the web asynchronous using Retrofit */
-        TMDBApi the_movie_database_api = new TMDBApi(new FetchDataTaskCompleteListener());
-        /* Start the network transactions */
-        the_movie_database_api.start(sortOrderCurrent);
+        /*
+         * Load the first page from the cache and/or the web (the next pages follow on scroll).
+         * Note: Without an internet connection the cached pages are still displayed.
+         */
+        loadStartTime = SystemClock.elapsedRealtime();
+        mPosterPrefetcher.reset();
 
-        /* Display the loading indicator */
+        /* Display the loading indicator (before the start, which may deliver at once) */
         displayLoadingIndicator(true);
+        mPagedLoader.start(sortOrderCurrent);
     }
 
     public static void afterResponse(){
@@ -176,10 +343,23 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
      */
     private void refreshData(){
         Log.d(LOG_TAG, "refreshData()");
-        mRVAdapter.setData(null);
+        /*
+         * Loading starts again from the first page, so the pages in memory are removed. The cached
+         * movies are ranked locally in the new sort order until its first page arrives.
+         */
         loadData();
     }
 
+    /**
+     * This method will revalidate the displayed data, keeping it on screen. Only the pages that
+     * have changed on the server are downloaded and replaced.
+     */
+    private void revalidateData(){
+        Log.d(LOG_TAG, "revalidateData()");
+        showDataView();
+        mPagedLoader.refresh();
+    }
+
     /**
      * This method will make the View for the data visible and hide the error message.
      */
@@ -215,18 +395,22 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
      */
     private void setSortOrder(String sortOrder){
         Log.d(LOG_TAG, "setSortOrder()");
-        // If the user selected the MOST POPULAR sort order, then...
-        if (sortOrder.equals(SORT_ORDER_MOST_POPULAR)){
-            Log.d(LOG_TAG, "#Sort Order: Most Popular");
-            // Initialize the variable.
-            sortOrderCurrent = SORT_ORDER_MOST_POPULAR;
-        }
-        // The user selected the TOP RATED sort order, so...
-        else {
-            Log.d(LOG_TAG, "#Sort Order: Top Rated");
-            // Initialize the variable.
-            sortOrderCurrent = SORT_ORDER_TOP_RATED;
+        switch (sortOrder){
+            case SORT_ORDER_MOST_POPULAR:
+            case SORT_ORDER_TOP_RATED:
+                Log.d(LOG_TAG, "#Sort Order: " + sortOrder);
+                break;
+            // The local sort orders rank the cached movies, without an endpoint of their own.
+            case MovieRanking.SORT_ORDER_NEWEST:
+            case MovieRanking.SORT_ORDER_HIGHEST_RATED:
+                Log.d(LOG_TAG, "#Sort Order: " + sortOrder + " (local)");
+                break;
+            default:
+                Log.e(LOG_TAG, "setSortOrder(): Unknown sort order " + sortOrder);
+                return;
         }
+        // Initialize the variable.
+        sortOrderCurrent = sortOrder;
     }
 
     /**
@@ -259,10 +443,87 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
         MenuInflater inflater = getMenuInflater();
         /* Use the inflater's inflate method to inflate our menu layout to this menu */
         inflater.inflate(R.menu.main_menu, menu);
+
+        /* Every keystroke searches the cached movies, without any request */
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                showSearchResults(false);
+                return true;
+            }
+        });
         /* Return true so that the menu is displayed in the Toolbar */
         return true;
     }
 
+    /**
+     * This method will display the cached movies that match the query in place of the pages of
+     * the sort order, or the pages again if the query is empty.
+     */
+    private void search(final String query) {
+        if (query.trim().isEmpty()) {
+            showSearchResults(false);
+            return;
+        }
+        mSearchQuery = query;
+        final long startTime = System.nanoTime();
+        MovieRepository.getInstance(this).searchMovies(query, SEARCH_RESULTS_LIMIT,
+                new TMDBApi.AsyncTaskCompleteListener<List<Movie>>() {
+                    @Override
+                    public void onTaskComplete(List<Movie> results) {
+                        /* The user has typed on, closed the search or left the screen meanwhile */
+                        if (!query.equals(mSearchQuery)) {
+                            return;
+                        }
+                        long searchTime = System.nanoTime() - startTime;
+                        Log.d(LOG_TAG, "search(): Query = \"" + query + "\" ~ Results = " + results.size()
+                                + " ~ Search time = " + searchTime / 1000 + " us");
+
+                        mSearchAdapter.clearData();
+                        if (!results.isEmpty()) {
+                            mSearchAdapter.appendPage(new MoviePage(sortOrderCurrent, TMDBApi.FIRST_PAGE,
+                                    TMDBApi.FIRST_PAGE, results.toArray(new Movie[results.size()])));
+                        }
+                        showSearchResults(true);
+                    }
+                });
+    }
+
+    /**
+     * This method will display either the search results or the pages of the sort order.
+     */
+    private void showSearchResults(boolean show) {
+        MyRVAdapter adapter = show ? mSearchAdapter : mRVAdapter;
+        if (mRecyclerView.getAdapter() != adapter) {
+            mRecyclerView.setAdapter(adapter);
+        }
+        if (!show) {
+            mSearchQuery = null;
+            mSearchAdapter.clearData();
+        }
+    }
+
     /**
      * Prepare the Screen's standard options menu to be displayed.
      * Note: Invoked by the method onCreateOptionsMenu() or invalidateOptionsMenu().
@@ -280,6 +541,14 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
                 // Check the menu item "Top Rated"
                 menu.findItem(R.id.action_sort_top_rated).setChecked(true);
                 break;
+            case MovieRanking.SORT_ORDER_NEWEST:
+                // Check the menu item "Newest"
+                menu.findItem(R.id.action_sort_newest).setChecked(true);
+                break;
+            case MovieRanking.SORT_ORDER_HIGHEST_RATED:
+                // Check the menu item "Highest Rated"
+                menu.findItem(R.id.action_sort_highest_rated).setChecked(true);
+                break;
             default:
                 Log.e(LOG_TAG, "onPrepareOptionsMenu(): No case matched.");
                 break;
@@ -296,8 +565,8 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
 
         switch (id){
             case R.id.action_refresh:
-                // Refresh the data.
-                refreshData();
+                // Revalidate the data (the grid stays in place if nothing has changed).
+                revalidateData();
                 return true;
             case R.id.action_sort_most_popular:
                 // Check the item
@@ -315,6 +584,22 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
                 // Refresh the data.
                 refreshData();
                 return true;
+            case R.id.action_sort_newest:
+                // Check the item
+                item.setChecked(true);
+                // Change the sort order.
+                setSortOrder(MovieRanking.SORT_ORDER_NEWEST);
+                // Refresh the data.
+                refreshData();
+                return true;
+            case R.id.action_sort_highest_rated:
+                // Check the item
+                item.setChecked(true);
+                // Change the sort order.
+                setSortOrder(MovieRanking.SORT_ORDER_HIGHEST_RATED);
+                // Refresh the data.
+                refreshData();
+                return true;
             default:
                 Log.e(LOG_TAG, "onOptionsItemSelected(): No case matched.");
                 // The menu item was not handled, so call the superclass implementation of
@@ -337,8 +622,13 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
         Log.d(LOG_TAG,"onClickItem()");
         /* Create an intent in order to launch the DetailActivity */
         Intent intentToStartDetailActivity = new Intent(this, DetailActivity.class);
-        /* Add extended data to the intent */
-        intentToStartDetailActivity.putExtra(KEY_PARCELABLE_DATA, dataForClickedItem);
+        /*
+         * Add the id of the movie to the intent; the DetailActivity resolves it against the
+         * repository, so the movie itself does not go through a Binder transaction. The movie is
+         * also stored on the disk, so that the id resolves after a process death.
+         */
+        MovieRepository.getInstance(this).putMovie(dataForClickedItem);
+        intentToStartDetailActivity.putExtra(KEY_MOVIE_ID, dataForClickedItem.getId());
         /* Launch the Activity */
         startActivity(intentToStartDetailActivity);
     }
@@ -348,22 +638,38 @@ public class MainActivity extends AppCompatActivity implements MyRVAdapter.MyRVA
      * interface "AsyncTaskCompleteListener<T>" (included in the separate class {@link TMDBApi}).
      */
     public class FetchDataTaskCompleteListener
-            implements TMDBApi.AsyncTaskCompleteListener<Movie[]> {
+            implements TMDBApi.AsyncTaskCompleteListener<MoviePage>, PagedMovieLoader.ProvisionalPageListener {
 
         /* Tag for the log messages. */
         private final String LOG_TAG = "DEBUGGING " + FetchDataTaskCompleteListener.class.getSimpleName();
 
         @Override
-        public void onTaskComplete(Movie[] fetchedData) {
+        public void onTaskComplete(MoviePage fetchedData) {
             Log.d(LOG_TAG,"onTaskComplete()");
             /* Hide the loading indicator */
             displayLoadingIndicator(false);
+            /* The page has already been added to the adapter by the PagedMovieLoader */
             if (fetchedData != null) {
+                StartupTrace.mark(StartupTrace.PHASE_FIRST_CONTENT);
+                /* Measure the time from the start of the load until the first content is available */
+                if (loadStartTime != 0) {
+                    Log.d(LOG_TAG, "Time to first content = " + (SystemClock.elapsedRealtime() - loadStartTime)
+                            + " ms ~ From cache = " + fetchedData.isFromCache());
+                    loadStartTime = 0;
+                }
                 showDataView();
-                mRVAdapter.setData(fetchedData);
-            } else {
-                showErrorMessage(false);
             }
+            /* Show the error only if there is nothing to display; a failed next page is requested again on scroll */
+            else if (mRVAdapter.getItemCount() == 0) {
+                showErrorMessage(!NetworkUtils.hasInternetConnection(MainActivity.this));
+            }
+        }
+
+        @Override
+        public void onProvisionalPage(MoviePage page) {
+            Log.d(LOG_TAG, "onProvisionalPage()");
+            /* The cached movies are displayed, but the first page is still loading */
+            showDataView();
         }
     }
 }
@@ -0,0 +1,50 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.support.v7.util.DiffUtil;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+
+/**
+ * {@link DiffUtil.Callback} to compute the difference between the old content of a page (a
+ * snapshot of its rows) and its new content, by the stable identity of the movies (TMDB id).
+ *
+ * Note: Both lists are immutable, so the difference can be computed on a background thread.
+ */
+
+class MovieDiffCallback extends DiffUtil.Callback {
+
+    private final MovieStore oldMovies;
+    private final Movie[] newMovies;
+
+    /**
+     * Constructor
+     *
+     * @param oldMovies The old content; a snapshot that is not modified while the diff is computed.
+     * @param newMovies The new content.
+     */
+    MovieDiffCallback(MovieStore oldMovies, Movie[] newMovies) {
+        this.oldMovies = oldMovies;
+        this.newMovies = newMovies;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldMovies.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newMovies.length;
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldMovies.getId(oldItemPosition) == newMovies[newItemPosition].getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldMovies.hasSameContent(oldItemPosition, newMovies[newItemPosition]);
+    }
+}
@@ -16,6 +16,12 @@
 package net.bplaced.esigala1.popularmovies;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.AdapterListUpdateCallback;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -23,9 +29,19 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.utilities.DebugLog;
+import net.bplaced.esigala1.popularmovies.utilities.ImageLoader;
 import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
 
 /**
@@ -41,7 +57,70 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
 
     private Context mContext;
 
-    private Movie[] mSourceData;
+    /* The maximum number of pages to keep in memory; older pages are dropped from the other end */
+    static final int MAX_PAGES_IN_MEMORY = 50;
+
+    /* The movies of the pages that are currently in memory, ordered by page number without gaps */
+    private final MovieStore mStore = new MovieStore();
+
+    /* The bookkeeping of every page in memory, in the same order */
+    private final ArrayList<PageInfo> mPages = new ArrayList<>();
+
+    /* Source of the versions of the pages */
+    private int mVersion;
+
+    /* Background thread to compute the differences of the replaced pages */
+    private static final ExecutorService sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    /* Handler to apply the differences on the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The threads of a replacement: the diff is computed on the first one, and applied on the second one */
+    private Executor mDiffExecutor = sDiffExecutor;
+    private Executor mMainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    };
+
+    /* The receiver of all the updates of the data (the RecyclerView, through this adapter) */
+    private ListUpdateCallback mUpdateCallback = new AdapterListUpdateCallback(this);
+
+    /* The width (in pixels) of the posters of the grid cells, to pick the poster size to download */
+    private int mPosterWidth = NetworkUtils.DEFAULT_POSTER_WIDTH;
+
+    /* The height (in pixels) of the posters of the grid cells; the posters have a 2:3 aspect ratio */
+    private int mPosterHeight = NetworkUtils.DEFAULT_POSTER_WIDTH * 3 / 2;
+
+    /*
+     * The tags of the poster requests of the bound cells, to pause and resume them (see
+     * ImageRequestScheduler). A cell is bound before it is attached (on screen, or ahead of the
+     * viewport by the prefetch of the RecyclerView), so its request starts with the off screen tag;
+     * once the cell is attached, a request that is still loading moves to the visible tag, which
+     * is never paused.
+     */
+    static final Object OFFSCREEN_TAG = new Object();
+    static final Object VISIBLE_TAG = new Object();
+
+    /*
+     * The bitmap config of the posters of the grid cells. The posters are opaque, so RGB_565
+     * halves the memory of every decoded poster without a visible loss in a small cell.
+     * Note: This reduces the size of the decoded posters, not their number: every poster that is
+     * not in the memory cache is decoded into a new bitmap, since Picasso 2.5.2 has no hook to
+     * decode into a reused one (inBitmap).
+     */
+    private static final Bitmap.Config POSTER_CONFIG =
+            BuildConfig.GRID_POSTERS_RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+    /* The number of items bound since the last replacement of a page was dispatched */
+    private int mBindCount;
+
+    /* The page number of the first page in memory */
+    private int mFirstPage;
+
+    /* The listener of the first poster that is set into a cell (e.g. for the start-up timeline), or null */
+    private Runnable mOnFirstPoster;
 
     /**
      * An on-click handler that we've defined to make it easy for an Activity to interface with
@@ -58,7 +137,7 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
     }
 
     MyRVAdapter(MyRVAdapterOnClickHandler clickHandler){
-        Log.d(LOG_TAG, "Constructor()");
+        DebugLog.d(LOG_TAG, "Constructor()");
         this.mClickHandler = clickHandler;
     }
 
@@ -75,7 +154,7 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
      */
     @Override
     public MyViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        Log.d(LOG_TAG, "onCreateViewHolder()");
+        DebugLog.d(LOG_TAG, "onCreateViewHolder()");
 
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.recycler_view_item, parent, false);
 
@@ -101,10 +180,38 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
      */
     @Override
     public void onBindViewHolder(MyViewHolder holder, int position) {
-        Log.d(LOG_TAG, "onBindViewHolder(): Position = " + position);
+        DebugLog.d(LOG_TAG, "onBindViewHolder(): Position = ", position);
+        mBindCount++;
         holder.bind(position);
     }
 
+    /**
+     * Called when a view created by this adapter has been recycled, i.e. it is off screen. The
+     * poster request of the view (if still in flight) is cancelled at once, so that it does not
+     * use any bandwidth or decoder thread for a cell that is no longer visible.
+     *
+     * @param holder The ViewHolder for the view being recycled.
+     */
+    @Override
+    public void onViewRecycled(MyViewHolder holder) {
+        super.onViewRecycled(holder);
+        if (mContext != null) {
+            ImageLoader.get(mContext).cancelRequest(holder.ivPoster);
+        }
+    }
+
+    /**
+     * Called when a view created by this adapter has been attached to the window, i.e. it is on
+     * screen. A poster that is still loading is requested again as a visible one.
+     *
+     * @param holder The ViewHolder for the view being attached.
+     */
+    @Override
+    public void onViewAttachedToWindow(MyViewHolder holder) {
+        super.onViewAttachedToWindow(holder);
+        holder.onAttached();
+    }
+
     /**
      * Return the number of items to display.
      *
@@ -112,36 +219,325 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
      */
     @Override
     public int getItemCount() {
-        Log.d(LOG_TAG, "getItemCount()");
-        try{
-            /* If there are no items to display, then... */
-            if (mSourceData == null || mSourceData.length == 0){
-                Log.d(LOG_TAG, "getItemCount(): No items to display.");
-                /* Return zero length */
-                return 0;
+        DebugLog.d(LOG_TAG, "getItemCount()");
+        /* Return the total number of items of the pages in memory */
+        return mStore.size();
+    }
+
+    /**
+     * Method to get the item at the given adapter position.
+     * Note: A new {@link Movie} object is created on every call, so it is not meant for binding.
+     *
+     * @param position The position of the item within the adapter's data set.
+     * @return the movie at the given position.
+     */
+    Movie getItem(int position) {
+        return mStore.getMovie(position);
+    }
+
+    /**
+     * @return the page number of the first page in memory, or 0 if there are no pages.
+     */
+    int getFirstPage() {
+        return mPages.isEmpty() ? 0 : mFirstPage;
+    }
+
+    /**
+     * @return the page number of the last page in memory, or 0 if there are no pages.
+     */
+    int getLastPage() {
+        return mPages.isEmpty() ? 0 : mFirstPage + mPages.size() - 1;
+    }
+
+    /**
+     * @return the adapter position of the first item of the page at the given index.
+     */
+    private int getPositionStart(int pageIndex) {
+        int positionStart = 0;
+        for (int i = 0; i < pageIndex; i++) {
+            positionStart += mPages.get(i).size;
+        }
+        return positionStart;
+    }
+
+    /**
+     * Method to be informed (once) when the first poster is set into a cell.
+     *
+     * @param onFirstPoster The listener, run on the main thread.
+     */
+    void setOnFirstPosterListener(Runnable onFirstPoster) {
+        mOnFirstPoster = onFirstPoster;
+    }
+
+    /**
+     * Method to inform the listener of the first poster, if any, that a poster is set into a cell.
+     */
+    private void onPosterSet() {
+        Runnable onFirstPoster = mOnFirstPoster;
+        mOnFirstPoster = null;
+        if (onFirstPoster != null) {
+            onFirstPoster.run();
+        }
+    }
+
+    /**
+     * This method is used to remove all the data from the Adapter, e.g. when the sort order
+     * changes and the pages have to be loaded again from the first one.
+     */
+    void clearData() {
+        int oldItemCount = mStore.size();
+        mStore.clear();
+        mPages.clear();
+        mFirstPage = 0;
+        mUpdateCallback.onRemoved(0, oldItemCount);
+    }
+
+    /**
+     * This method is used to add a page after the last page in memory. Only the inserted range
+     * is dispatched, so the items already displayed are not bound again. If there are more than
+     * {@link #MAX_PAGES_IN_MEMORY} pages, then the first page is dropped.
+     *
+     * @param page The page that follows the last page in memory (or any page, if there are none).
+     */
+    void appendPage(MoviePage page) {
+        if (!mPages.isEmpty() && page.getPage() != getLastPage() + 1) {
+            Log.e(LOG_TAG, "appendPage(): Page " + page.getPage() + " does not follow page " + getLastPage());
+            return;
+        }
+        if (mPages.isEmpty()) {
+            mFirstPage = page.getPage();
+        }
+        Movie[] movies = page.getMovies();
+        int positionStart = mStore.size();
+        mStore.append(movies);
+        mPages.add(new PageInfo(movies.length, ++mVersion, page.isPartial()));
+        mUpdateCallback.onInserted(positionStart, movies.length);
+
+        /* Keep the number of pages in memory bounded */
+        if (mPages.size() > MAX_PAGES_IN_MEMORY) {
+            int droppedCount = mPages.remove(0).size;
+            mFirstPage++;
+            mStore.remove(0, droppedCount);
+            mUpdateCallback.onRemoved(0, droppedCount);
+        }
+    }
+
+    /**
+     * This method is used to replace a page that is already in memory, e.g. when a cached page
+     * was fetched again and its content has changed.
+     *
+     * The difference between the old and the new content is computed on a background thread, by
+     * the identity of the movies, and then only the items that were changed, moved, inserted or
+     * removed are dispatched. If the page changes again before the difference is applied (e.g. a
+     * newer version of the page arrives, or the page is dropped), then the difference is stale
+     * and it is discarded.
+     *
+     * @param page The new content of a page in memory.
+     * @return true if the page was in memory and its replacement has been scheduled.
+     */
+    boolean replacePage(final MoviePage page) {
+        final int index = page.getPage() - mFirstPage;
+        if (mPages.isEmpty() || index < 0 || index >= mPages.size()) {
+            return false;
+        }
+        final PageInfo pageInfo = mPages.get(index);
+        /* Any later change of the page makes this replacement stale */
+        final int version = ++mVersion;
+        pageInfo.version = version;
+        pageInfo.partial = page.isPartial();
+        final MovieStore oldMovies = mStore.copy(getPositionStart(index), pageInfo.size);
+        final Movie[] newMovies = page.getMovies();
+
+        mDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diffResult =
+                        DiffUtil.calculateDiff(new MovieDiffCallback(oldMovies, newMovies), true);
+                mMainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyReplacement(page.getPage(), pageInfo, version, newMovies, diffResult);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Method to apply the replacement of a page (on the main thread), unless it is stale.
+     */
+    private void applyReplacement(int pageNumber, PageInfo pageInfo, int version,
+                                  Movie[] newMovies, DiffUtil.DiffResult diffResult) {
+        int index = pageNumber - mFirstPage;
+        if (pageInfo.version != version || index < 0 || index >= mPages.size()
+                || mPages.get(index) != pageInfo) {
+            DebugLog.d(LOG_TAG, "applyReplacement(): Discard a stale diff of page ", pageNumber);
+            return;
+        }
+        final int positionStart = getPositionStart(index);
+        mStore.remove(positionStart, pageInfo.size);
+        mStore.insert(positionStart, newMovies);
+        pageInfo.size = newMovies.length;
+
+        /* Dispatch the updates of the page, offset by the position of its first item */
+        DebugLog.d(LOG_TAG, "applyReplacement(): Binds since the previous update = ", mBindCount);
+        mBindCount = 0;
+        diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                mUpdateCallback.onInserted(positionStart + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                mUpdateCallback.onRemoved(positionStart + position, count);
             }
-            /* If there are some items to display, then... */
-            Log.d(LOG_TAG, String.format("getItemCount(): There are %d items to display.", mSourceData.length));
-            /* Return the length of source data */
-            return mSourceData.length;
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                mUpdateCallback.onMoved(positionStart + fromPosition, positionStart + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                if (DebugLog.ENABLED) {
+                    Log.d(LOG_TAG, "applyReplacement(): " + count + " item(s) changed at " + (positionStart + position));
+                }
+                mUpdateCallback.onChanged(positionStart + position, count, payload);
+            }
+        });
+    }
+
+    /**
+     * This method is used to remove the pages at either end of the data that have only their
+     * first movies (see {@link MoviePage#isPartial()}), e.g. when the rest of the response failed,
+     * so that the next scroll requests such a page again instead of the page after it.
+     *
+     * @return true if a page was removed.
+     */
+    boolean removePartialPages() {
+        boolean removed = false;
+        while (!mPages.isEmpty() && mPages.get(mPages.size() - 1).partial) {
+            int droppedCount = mPages.remove(mPages.size() - 1).size;
+            int droppedStart = mStore.size() - droppedCount;
+            mStore.remove(droppedStart, droppedCount);
+            mUpdateCallback.onRemoved(droppedStart, droppedCount);
+            removed = true;
+        }
+        while (!mPages.isEmpty() && mPages.get(0).partial) {
+            int droppedCount = mPages.remove(0).size;
+            mFirstPage++;
+            mStore.remove(0, droppedCount);
+            mUpdateCallback.onRemoved(0, droppedCount);
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * This method is used to add a page before the first page in memory, e.g. when the user
+     * scrolls back up to a page that was dropped. If there are more than
+     * {@link #MAX_PAGES_IN_MEMORY} pages, then the last page is dropped.
+     *
+     * @param page The page that precedes the first page in memory.
+     */
+    void prependPage(MoviePage page) {
+        if (mPages.isEmpty() || page.getPage() != mFirstPage - 1) {
+            Log.e(LOG_TAG, "prependPage(): Page " + page.getPage() + " does not precede page " + mFirstPage);
+            return;
+        }
+        Movie[] movies = page.getMovies();
+        mStore.insert(0, movies);
+        mPages.add(0, new PageInfo(movies.length, ++mVersion, page.isPartial()));
+        mFirstPage--;
+        mUpdateCallback.onInserted(0, movies.length);
+
+        /* Keep the number of pages in memory bounded */
+        if (mPages.size() > MAX_PAGES_IN_MEMORY) {
+            int droppedCount = mPages.remove(mPages.size() - 1).size;
+            int droppedStart = mStore.size() - droppedCount;
+            mStore.remove(droppedStart, droppedCount);
+            mUpdateCallback.onRemoved(droppedStart, droppedCount);
         }
-        catch (NullPointerException ex){
-            Log.e(LOG_TAG, "getItemCount(): NullPointerException caught: " + ex);
-            /* Return zero length */
-            return 0;
+    }
+
+    /**
+     * Method to set the width (in pixels) of the posters of the grid cells, so that the smallest
+     * poster size that covers it is downloaded.
+     *
+     * @param posterWidth The width of a poster, e.g. the width of the grid divided by the columns.
+     * @param columns     The number of grid columns, to report the bytes per screen of posters.
+     */
+    void setPosterWidth(int posterWidth, int columns) {
+        mPosterWidth = posterWidth;
+        mPosterHeight = posterWidth * 3 / 2;
+        /* The bytes of a poster are roughly proportional to its area (the aspect ratio is fixed) */
+        int selectedWidth = NetworkUtils.selectPosterWidth(posterWidth);
+        int defaultWidth = NetworkUtils.DEFAULT_POSTER_WIDTH;
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "setPosterWidth(): Width = " + posterWidth + " px ~ Size = "
+                    + NetworkUtils.selectPosterSize(posterWidth) + " ~ Columns = " + columns
+                    + " ~ Estimated bytes per screen vs w185 = "
+                    + Math.round(100.0 * selectedWidth * selectedWidth / (defaultWidth * defaultWidth)) + "%");
         }
     }
 
     /**
-     * This method is used to set the data on an Adapter if we've already created one.
-     * This is handy when we get new data from the web but don't want to create a
-     * new Adapter to display it.
+     * Method to fetch the poster of the given position into the image cache, with the same size
+     * (i.e. the same memory cache key) as the poster of a bound cell, at a low priority.
      *
-     * @param newData The new data to be displayed.
+     * @param picasso  The Picasso instance that also loads the posters of the grid.
+     * @param position The position of the item within the adapter's data set.
+     * @param tag      The tag of the request, to cancel it.
+     */
+    void prefetchPoster(Picasso picasso, int position, Object tag) {
+        String imageName = mStore.getImageThumbnail(position);
+        if (imageName == null) {
+            return;
+        }
+        picasso.load(NetworkUtils.buildImageURL(imageName, mPosterWidth))
+                .resize(mPosterWidth, mPosterHeight)
+                .centerCrop()
+                .config(POSTER_CONFIG)
+                .priority(Picasso.Priority.LOW)
+                .tag(tag)
+                .fetch();
+    }
+
+    /**
+     * Method to replace the threads of the replacements and the receiver of the updates, so that
+     * a test can run the replacements synchronously and record the updates that they dispatch.
+     */
+    void setUpdateDispatch(Executor diffExecutor, Executor mainExecutor, ListUpdateCallback updateCallback) {
+        mDiffExecutor = diffExecutor;
+        mMainExecutor = mainExecutor;
+        mUpdateCallback = updateCallback;
+    }
+
+    /**
+     * @return the number of items bound since the last replacement of a page was dispatched.
+     */
+    int getBindCount() {
+        return mBindCount;
+    }
+
+    /**
+     * A class to keep the bookkeeping of a page in memory.
      */
-    void setData(Movie[] newData) {
-        mSourceData = newData;
-        notifyDataSetChanged();
+    private static class PageInfo {
+        /* The number of movies of the page */
+        int size;
+        /* Changes on every change of the page, to detect stale replacements */
+        int version;
+        /* True while the page has only its first movies (the rest of the response is being parsed) */
+        boolean partial;
+
+        PageInfo(int size, int version, boolean partial) {
+            this.size = size;
+            this.version = version;
+            this.partial = partial;
+        }
     }
 
     /**
@@ -149,7 +545,7 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
      * a cache of the child views for a list item. It's also a convenient place to set an
      * OnClickListener, since it has access to the adapter and the views.
      */
-    class MyViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class MyViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, Callback {
 
         /* Tag for the log messages. */
         private final String LOG_TAG = "DEBUGGING " + MyViewHolder.class.getSimpleName();
@@ -157,9 +553,12 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
         /* Variables for the item views */
         final ImageView ivPoster;
 
+        /* True while the poster of the bound item is loading */
+        private boolean mPosterPending;
+
         MyViewHolder(View itemView) {
             super(itemView);
-            Log.d(LOG_TAG, "Constructor()");
+            DebugLog.d(LOG_TAG, "Constructor()");
             /* Bind the item views variables to the item xml */
             ivPoster = itemView.findViewById(R.id.rvi_image_view_poster);
             /* Set the OnClickListener on the View passed into the constructor */
@@ -167,18 +566,56 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
         }
 
         void bind(int listIndex) {
-            Log.d(LOG_TAG, "bind(): Position = " + getAdapterPosition());
+            DebugLog.d(LOG_TAG, "bind(): Position = ", listIndex);
+            loadPoster(listIndex, OFFSCREEN_TAG);
+        }
 
-            /* Get an instance of the selected object */
-            Movie selectedMovie = mSourceData[listIndex];
+        /**
+         * Method to request the poster again as a visible one, if it is still loading when the
+         * cell is attached.
+         */
+        void onAttached() {
+            int position = getAdapterPosition();
+            if (mPosterPending && position != RecyclerView.NO_POSITION) {
+                loadPoster(position, VISIBLE_TAG);
+            }
+        }
 
-            /* Set the URI to the ImageView */
-            Picasso.with(mContext)
-                    .load(NetworkUtils.buildImageURL(selectedMovie.getImageThumbnail()))
+        private void loadPoster(int listIndex, Object tag) {
+            /*
+             * Set the URI to the ImageView (straight from the store, without a Movie object).
+             * Note: The fixed size is the same as the size of the prefetched posters, so they share
+             * the memory cache key (see {@link PosterPrefetcher}).
+             * Note: A request of the same ImageView replaces the previous one, and a poster of the
+             * memory cache is set (and reported) at once.
+             */
+            mPosterPending = true;
+            ImageLoader.get(mContext)
+                    .load(NetworkUtils.buildImageURL(mStore.getImageThumbnail(listIndex), mPosterWidth))
                     .placeholder(R.drawable.ic_placeholder)
                     .error(R.drawable.ic_placeholder)
-                    .fit()
-                    .into(ivPoster); // ImageView
+                    .resize(mPosterWidth, mPosterHeight)
+                    .centerCrop()
+                    .config(POSTER_CONFIG)
+                    .priority(Picasso.Priority.HIGH)
+                    .tag(tag)
+                    .into(ivPoster, this); // ImageView
+        }
+
+        /**********************************************************************************************
+         * Implementation for the {@link Callback} interface of the poster request
+         *********************************************************************************************/
+
+        @Override
+        public void onSuccess() {
+            mPosterPending = false;
+            onPosterSet();
+        }
+
+        @Override
+        public void onError() {
+            /* The error placeholder is not a poster */
+            mPosterPending = false;
         }
 
         /**********************************************************************************************
@@ -192,8 +629,13 @@ public class MyRVAdapter extends RecyclerView.Adapter<MyRVAdapter.MyViewHolder>
          */
         @Override
         public void onClick(View view) {
-            Log.d(LOG_TAG, "onClick(): Position = " + getAdapterPosition());
-            mClickHandler.onClickItem(mSourceData[getAdapterPosition()]);
+            DebugLog.d(LOG_TAG, "onClick(): Position = ", getAdapterPosition());
+            int position = getAdapterPosition();
+            /* Ignore the clicks on items that are being removed */
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClickItem(getItem(position));
         }
 
     }
@@ -0,0 +1,412 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.content.Context;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import net.bplaced.esigala1.popularmovies.data.MovieRepository;
+import net.bplaced.esigala1.popularmovies.data.PageFetchEngine;
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieRanking;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link PagedMovieLoader} loads the pages of a sort order into a {@link MyRVAdapter} while the
+ * user scrolls the grid (infinite scroll).
+ *
+ * The next page is requested as soon as the last visible item is within
+ * {@link #PREFETCH_DISTANCE} items of the end of the data, so the new items are usually in
+ * place before the user reaches them. Since the adapter keeps a bounded number of pages in
+ * memory, the previous page is requested in the same way when the user scrolls back up to a
+ * page that was dropped.
+ *
+ * The pages are loaded through the {@link MovieRepository}, so a page can be delivered twice:
+ * first from the cache and then, if it has changed, from the web. The second delivery replaces
+ * the page in the adapter.
+ *
+ * Until the first page of a sort order arrives (unless it is in memory), the cached movies are
+ * ranked locally in that sort order (see {@link MovieRanking}) and displayed as a provisional
+ * first page, so a switch of the sort order does not blank the grid; the first page of the server
+ * then replaces it (only the moved, inserted and removed movies are animated). The provisional
+ * page goes to its own listener: it is not the first content of the load, and it tells nothing
+ * about the number of pages (a failed first page is requested again on scroll). The local sort
+ * orders (e.g. {@link MovieRanking#SORT_ORDER_NEWEST}) have a single page: the ranking of the
+ * cached movies, ranked again when the first pages of the server sort orders are fetched.
+ */
+
+class PagedMovieLoader extends RecyclerView.OnScrollListener {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + PagedMovieLoader.class.getSimpleName();
+
+    /* The distance (in items) from the end of the data that triggers the load of the next page */
+    static final int PREFETCH_DISTANCE = 15;
+
+    /* The maximum number of movies of the provisional first page of a server sort order */
+    private static final int PROVISIONAL_MOVIES = 60;
+
+    /* The maximum number of movies of a local sort order */
+    private static final int LOCAL_MOVIES = 200;
+
+    /* The pages of every server sort order that the movies of a local sort order come from */
+    private static final int LOCAL_SOURCE_PAGES = 3;
+
+    /* The server sort orders, whose movies are ranked by the local sort orders */
+    private static final String[] SERVER_SORT_ORDERS =
+            {TMDBApi.SORT_ORDER_MOST_POPULAR, TMDBApi.SORT_ORDER_TOP_RATED};
+
+    private final Context mAppContext;
+    private final MyRVAdapter mAdapter;
+    private final MovieRepository mRepository;
+
+    /* The fetch of the refreshed pages (or of the pages of a local sort order), if in progress */
+    private PageFetchEngine mRefreshEngine;
+
+    /* Listener to update the UI of {@link MainActivity} when a page is loaded (or fails) */
+    private final TMDBApi.AsyncTaskCompleteListener<MoviePage> mListener;
+
+    /* Listener to update the UI of {@link MainActivity} when a provisional first page is displayed */
+    private final ProvisionalPageListener mProvisionalListener;
+
+    /* The sort order that is currently loaded */
+    private String mSortOrder;
+
+    /* The total number of pages of the current sort order (unknown until the first response) */
+    private int mTotalPages = Integer.MAX_VALUE;
+
+    /* The page that is currently requested, or 0 if there is no request in flight */
+    private int mPendingPage;
+
+    /* True while the first page in the adapter is the provisional one */
+    private boolean mProvisional;
+
+    /*
+     * The loads of the current generation that are not settled yet (a page may still be
+     * revalidated after it is delivered); the settled ones are dropped on every new request.
+     */
+    private final List<MovieRepository.PageLoad> mLoads = new ArrayList<>();
+
+    /* Incremented on every restart, so that the responses of older requests are ignored */
+    private int mGeneration;
+
+    /**
+     * Constructor
+     *
+     * @param context  Any context, to get the {@link MovieRepository}.
+     * @param adapter  The adapter to load the pages into.
+     * @param listener to update the UI of {@link MainActivity} when a page is loaded (or fails).
+     * @param provisionalListener to update the UI of {@link MainActivity} when a provisional
+     *                            first page is displayed.
+     */
+    PagedMovieLoader(Context context, MyRVAdapter adapter,
+                     TMDBApi.AsyncTaskCompleteListener<MoviePage> listener,
+                     ProvisionalPageListener provisionalListener) {
+        this.mAppContext = context.getApplicationContext();
+        this.mAdapter = adapter;
+        this.mRepository = MovieRepository.getInstance(context);
+        this.mListener = listener;
+        this.mProvisionalListener = provisionalListener;
+    }
+
+    /**
+     * Method to (re)start loading the given sort order from its first page.
+     * All the pages of the previous sort order are removed from the adapter.
+     *
+     * @param sortOrder The sort order to load.
+     */
+    void start(String sortOrder) {
+        Log.d(LOG_TAG, "start(): Sort Order = " + sortOrder);
+        mGeneration++;
+        cancelRefresh();
+        cancelLoads();
+        mSortOrder = sortOrder;
+        mTotalPages = Integer.MAX_VALUE;
+        mProvisional = false;
+        mAdapter.clearData();
+        if (MovieRanking.isLocal(sortOrder)) {
+            /* The ranking of the movies in memory at once, and again with the first pages */
+            deliverRanked(LOCAL_MOVIES);
+            fetchLocalSources(false);
+            return;
+        }
+        /* The first page in memory is delivered at once anyway */
+        if (!mRepository.isPageInMemory(sortOrder, TMDBApi.FIRST_PAGE)) {
+            deliverProvisional();
+        }
+        requestPage(TMDBApi.FIRST_PAGE, TMDBApi.Priority.VISIBLE);
+    }
+
+    /**
+     * Method to display the cached movies, ranked locally in the current (server) sort order, as
+     * a provisional first page until the first page of the server arrives. Unlike a loaded page,
+     * it leaves the number of pages unknown, and it is not reported as the first content.
+     */
+    private void deliverProvisional() {
+        Movie[] ranked = mRepository.rankCachedMovies(mSortOrder, PROVISIONAL_MOVIES);
+        if (ranked.length == 0) {
+            return;
+        }
+        MoviePage page = new MoviePage(mSortOrder, TMDBApi.FIRST_PAGE, TMDBApi.FIRST_PAGE, ranked, true);
+        mProvisional = true;
+        addToAdapter(page);
+        mProvisionalListener.onProvisionalPage(page);
+    }
+
+    /**
+     * Method to deliver the cached movies, ranked locally in the current (local) sort order, as
+     * its single page (it is appended, or it replaces the page).
+     *
+     * @param limit The maximum number of movies.
+     */
+    private void deliverRanked(int limit) {
+        Movie[] ranked = mRepository.rankCachedMovies(mSortOrder, limit);
+        if (ranked.length > 0) {
+            new PageCompleteListener(mGeneration).onTaskComplete(new MoviePage(mSortOrder,
+                    TMDBApi.FIRST_PAGE, TMDBApi.FIRST_PAGE, ranked, true));
+        }
+    }
+
+    /**
+     * Method to fetch the first pages of the server sort orders into the cache, and then to rank
+     * the movies of the current (local) sort order again.
+     *
+     * @param force True to revalidate the cached pages even if they are still fresh.
+     */
+    private void fetchLocalSources(boolean force) {
+        cancelRefresh();
+        final int generation = mGeneration;
+        mRefreshEngine = new PageFetchEngine(mAppContext,
+                PageFetchEngine.PageRequest.pages(SERVER_SORT_ORDERS, TMDBApi.FIRST_PAGE, LOCAL_SOURCE_PAGES),
+                TMDBApi.Priority.VISIBLE, force, PageFetchEngine.DEFAULT_MAX_IN_FLIGHT);
+        mRefreshEngine.start(new PageFetchEngine.Listener() {
+            @Override
+            public void onPage(PageFetchEngine.PageRequest request, MoviePage page) {
+                /* The movies are ranked once all the pages are in the cache */
+            }
+
+            @Override
+            public void onComplete(MovieStore movies, int failures) {
+                mRefreshEngine = null;
+                if (generation != mGeneration) {
+                    return;
+                }
+                deliverRanked(LOCAL_MOVIES);
+                /* Nothing to display, not even after the fetch */
+                if (mAdapter.getItemCount() == 0) {
+                    mListener.onTaskComplete(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Method to refresh the pages that are currently in the adapter, without removing them first.
+     * The pages are revalidated with conditional requests, so only the pages that have changed
+     * are delivered again (and replaced in the adapter); the unchanged ones stay as they are.
+     * If there are no pages yet, then the sort order is loaded from its first page.
+     *
+     * The pages are revalidated concurrently (see {@link PageFetchEngine}), and the changed ones
+     * are delivered in the order of the pages. A local sort order is ranked again after the
+     * pages that its movies come from are revalidated.
+     */
+    void refresh() {
+        Log.d(LOG_TAG, "refresh()");
+        if (mAdapter.getItemCount() == 0) {
+            start(mSortOrder);
+            return;
+        }
+        if (MovieRanking.isLocal(mSortOrder)) {
+            fetchLocalSources(true);
+            return;
+        }
+        List<PageFetchEngine.PageRequest> requests = new ArrayList<>();
+        for (int page = mAdapter.getFirstPage(); page <= mAdapter.getLastPage(); page++) {
+            requests.add(new PageFetchEngine.PageRequest(mSortOrder, page));
+        }
+        cancelRefresh();
+        final PageCompleteListener listener = new PageCompleteListener(mGeneration);
+        mRefreshEngine = new PageFetchEngine(mAppContext, requests, TMDBApi.Priority.VISIBLE, true,
+                PageFetchEngine.DEFAULT_MAX_IN_FLIGHT);
+        mRefreshEngine.start(new PageFetchEngine.Listener() {
+            @Override
+            public void onPage(PageFetchEngine.PageRequest request, MoviePage page) {
+                /* An unchanged (or failed) page stays as it is on screen */
+                if (page != null && !page.isFromCache()) {
+                    listener.onTaskComplete(page);
+                }
+            }
+
+            @Override
+            public void onComplete(MovieStore movies, int failures) {
+                mRefreshEngine = null;
+            }
+        });
+    }
+
+    /**
+     * Method to stop delivering the pages of a refresh in progress (if any).
+     */
+    private void cancelRefresh() {
+        if (mRefreshEngine != null) {
+            mRefreshEngine.cancel();
+            mRefreshEngine = null;
+        }
+    }
+
+    /**
+     * Method to stop the loads of the pages, so that their requests in flight do not keep a
+     * reference to this loader (and its Activity) until they complete.
+     */
+    private void cancelLoads() {
+        for (MovieRepository.PageLoad load : mLoads) {
+            load.cancel();
+        }
+        mLoads.clear();
+        mPendingPage = 0;
+    }
+
+    /**
+     * Method to stop delivering pages to the adapter, e.g. when the Activity is destroyed.
+     * The requests in flight are not cancelled (see {@link MovieRepository.PageLoad#cancel()}):
+     * they complete into the cache, and identical requests of the recreated Activity are
+     * coalesced into them, so their results are not wasted.
+     */
+    void release() {
+        Log.d(LOG_TAG, "release()");
+        /* The results of the requests in flight now belong to an older generation */
+        mGeneration++;
+        cancelRefresh();
+        cancelLoads();
+    }
+
+    /**
+     * @return true if a page is currently requested.
+     */
+    boolean isLoading() {
+        return mPendingPage != 0;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        /* Only a scroll can bring the user closer to either end of the data (not of the search results) */
+        if (dy == 0 || isLoading() || mAdapter.getItemCount() == 0 || recyclerView.getAdapter() != mAdapter) {
+            return;
+        }
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        if (dy > 0) {
+            int lastVisible = layoutManager.findLastVisibleItemPosition();
+            /* The first page of the server is still missing after a provisional one */
+            int nextPage = mProvisional ? TMDBApi.FIRST_PAGE : mAdapter.getLastPage() + 1;
+            if (lastVisible >= mAdapter.getItemCount() - PREFETCH_DISTANCE && nextPage <= mTotalPages) {
+                requestPage(nextPage, TMDBApi.Priority.PREFETCH);
+            }
+        } else {
+            int firstVisible = layoutManager.findFirstVisibleItemPosition();
+            int previousPage = mAdapter.getFirstPage() - 1;
+            if (firstVisible <= PREFETCH_DISTANCE && previousPage >= TMDBApi.FIRST_PAGE) {
+                requestPage(previousPage, TMDBApi.Priority.PREFETCH);
+            }
+        }
+    }
+
+    /**
+     * Method to request the given page of the current sort order.
+     *
+     * @param priority {@link TMDBApi.Priority#VISIBLE} for a page that the user waits for, or
+     *                 {@link TMDBApi.Priority#PREFETCH} for a page ahead of the scroll position.
+     */
+    private void requestPage(int page, TMDBApi.Priority priority) {
+        Log.d(LOG_TAG, "requestPage(): Page = " + page + " ~ Priority = " + priority);
+        mPendingPage = page;
+        /* Only the loads that may still deliver are kept, so the list stays as short as the loads in flight */
+        for (Iterator<MovieRepository.PageLoad> loads = mLoads.iterator(); loads.hasNext(); ) {
+            if (loads.next().isSettled()) {
+                loads.remove();
+            }
+        }
+        MovieRepository.PageLoad load = mRepository.loadPage(mSortOrder, page, priority,
+                new PageCompleteListener(mGeneration));
+        if (!load.isSettled()) {
+            mLoads.add(load);
+        }
+    }
+
+    /**
+     * Inner class to add a loaded page to the adapter, at the end or at the beginning of the data
+     * depending on its number, and then inform {@link MainActivity}.
+     */
+    private class PageCompleteListener implements TMDBApi.AsyncTaskCompleteListener<MoviePage> {
+
+        /* The generation of the loader when the page was requested */
+        private final int generation;
+
+        PageCompleteListener(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void onTaskComplete(MoviePage result) {
+            /* If the loader was restarted in the meantime, then ignore the result */
+            if (generation != mGeneration) {
+                Log.d(LOG_TAG, "onTaskComplete(): Ignore a result of an older sort order.");
+                return;
+            }
+            /* The request is over when the whole page has arrived (not just its first movies) */
+            if (result == null || (result.getPage() == mPendingPage && !result.isPartial())) {
+                mPendingPage = 0;
+            }
+            /*
+             * A failure after the first movies of a page leaves a truncated page in the adapter;
+             * remove it, so that the page is requested again (rather than the next one after it).
+             */
+            if (result == null && mAdapter.removePartialPages()) {
+                Log.d(LOG_TAG, "onTaskComplete(): Partial page removed after a failure.");
+            }
+            if (result != null) {
+                /* The total number of pages is not known until the whole page has been parsed */
+                if (!result.isPartial()) {
+                    mTotalPages = result.getTotalPages();
+                }
+                if (result.getPage() == TMDBApi.FIRST_PAGE) {
+                    mProvisional = false;
+                }
+                addToAdapter(result);
+            }
+            mListener.onTaskComplete(result);
+        }
+    }
+
+    /**
+     * Method to add a page to the adapter: it replaces the page with the same number, or it is
+     * added at the end or at the beginning of the data depending on its number.
+     */
+    private void addToAdapter(MoviePage page) {
+        if (mAdapter.replacePage(page)) {
+            Log.d(LOG_TAG, "addToAdapter(): Page " + page.getPage() + " replaced.");
+        } else if (page.getPage() < mAdapter.getFirstPage()) {
+            mAdapter.prependPage(page);
+        } else {
+            mAdapter.appendPage(page);
+        }
+    }
+
+    /**
+     * Interface to inform {@link MainActivity} that a provisional first page is displayed, while
+     * the first page of the server is still loading.
+     */
+    interface ProvisionalPageListener {
+        /**
+         * Invoked when the provisional page has been added to the adapter.
+         *
+         * @param page The provisional page.
+         */
+        void onProvisionalPage(MoviePage page);
+    }
+}
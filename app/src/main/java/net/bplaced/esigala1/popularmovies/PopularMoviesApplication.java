@@ -0,0 +1,69 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.bplaced.esigala1.popularmovies.data.MovieRepository;
+import net.bplaced.esigala1.popularmovies.utilities.ImageLoader;
+import net.bplaced.esigala1.popularmovies.utilities.StartupTrace;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBClient;
+
+/**
+ * {@link PopularMoviesApplication} marks the start of the cold-start timeline (see
+ * {@link StartupTrace}) and starts the deferred initialization.
+ *
+ * The components that are not needed to draw the first frame, but are expensive to create (the
+ * HTTP stack with the Gson adapters and the parsed Retrofit methods, Picasso with its caches, and
+ * the database) are created on a background thread, as soon as the process starts; the cache
+ * warming jobs are scheduled on the same thread (see {@link CacheWarmingService}). The main
+ * thread meanwhile inflates the layout of {@link MainActivity}, and it waits only for what is not
+ * ready yet when it first needs it (the components are created once, under their own locks).
+ */
+
+public class PopularMoviesApplication extends Application {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + PopularMoviesApplication.class.getSimpleName();
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        super.attachBaseContext(base);
+        StartupTrace.mark(StartupTrace.PHASE_APPLICATION_ATTACH);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Log.d(LOG_TAG, "onCreate()");
+        startDeferredInit();
+        StartupTrace.mark(StartupTrace.PHASE_APPLICATION_CREATED);
+    }
+
+    /**
+     * Method to create the expensive components on a background thread.
+     * Note: The thread keeps the default priority, since the main thread may wait for it.
+     */
+    private void startDeferredInit() {
+        final Context appContext = this;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = SystemClock.elapsedRealtime();
+                /* The HTTP stack: OkHttp, Gson and its adapters, Retrofit and its methods */
+                TMDBClient.getInstance().warmUp();
+                /* Picasso, with its memory and disk caches (the grid needs it in MainActivity.onCreate()) */
+                ImageLoader.get(appContext);
+                /* The database, opened (or upgraded) on the disk thread of the repository */
+                MovieRepository.getInstance(appContext).warmUp();
+                /* The warming jobs download the posters in the size of the grid, before the next launch */
+                CacheWarmingService.setGridPosterWidth(appContext,
+                        MainActivity.getPosterWidth(appContext, MainActivity.getGridColumns(appContext)));
+                CacheWarmingService.schedule(appContext);
+                StartupTrace.mark(StartupTrace.PHASE_DEFERRED_INIT_DONE);
+                Log.d(LOG_TAG, "Deferred initialization in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            }
+        }, "deferred-init").start();
+    }
+}
@@ -0,0 +1,209 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+
+import net.bplaced.esigala1.popularmovies.utilities.DebugLog;
+
+import java.util.ArrayDeque;
+
+/**
+ * {@link PosterPrefetcher} warms the image cache with the posters of the rows that are about to
+ * scroll into view, so that a fast scroll shows posters instead of placeholders.
+ *
+ * The posters of the next {@link #PREFETCH_ROWS} rows (more when scrolling fast, up to
+ * {@link #MAX_PREFETCH_ROWS}) in the direction of travel are fetched at a low priority, with the
+ * same size as the bound cells, so they are served from the memory cache on bind. Every fetched
+ * batch has its own tag, so the batches that the user has scrolled away from (or all of them,
+ * when the direction of travel is reversed) are cancelled.
+ */
+
+class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + PosterPrefetcher.class.getSimpleName();
+
+    /* The number of rows to prefetch ahead of the visible ones, and the maximum when scrolling fast */
+    static final int PREFETCH_ROWS = 2;
+    static final int MAX_PREFETCH_ROWS = 6;
+
+    /* The scroll distance (in pixels) of a single scroll event that adds one more row to prefetch */
+    private static final int PIXELS_PER_EXTRA_ROW = 40;
+
+    private final Picasso mPicasso;
+    private final MyRVAdapter mAdapter;
+    private final int mColumns;
+
+    /* The direction of travel: 1 down, -1 up, 0 unknown */
+    private int mDirection;
+
+    /* The prefetched range of adapter positions [mPrefetchedFrom, mPrefetchedTo) */
+    private int mPrefetchedFrom;
+    private int mPrefetchedTo;
+
+    /* The prefetched batches that may still be in flight, oldest first */
+    private final ArrayDeque<Batch> mBatches = new ArrayDeque<>();
+
+    /* True while the prefetches are paused (e.g. during a fling) */
+    private boolean mPaused;
+
+    /**
+     * Constructor
+     *
+     * @param picasso The Picasso instance that also loads the posters of the grid.
+     * @param adapter The adapter of the grid.
+     * @param columns The number of grid columns (see {@link MainActivity#getGridColumns()}).
+     */
+    PosterPrefetcher(Picasso picasso, MyRVAdapter adapter, int columns) {
+        this.mPicasso = picasso;
+        this.mAdapter = adapter;
+        this.mColumns = columns;
+    }
+
+    /**
+     * Method to cancel all the prefetches, e.g. when the data of the grid is replaced.
+     */
+    void reset() {
+        for (Batch batch : mBatches) {
+            cancel(batch);
+        }
+        mBatches.clear();
+        mDirection = 0;
+        mPrefetchedFrom = 0;
+        mPrefetchedTo = 0;
+    }
+
+    /**
+     * Method to pause the prefetches in flight and the ones that follow, until {@link #resume()}.
+     */
+    void pause() {
+        if (mPaused) {
+            return;
+        }
+        mPaused = true;
+        for (Batch batch : mBatches) {
+            mPicasso.pauseTag(batch);
+        }
+    }
+
+    /**
+     * Method to resume the paused prefetches.
+     */
+    void resume() {
+        if (!mPaused) {
+            return;
+        }
+        mPaused = false;
+        for (Batch batch : mBatches) {
+            mPicasso.resumeTag(batch);
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || mAdapter.getItemCount() == 0 || recyclerView.getAdapter() != mAdapter) {
+            return;
+        }
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        int lastVisible = layoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        /* A reversed direction makes all the prefetches of the previous direction useless */
+        int direction = dy > 0 ? 1 : -1;
+        if (direction != mDirection) {
+            reset();
+            mDirection = direction;
+            mPrefetchedFrom = firstVisible;
+            mPrefetchedTo = lastVisible + 1;
+        }
+
+        /* The faster the scroll, the more rows ahead */
+        int rows = Math.min(PREFETCH_ROWS + Math.abs(dy) / PIXELS_PER_EXTRA_ROW, MAX_PREFETCH_ROWS);
+        int count = rows * mColumns;
+
+        if (direction > 0) {
+            cancelBatchesBefore(firstVisible);
+            int from = Math.max(mPrefetchedTo, lastVisible + 1);
+            int to = Math.min(lastVisible + 1 + count, mAdapter.getItemCount());
+            if (from < to) {
+                prefetch(from, to);
+                mPrefetchedTo = to;
+            }
+        } else {
+            cancelBatchesAfter(lastVisible);
+            int to = Math.min(mPrefetchedFrom, firstVisible);
+            int from = Math.max(firstVisible - count, 0);
+            if (from < to) {
+                prefetch(from, to);
+                mPrefetchedFrom = from;
+            }
+        }
+    }
+
+    /**
+     * Method to fetch the posters of the positions [from, to) at a low priority.
+     */
+    private void prefetch(int from, int to) {
+        Batch batch = new Batch(from, to);
+        mBatches.addLast(batch);
+        if (mPaused) {
+            /* The requests of a paused tag are queued until the tag is resumed */
+            mPicasso.pauseTag(batch);
+        }
+        for (int position = from; position < to; position++) {
+            mAdapter.prefetchPoster(mPicasso, position, batch);
+        }
+        if (DebugLog.ENABLED) {
+            Log.d(LOG_TAG, "prefetch(): Positions " + from + " - " + (to - 1));
+        }
+    }
+
+    /**
+     * Method to cancel the batches that are entirely before the given position (scrolled past).
+     */
+    private void cancelBatchesBefore(int position) {
+        while (!mBatches.isEmpty() && mBatches.peekFirst().to <= position) {
+            cancel(mBatches.pollFirst());
+        }
+    }
+
+    /**
+     * Method to cancel the batches that are entirely after the given position (scrolled past).
+     */
+    private void cancelBatchesAfter(int position) {
+        while (!mBatches.isEmpty() && mBatches.peekFirst().from > position) {
+            cancel(mBatches.pollFirst());
+        }
+    }
+
+    /**
+     * Method to cancel the requests of a batch.
+     * Note: A paused tag stays registered until it is resumed, so it is resumed after the
+     * cancellation (with no requests left) to be released.
+     */
+    private void cancel(Batch batch) {
+        mPicasso.cancelTag(batch);
+        if (mPaused) {
+            mPicasso.resumeTag(batch);
+        }
+    }
+
+    /**
+     * A batch of prefetched positions; also used as the Picasso tag of its requests.
+     */
+    private static class Batch {
+        final int from;
+        final int to;
+
+        Batch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.os.Build;
+import android.os.Debug;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.StatsSnapshot;
+
+/**
+ * {@link ScrollMemoryTracker} reports the memory cost of scrolling the grid: for every
+ * {@link #ROWS_PER_REPORT} scrolled rows it logs the bitmaps that were decoded (i.e. allocated)
+ * for the posters, their total size, and the garbage collections with their pause time.
+ *
+ * The bitmaps are not pooled, so every decoded bitmap is a new allocation; the size per bitmap
+ * shows the effect of the decode config of the grid (see BuildConfig.GRID_POSTERS_RGB_565).
+ *
+ * Note: The GC counters of the runtime are available from API 23 (Marshmallow); on older devices
+ * only the bitmap counters are reported.
+ */
+
+class ScrollMemoryTracker extends RecyclerView.OnScrollListener {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + ScrollMemoryTracker.class.getSimpleName();
+
+    /* The number of scrolled rows of every report */
+    static final int ROWS_PER_REPORT = 100;
+
+    /* The runtime statistics of the garbage collector (see Debug#getRuntimeStat(String)) */
+    private static final String STAT_GC_COUNT = "art.gc.gc-count";
+    private static final String STAT_GC_TIME = "art.gc.gc-time";
+    private static final String STAT_BLOCKING_GC_TIME = "art.gc.blocking-gc-time";
+
+    private final Picasso mPicasso;
+    private final int mColumns;
+
+    /* The first visible row on the previous scroll event, and the rows scrolled since the last report */
+    private int mLastRow = RecyclerView.NO_POSITION;
+    private int mScrolledRows;
+
+    /* The counters at the last report */
+    private int mDecodedBitmaps;
+    private long mDecodedBytes;
+    private long mGcCount;
+    private long mGcTime;
+    private long mBlockingGcTime;
+
+    /**
+     * Constructor
+     *
+     * @param picasso The Picasso instance that loads the posters of the grid.
+     * @param columns The number of grid columns.
+     */
+    ScrollMemoryTracker(Picasso picasso, int columns) {
+        this.mPicasso = picasso;
+        this.mColumns = columns;
+        takeBaseline();
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int row = firstVisible / mColumns;
+        if (mLastRow != RecyclerView.NO_POSITION) {
+            mScrolledRows += Math.abs(row - mLastRow);
+        }
+        mLastRow = row;
+
+        if (mScrolledRows >= ROWS_PER_REPORT) {
+            report();
+            mScrolledRows = 0;
+        }
+    }
+
+    /**
+     * Method to log the counters since the last report, and to start counting again.
+     */
+    private void report() {
+        StatsSnapshot snapshot = mPicasso.getSnapshot();
+        int decodedBitmaps = snapshot.originalBitmapCount + snapshot.transformedBitmapCount;
+        long decodedBytes = snapshot.totalOriginalBitmapSize + snapshot.totalTransformedBitmapSize;
+        String message = "report(): Per " + mScrolledRows + " rows"
+                + " ~ Decoded bitmaps = " + (decodedBitmaps - mDecodedBitmaps)
+                + " ~ Decoded size = " + (decodedBytes - mDecodedBytes) / 1024 + " KB";
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            message += " ~ GCs = " + (readRuntimeStat(STAT_GC_COUNT) - mGcCount)
+                    + " ~ GC time = " + (readRuntimeStat(STAT_GC_TIME) - mGcTime) + " ms"
+                    + " ~ Blocking GC time = " + (readRuntimeStat(STAT_BLOCKING_GC_TIME) - mBlockingGcTime) + " ms";
+        }
+        Log.d(LOG_TAG, message);
+        takeBaseline();
+    }
+
+    /**
+     * Method to keep the current counters, as the baseline of the next report.
+     */
+    private void takeBaseline() {
+        StatsSnapshot snapshot = mPicasso.getSnapshot();
+        mDecodedBitmaps = snapshot.originalBitmapCount + snapshot.transformedBitmapCount;
+        mDecodedBytes = snapshot.totalOriginalBitmapSize + snapshot.totalTransformedBitmapSize;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mGcCount = readRuntimeStat(STAT_GC_COUNT);
+            mGcTime = readRuntimeStat(STAT_GC_TIME);
+            mBlockingGcTime = readRuntimeStat(STAT_BLOCKING_GC_TIME);
+        }
+    }
+
+    /**
+     * @return the value of the given runtime statistic, or 0 if it is not available.
+     */
+    private static long readRuntimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
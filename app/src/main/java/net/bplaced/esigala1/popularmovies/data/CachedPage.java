@@ -0,0 +1,89 @@
+package net.bplaced.esigala1.popularmovies.data;
+
+import net.bplaced.esigala1.popularmovies.model.CacheValidators;
+import net.bplaced.esigala1.popularmovies.model.Movie;
+
+/**
+ * A class to represent a single cached page of a sort order, as it is kept in the memory and
+ * disk levels of the {@link MovieRepository}.
+ *
+ * The movies are kept as their JSON representation too, so that a page that was fetched again
+ * can be compared with the cached one without comparing every field of every movie.
+ */
+
+class CachedPage {
+
+    final String sortOrder;
+    final int page;
+    final int totalPages;
+    final String moviesJson;
+
+    /* The parsed movies; null until the JSON is parsed (e.g. a page that was read from the disk) */
+    Movie[] movies;
+
+    /* The time (System.currentTimeMillis()) that the page was last confirmed by the server */
+    long fetchedAt;
+
+    /* The HTTP validators of the last response, for the next conditional request (may be null) */
+    String etag;
+    String lastModified;
+
+    /* The time (System.currentTimeMillis()) until the page is fresh and needs no revalidation */
+    long expiresAt;
+
+    CachedPage(String sortOrder, int page, int totalPages, String moviesJson, long fetchedAt) {
+        this.sortOrder = sortOrder;
+        this.page = page;
+        this.totalPages = totalPages;
+        this.moviesJson = moviesJson;
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * Method to keep the validators and the freshness lifetime of a response for this page.
+     *
+     * @param validators The validators of the response (may be null).
+     * @param receivedAt The time (System.currentTimeMillis()) that the response was received.
+     */
+    void updateValidators(CacheValidators validators, long receivedAt) {
+        fetchedAt = receivedAt;
+        if (validators == null) {
+            expiresAt = receivedAt;
+            return;
+        }
+        /* A 304 response may omit the validators that have not changed */
+        if (validators.getEtag() != null) {
+            etag = validators.getEtag();
+        }
+        if (validators.getLastModified() != null) {
+            lastModified = validators.getLastModified();
+        }
+        expiresAt = validators.expiresAt(receivedAt);
+    }
+
+    /**
+     * @return the validators for a conditional request, or null if there are none.
+     */
+    CacheValidators getValidators() {
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        return new CacheValidators(etag, lastModified, -1);
+    }
+
+    /**
+     * @return true if the page is still fresh at the given time, so it needs no revalidation.
+     */
+    boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    /**
+     * @return true if the given page has the same content as this one.
+     */
+    boolean hasSameContent(CachedPage other) {
+        return other != null
+                && totalPages == other.totalPages
+                && moviesJson.equals(other.moviesJson);
+    }
+}
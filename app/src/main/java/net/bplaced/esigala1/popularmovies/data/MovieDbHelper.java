@@ -0,0 +1,218 @@
+package net.bplaced.esigala1.popularmovies.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+
+/**
+ * Helper to manage the on-disk (SQLite) store of the movie lists.
+ *
+ * Every row of the "pages" table keeps one page of a sort order, as the JSON array of its movies,
+ * so a page can be displayed without a network round trip (e.g. on a cold start or when there is
+ * no Internet). Every movie of the stored pages is also kept in the "movies" table, keyed by its
+ * id, so a single movie can be read by its id (e.g. by the detail screen after a process death).
+ *
+ * Note: All the methods access the disk, so they must not be called on the main thread.
+ */
+
+class MovieDbHelper extends SQLiteOpenHelper {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + MovieDbHelper.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "movies.db";
+    private static final int DATABASE_VERSION = 5;
+
+    /* The table of the pages and its columns */
+    static final String TABLE_PAGES = "pages";
+    static final String COLUMN_SORT_ORDER = "sort_order";
+    static final String COLUMN_PAGE = "page";
+    static final String COLUMN_TOTAL_PAGES = "total_pages";
+    static final String COLUMN_MOVIES_JSON = "movies_json";
+    static final String COLUMN_FETCHED_AT = "fetched_at";
+    static final String COLUMN_ETAG = "etag";
+    static final String COLUMN_LAST_MODIFIED = "last_modified";
+    static final String COLUMN_EXPIRES_AT = "expires_at";
+
+    /* The table of the movies and its columns */
+    static final String TABLE_MOVIES = "movies";
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_ORIGINAL_TITLE = "original_title";
+    static final String COLUMN_POSTER_PATH = "poster_path";
+    static final String COLUMN_OVERVIEW = "overview";
+    static final String COLUMN_RATING = "vote_average";
+    static final String COLUMN_RELEASE_DATE = "release_date";
+    static final String COLUMN_POPULARITY = "popularity";
+    static final String COLUMN_VOTE_COUNT = "vote_count";
+
+    MovieDbHelper(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        Log.d(LOG_TAG, "onCreate()");
+        db.execSQL("CREATE TABLE " + TABLE_PAGES + " ("
+                + COLUMN_SORT_ORDER + " TEXT NOT NULL, "
+                + COLUMN_PAGE + " INTEGER NOT NULL, "
+                + COLUMN_TOTAL_PAGES + " INTEGER NOT NULL, "
+                + COLUMN_MOVIES_JSON + " TEXT NOT NULL, "
+                + COLUMN_FETCHED_AT + " INTEGER NOT NULL, "
+                + COLUMN_ETAG + " TEXT, "
+                + COLUMN_LAST_MODIFIED + " TEXT, "
+                + COLUMN_EXPIRES_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + "PRIMARY KEY (" + COLUMN_SORT_ORDER + ", " + COLUMN_PAGE + "))");
+        db.execSQL("CREATE TABLE " + TABLE_MOVIES + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_ORIGINAL_TITLE + " TEXT, "
+                + COLUMN_POSTER_PATH + " TEXT, "
+                + COLUMN_OVERVIEW + " TEXT, "
+                + COLUMN_RATING + " REAL, "
+                + COLUMN_RELEASE_DATE + " TEXT, "
+                + COLUMN_POPULARITY + " REAL, "
+                + COLUMN_VOTE_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.d(LOG_TAG, "onUpgrade(): " + oldVersion + " => " + newVersion);
+        /* The store is only a cache of the web data, so it is simply created again */
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PAGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MOVIES);
+        onCreate(db);
+    }
+
+    /**
+     * Method to read a page from the store.
+     *
+     * @return the stored page, or null if the page is not stored.
+     */
+    CachedPage readPage(String sortOrder, int page) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PAGES,
+                new String[]{COLUMN_TOTAL_PAGES, COLUMN_MOVIES_JSON, COLUMN_FETCHED_AT,
+                        COLUMN_ETAG, COLUMN_LAST_MODIFIED, COLUMN_EXPIRES_AT},
+                COLUMN_SORT_ORDER + " = ? AND " + COLUMN_PAGE + " = ?",
+                new String[]{sortOrder, String.valueOf(page)},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            CachedPage cachedPage = new CachedPage(sortOrder, page,
+                    cursor.getInt(0),
+                    cursor.getString(1),
+                    cursor.getLong(2));
+            cachedPage.etag = cursor.getString(3);
+            cachedPage.lastModified = cursor.getString(4);
+            cachedPage.expiresAt = cursor.getLong(5);
+            return cachedPage;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Method to read a movie (of any stored page) from the store.
+     *
+     * @return the stored movie, or null if the movie is not stored.
+     */
+    Movie readMovie(int id) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.query(TABLE_MOVIES,
+                new String[]{COLUMN_ORIGINAL_TITLE, COLUMN_POSTER_PATH, COLUMN_OVERVIEW,
+                        COLUMN_RATING, COLUMN_RELEASE_DATE, COLUMN_POPULARITY, COLUMN_VOTE_COUNT},
+                COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Movie movie = new Movie();
+            movie.setId(id);
+            movie.setOriginalTitle(cursor.getString(0));
+            movie.setImageThumbnail(cursor.getString(1));
+            movie.setOverview(cursor.getString(2));
+            movie.setRating(cursor.isNull(3) ? null : cursor.getDouble(3));
+            movie.setReleaseDate(cursor.getString(4));
+            movie.setPopularity(cursor.isNull(5) ? null : cursor.getDouble(5));
+            movie.setVoteCount(cursor.getInt(6));
+            return movie;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Method to insert a page (and its movies) into the store, or replace it if it is already stored.
+     */
+    void writePage(CachedPage cachedPage) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SORT_ORDER, cachedPage.sortOrder);
+        values.put(COLUMN_PAGE, cachedPage.page);
+        values.put(COLUMN_TOTAL_PAGES, cachedPage.totalPages);
+        values.put(COLUMN_MOVIES_JSON, cachedPage.moviesJson);
+        values.put(COLUMN_FETCHED_AT, cachedPage.fetchedAt);
+        values.put(COLUMN_ETAG, cachedPage.etag);
+        values.put(COLUMN_LAST_MODIFIED, cachedPage.lastModified);
+        values.put(COLUMN_EXPIRES_AT, cachedPage.expiresAt);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.insertWithOnConflict(TABLE_PAGES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            if (cachedPage.movies != null) {
+                writeMovies(db, cachedPage.movies);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Method to insert a movie (of no stored page) into the store, or replace it if it is already stored.
+     */
+    void writeMovie(Movie movie) {
+        writeMovies(getWritableDatabase(), new Movie[]{movie});
+    }
+
+    /**
+     * Method to insert the movies into the store, or replace the ones that are already stored.
+     */
+    private static void writeMovies(SQLiteDatabase db, Movie[] movies) {
+        ContentValues values = new ContentValues();
+        for (Movie movie : movies) {
+            values.clear();
+            values.put(COLUMN_ID, movie.getId());
+            values.put(COLUMN_ORIGINAL_TITLE, movie.getOriginalTitle());
+            values.put(COLUMN_POSTER_PATH, movie.getImageThumbnail());
+            values.put(COLUMN_OVERVIEW, movie.getOverview());
+            values.put(COLUMN_RATING, movie.getRating());
+            values.put(COLUMN_RELEASE_DATE, movie.getReleaseDate());
+            values.put(COLUMN_POPULARITY, movie.getPopularity());
+            values.put(COLUMN_VOTE_COUNT, movie.getVoteCount());
+            db.insertWithOnConflict(TABLE_MOVIES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * Method to update the time that a stored page was last confirmed by the server, together
+     * with the validators and the freshness lifetime of that response.
+     */
+    void touchPage(CachedPage cachedPage) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FETCHED_AT, cachedPage.fetchedAt);
+        values.put(COLUMN_ETAG, cachedPage.etag);
+        values.put(COLUMN_LAST_MODIFIED, cachedPage.lastModified);
+        values.put(COLUMN_EXPIRES_AT, cachedPage.expiresAt);
+        getWritableDatabase().update(TABLE_PAGES, values,
+                COLUMN_SORT_ORDER + " = ? AND " + COLUMN_PAGE + " = ?",
+                new String[]{cachedPage.sortOrder, String.valueOf(cachedPage.page)});
+    }
+}
@@ -0,0 +1,567 @@
+package net.bplaced.esigala1.popularmovies.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseBooleanArray;
+
+import com.google.gson.Gson;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieRanking;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.model.MovieSearchIndex;
+import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Offline-first repository of the movie lists, in front of {@link TMDBApi}.
+ *
+ * The pages are cached in two levels, keyed by (sort order, page):
+ * 1. An in-memory LRU cache of the most recently used pages.
+ * 2. An on-disk SQLite store ({@link MovieDbHelper}) that survives the process death.
+ *
+ * A request follows the "stale-while-revalidate" strategy: a cached page is delivered at once,
+ * then the page is fetched again from the web in the background and delivered a second time
+ * only if its content differs from the cached one. Without an Internet connection only the
+ * cached page is delivered.
+ *
+ * The page is fetched again with a conditional request, using the validators (ETag and
+ * Last-Modified) of the earlier response, so an unchanged page costs a "304 Not Modified"
+ * without a body. A page that is still fresh ("Cache-Control: max-age") is not fetched again at
+ * all, unless the user explicitly asks for a refresh.
+ *
+ * The movies of the cached pages are also indexed by their id (in memory, and on disk in the
+ * "movies" table), so that a screen can be opened with the id of a movie only (see
+ * {@link #loadMovie}), instead of passing the whole movie through a Binder transaction.
+ *
+ * The movies of the memory index are also in a search index of their titles and overviews (see
+ * {@link #searchMovies}): they are added as they enter the memory index and removed as they are
+ * evicted from it, so the search index is bounded by it. The search index is built and searched
+ * on its own background thread. The movies of the pages in memory can also be ranked locally in
+ * any sort order (see {@link #rankCachedMovies}).
+ *
+ * Note: All the methods must be called, and all the listeners are invoked, on the main thread.
+ */
+
+public class MovieRepository {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + MovieRepository.class.getSimpleName();
+
+    /* The maximum number of pages to keep in the memory level */
+    private static final int MEMORY_CACHE_PAGES = 30;
+
+    /* The maximum number of movies to keep in the memory index, and so in the search index */
+    private static final int MEMORY_CACHE_MOVIES = MEMORY_CACHE_PAGES * 20;
+
+    private static MovieRepository sInstance;
+
+    private final Context mAppContext;
+    private final MovieDbHelper mDbHelper;
+    private final Gson mGson;
+
+    /* The memory level of the cache, keyed by (sort order, page) */
+    private final LruCache<String, CachedPage> mMemoryCache = new LruCache<>(MEMORY_CACHE_PAGES);
+
+    /* The memory index of the movies, keyed by their id; an evicted movie leaves the search index too */
+    private final LruCache<Integer, Movie> mMovieCache = new LruCache<Integer, Movie>(MEMORY_CACHE_MOVIES) {
+        @Override
+        protected void entryRemoved(boolean evicted, Integer id, Movie oldMovie, Movie newMovie) {
+            /* A replaced movie is re-indexed by its put */
+            if (newMovie == null) {
+                unindexMovie(id);
+            }
+        }
+    };
+
+    /* The search index of the movies of the memory index, used on mSearchExecutor only */
+    private final MovieSearchIndex mSearchIndex = new MovieSearchIndex();
+
+    /* Single background thread for the disk level, so that the disk operations run in order */
+    private final ExecutorService mDiskExecutor = Executors.newSingleThreadExecutor();
+
+    /* Single background thread for the search index, so that its updates and searches run in order */
+    private final ExecutorService mSearchExecutor = Executors.newSingleThreadExecutor();
+
+    /* Handler to deliver the results on the main thread */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private MovieRepository(Context context) {
+        mAppContext = context.getApplicationContext();
+        mDbHelper = new MovieDbHelper(mAppContext);
+        mGson = TMDBClient.getInstance().getGson();
+    }
+
+    /**
+     * @return the single instance of the repository.
+     */
+    public static synchronized MovieRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method to open the database on the disk thread, so that the first read of a page does not
+     * pay for its opening (or its upgrade). May be called on any thread.
+     */
+    public void warmUp() {
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.getReadableDatabase();
+            }
+        });
+    }
+
+    /**
+     * Method to load a page of a sort order.
+     *
+     * The listener is invoked:
+     * - with the cached page, if the page is cached (in memory or on disk),
+     * - then with the fetched page, if the page was fetched and differs from the cached one,
+     * - or with null, if the page is neither cached nor could be fetched.
+     *
+     * @param sortOrder The sort order (endpoint) of the page.
+     * @param page      The page to load.
+     * @param listener  The listener to deliver the page to.
+     * @return the load, to stop its deliveries (see {@link PageLoad#cancel()}).
+     */
+    public PageLoad loadPage(String sortOrder, int page,
+                             TMDBApi.AsyncTaskCompleteListener<MoviePage> listener) {
+        return loadPage(sortOrder, page, TMDBApi.Priority.VISIBLE, listener);
+    }
+
+    /**
+     * Method to load a page of a sort order, fetching it (if needed) with the given priority,
+     * e.g. {@link TMDBApi.Priority#PREFETCH} for a page that is not on screen yet.
+     *
+     * @see #loadPage(String, int, TMDBApi.AsyncTaskCompleteListener)
+     */
+    public PageLoad loadPage(String sortOrder, int page, TMDBApi.Priority priority,
+                             TMDBApi.AsyncTaskCompleteListener<MoviePage> listener) {
+        PageLoad load = new PageLoad(listener);
+        loadPage(sortOrder, page, priority, false, load, null);
+        return load;
+    }
+
+    /**
+     * Method to fetch a page into the cache (e.g. to warm the cache, see {@link PageFetchEngine}).
+     * Unlike {@link #loadPage}, the listener is invoked exactly once, when the page is settled:
+     * with the cached page if it is fresh or has not changed ({@link MoviePage#isFromCache()}),
+     * with the fetched page if it has changed, or with null if the page is neither cached nor
+     * could be fetched.
+     *
+     * @param priority The priority of the request.
+     * @param force    True to revalidate the cached page even if it is still fresh.
+     * @param listener The listener to deliver the settled page to.
+     */
+    public void fetchPage(String sortOrder, int page, TMDBApi.Priority priority, boolean force,
+                          TMDBApi.AsyncTaskCompleteListener<MoviePage> listener) {
+        Log.d(LOG_TAG, "fetchPage(): Sort Order = " + sortOrder + " ~ Page = " + page);
+        loadPage(sortOrder, page, priority, force, new PageLoad(new TMDBApi.AsyncTaskCompleteListener<MoviePage>() {
+            @Override
+            public void onTaskComplete(MoviePage result) {
+                /* Nothing to display; the listener learns the outcome once the page is settled */
+            }
+        }), listener);
+    }
+
+    /**
+     * @param force   True to revalidate the cached page even if it is still fresh.
+     * @param settled The listener to invoke once the page is revalidated (see {@link #fetchPage}), or null.
+     */
+    private void loadPage(final String sortOrder, final int page, final TMDBApi.Priority priority,
+                          final boolean force, final PageLoad listener,
+                          final TMDBApi.AsyncTaskCompleteListener<MoviePage> settled) {
+        Log.d(LOG_TAG, "loadPage(): Sort Order = " + sortOrder + " ~ Page = " + page);
+        final String key = cacheKey(sortOrder, page);
+
+        /* 1. Memory level: deliver at once */
+        CachedPage memoryHit = mMemoryCache.get(key);
+        if (memoryHit != null) {
+            Log.d(LOG_TAG, "loadPage(): Memory cache hit.");
+            listener.onTaskComplete(toMoviePage(memoryHit, true));
+            revalidate(sortOrder, page, memoryHit, force, priority, listener, settled);
+            return;
+        }
+
+        /* 2. Disk level: read and parse in the background */
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CachedPage diskHit = mDbHelper.readPage(sortOrder, page);
+                if (diskHit != null) {
+                    diskHit.movies = mGson.fromJson(diskHit.moviesJson, Movie[].class);
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        /* A fetch that completed during the read (e.g. of the destroyed Activity) is newer */
+                        CachedPage fetchedMeanwhile = mMemoryCache.get(key);
+                        if (fetchedMeanwhile != null) {
+                            Log.d(LOG_TAG, "loadPage(): Memory cache hit after the disk read.");
+                            listener.onTaskComplete(toMoviePage(fetchedMeanwhile, true));
+                            revalidate(sortOrder, page, fetchedMeanwhile, force, priority, listener, settled);
+                            return;
+                        }
+                        if (diskHit != null) {
+                            Log.d(LOG_TAG, "loadPage(): Disk cache hit.");
+                            putPage(key, diskHit);
+                            listener.onTaskComplete(toMoviePage(diskHit, true));
+                        }
+                        /* 3. Network: fetch the page (again) */
+                        revalidate(sortOrder, page, diskHit, force, priority, listener, settled);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Method to load a single movie by its id, from the memory index or else from the disk (e.g.
+     * after a process death). The movie is not fetched from the web.
+     *
+     * The listener is invoked with the movie, or with null if the movie is not cached. A movie in
+     * memory is delivered at once (before this method returns).
+     *
+     * @param id       The id of the movie.
+     * @param listener The listener to deliver the movie to.
+     */
+    public void loadMovie(final int id, final TMDBApi.AsyncTaskCompleteListener<Movie> listener) {
+        Movie memoryHit = mMovieCache.get(id);
+        if (memoryHit != null) {
+            Log.d(LOG_TAG, "loadMovie(): Memory cache hit.");
+            listener.onTaskComplete(memoryHit);
+            return;
+        }
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Movie diskHit = mDbHelper.readMovie(id);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.d(LOG_TAG, "loadMovie(): Disk cache " + (diskHit != null ? "hit." : "miss."));
+                        if (diskHit != null) {
+                            putMovies(new Movie[]{diskHit});
+                        }
+                        listener.onTaskComplete(diskHit);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Method to add a movie to the memory index and to the disk, e.g. a movie that is about to be
+     * opened by its id, but may be in memory only (a movie of a page that is still being parsed,
+     * or of the search results). On the disk, the id still resolves after a process death.
+     * Note: The write is queued before any later read of the disk (a single disk thread).
+     */
+    public void putMovie(final Movie movie) {
+        putMovies(new Movie[]{movie});
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.writeMovie(movie);
+            }
+        });
+    }
+
+    /**
+     * Method to search the titles and the overviews of the movies of the memory index, without
+     * any request (see {@link MovieSearchIndex#search}). The search runs after the updates of the
+     * index that are already queued, and the results of successive searches arrive in order.
+     *
+     * @param query    The query, as typed.
+     * @param limit    The maximum number of movies to return.
+     * @param listener The listener to deliver the matching movies to (the title matches first).
+     */
+    public void searchMovies(final String query, final int limit,
+                             final TMDBApi.AsyncTaskCompleteListener<List<Movie>> listener) {
+        mSearchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Movie> results = mSearchIndex.search(query, limit);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onTaskComplete(results);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Method to rank the movies of the pages in memory (of all the sort orders) locally, without
+     * any request (see {@link MovieRanking}).
+     *
+     * @param sortOrder A sort order of {@link MovieRanking}.
+     * @param limit     The maximum number of movies to return.
+     * @return the first ranked movies, each one once.
+     */
+    public Movie[] rankCachedMovies(String sortOrder, int limit) {
+        long startTime = SystemClock.elapsedRealtime();
+        List<Movie> unique = new ArrayList<>();
+        SparseBooleanArray movieIds = new SparseBooleanArray();
+        for (CachedPage cachedPage : mMemoryCache.snapshot().values()) {
+            if (cachedPage.movies == null) {
+                continue;
+            }
+            for (Movie movie : cachedPage.movies) {
+                if (!movieIds.get(movie.getId())) {
+                    movieIds.put(movie.getId(), true);
+                    unique.add(movie);
+                }
+            }
+        }
+        MovieStore movies = new MovieStore(unique.size());
+        movies.append(unique.toArray(new Movie[unique.size()]));
+        Movie[] ranked = MovieRanking.rankedMovies(movies, sortOrder, limit);
+        Log.d(LOG_TAG, "rankCachedMovies(): Sort Order = " + sortOrder + " ~ Movies = " + movies.size()
+                + " ~ Ranked = " + ranked.length + " ~ Time = " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return ranked;
+    }
+
+    /**
+     * @return true if the page is in the memory level of the cache, i.e. {@link #loadPage}
+     * delivers it at once.
+     */
+    public boolean isPageInMemory(String sortOrder, int page) {
+        return mMemoryCache.get(cacheKey(sortOrder, page)) != null;
+    }
+
+    /**
+     * Method to fetch a page from the web and deliver it only if it differs from the cached page.
+     *
+     * @param cached   The cached page that has already been delivered, or null.
+     * @param force    True to revalidate the cached page even if it is still fresh.
+     * @param priority The priority of the request.
+     * @param settled  The listener to invoke once with the page that is cached after the
+     *                 revalidation (or null if there is none), or null.
+     */
+    private void revalidate(final String sortOrder, final int page, final CachedPage cached,
+                            boolean force, TMDBApi.Priority priority, final PageLoad listener,
+                            final TMDBApi.AsyncTaskCompleteListener<MoviePage> settled) {
+        /* A fresh page needs no request at all */
+        if (!force && cached != null && cached.isFresh(System.currentTimeMillis())) {
+            Log.d(LOG_TAG, "revalidate(): The cached page is fresh.");
+            settle(listener, settled, cached, true);
+            return;
+        }
+
+        /* Without an Internet connection the cached page (if any) is all there is */
+        if (!NetworkUtils.hasInternetConnection(mAppContext)) {
+            Log.d(LOG_TAG, "revalidate(): No Internet connection.");
+            if (cached == null) {
+                listener.onTaskComplete(null);
+            }
+            settle(listener, settled, cached, true);
+            return;
+        }
+
+        /* Nobody waits for the page anymore (e.g. the Activity was destroyed while it was read from disk) */
+        if (listener.cancelled) {
+            return;
+        }
+
+        /*
+         * The fetch stays subscribed to its call even if the load is cancelled, so the page is
+         * cached when the call completes (e.g. for the Activity that is recreated meanwhile).
+         */
+        TMDBApi api = new TMDBApi(new TMDBApi.AsyncTaskCompleteListener<MoviePage>() {
+            @Override
+            public void onTaskComplete(MoviePage fetched) {
+                /* The fetch failed; keep the cached page (if any) on screen */
+                if (fetched == null) {
+                    if (cached == null) {
+                        listener.onTaskComplete(null);
+                    }
+                    settle(listener, settled, cached, true);
+                    return;
+                }
+                /* The first movies of a response that is still being parsed */
+                if (fetched.isPartial()) {
+                    /* Show them only if there is nothing on screen; otherwise wait for the whole page */
+                    if (cached == null) {
+                        listener.onTaskComplete(fetched);
+                    }
+                    return;
+                }
+
+                long receivedAt = System.currentTimeMillis();
+
+                /* "304 Not Modified": nothing was downloaded or parsed, the cached page stays */
+                if (fetched.isNotModified()) {
+                    Log.d(LOG_TAG, "revalidate(): Not modified.");
+                    if (cached != null) {
+                        keepCachedPage(cached, fetched, receivedAt);
+                    } else {
+                        listener.onTaskComplete(null);
+                    }
+                    settle(listener, settled, cached, true);
+                    return;
+                }
+
+                final CachedPage fresh = new CachedPage(sortOrder, page, fetched.getTotalPages(),
+                        mGson.toJson(fetched.getMovies()), receivedAt);
+                fresh.movies = fetched.getMovies();
+                fresh.updateValidators(fetched.getValidators(), receivedAt);
+
+                if (fresh.hasSameContent(cached)) {
+                    /* Nothing changed, so only remember that the cached page is up to date */
+                    Log.d(LOG_TAG, "revalidate(): The cached page is up to date.");
+                    keepCachedPage(cached, fetched, receivedAt);
+                    settle(listener, settled, cached, true);
+                    return;
+                }
+
+                Log.d(LOG_TAG, "revalidate(): The page has changed.");
+                putPage(cacheKey(sortOrder, page), fresh);
+                mDiskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mDbHelper.writePage(fresh);
+                    }
+                });
+                listener.onTaskComplete(toMoviePage(fresh, false));
+                settle(listener, settled, fresh, false);
+            }
+        });
+        api.setPriority(priority).start(sortOrder, page, cached != null ? cached.getValidators() : null);
+    }
+
+    /**
+     * Method to keep a cached page that the server confirmed as unchanged, updating (in memory and
+     * on disk) its validators and freshness lifetime.
+     */
+    private void keepCachedPage(final CachedPage cached, MoviePage confirmation, long receivedAt) {
+        cached.updateValidators(confirmation.getValidators(), receivedAt);
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.touchPage(cached);
+            }
+        });
+    }
+
+    /**
+     * Method to add a page to the memory level, indexing its movies by their id.
+     */
+    private void putPage(String key, CachedPage cachedPage) {
+        mMemoryCache.put(key, cachedPage);
+        if (cachedPage.movies != null) {
+            putMovies(cachedPage.movies);
+        }
+    }
+
+    /**
+     * Method to add movies to the memory index, and to the search index in the background.
+     * Note: The movies that they evict from the memory index are removed from the search index
+     * first (see mMovieCache), so the search index never holds more movies than the memory index.
+     */
+    private void putMovies(final Movie[] movies) {
+        for (Movie movie : movies) {
+            mMovieCache.put(movie.getId(), movie);
+        }
+        mSearchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSearchIndex.addAll(movies);
+            }
+        });
+    }
+
+    /**
+     * Method to remove a movie that left the memory index from the search index, in the background.
+     */
+    private void unindexMovie(final int id) {
+        mSearchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSearchIndex.remove(id);
+            }
+        });
+    }
+
+    /**
+     * Method to mark the load as settled, and to inform the given listener (if any) of the page
+     * that is cached after the revalidation.
+     */
+    private static void settle(PageLoad load, TMDBApi.AsyncTaskCompleteListener<MoviePage> settled,
+                               CachedPage page, boolean fromCache) {
+        load.settled = true;
+        if (settled != null) {
+            settled.onTaskComplete(page != null ? toMoviePage(page, fromCache) : null);
+        }
+    }
+
+    private static MoviePage toMoviePage(CachedPage cachedPage, boolean fromCache) {
+        return new MoviePage(cachedPage.sortOrder, cachedPage.page, cachedPage.totalPages,
+                cachedPage.movies, fromCache);
+    }
+
+    private static String cacheKey(String sortOrder, int page) {
+        return sortOrder + ":" + page;
+    }
+
+    /**
+     * A load of a page (see {@link #loadPage}), that delivers the page to its listener until it
+     * is cancelled.
+     */
+    public static final class PageLoad implements TMDBApi.AsyncTaskCompleteListener<MoviePage> {
+
+        /* The listener, until the load is cancelled */
+        private TMDBApi.AsyncTaskCompleteListener<MoviePage> listener;
+
+        private boolean cancelled;
+
+        /* True once the page is revalidated (or the load failed), i.e. nothing more is delivered */
+        private boolean settled;
+
+        private PageLoad(TMDBApi.AsyncTaskCompleteListener<MoviePage> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onTaskComplete(MoviePage result) {
+            if (!cancelled) {
+                listener.onTaskComplete(result);
+            }
+        }
+
+        /**
+         * Method to stop delivering the page to the listener, e.g. when the screen that waits for
+         * it is destroyed, and to drop the reference to it. A fetch in flight (if any) is not
+         * cancelled: it completes, and its page is cached, so that an identical load (e.g. of the
+         * recreated screen) finds the page in the cache or joins the call instead of fetching the
+         * page again. A load that is cancelled before its fetch starts sends no request.
+         */
+        public void cancel() {
+            cancelled = true;
+            listener = null;
+        }
+
+        /**
+         * @return true if the load will deliver nothing more: its page was revalidated (or the
+         * load failed), or it was cancelled.
+         */
+        public boolean isSettled() {
+            return settled || cancelled;
+        }
+    }
+}
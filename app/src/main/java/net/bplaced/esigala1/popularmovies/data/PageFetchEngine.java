@@ -0,0 +1,242 @@
+package net.bplaced.esigala1.popularmovies.data;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Engine that fetches several pages, of one or more sort orders, concurrently through the
+ * {@link MovieRepository} (see {@link MovieRepository#fetchPage}).
+ *
+ * At most "maxInFlight" pages are fetched at the same time; the next page is started as soon as
+ * one completes. The requests themselves are asynchronous (and their bodies are parsed on the
+ * parser thread of {@link TMDBApi}), so the bound is a window of requests in flight instead of a
+ * pool of blocked threads, and all the requests still go through the rate limiter of the process.
+ *
+ * The pages complete in any order, but they are delivered to the listener in the order of the
+ * requests (a page waits for the pages before it). The movies of the delivered pages are merged
+ * into a single {@link MovieStore}, de-duplicated by their id (e.g. a movie that is both popular
+ * and top rated is kept once).
+ *
+ * Note: All the methods must be called, and the listener is invoked, on the main thread.
+ */
+
+public class PageFetchEngine {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + PageFetchEngine.class.getSimpleName();
+
+    /* The default maximum number of pages in flight */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * Listener of the pages of a fetch.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked for every request, in the order of the requests.
+         *
+         * @param request The request.
+         * @param page    The settled page (see {@link MovieRepository#fetchPage}), or null.
+         */
+        void onPage(PageRequest request, MoviePage page);
+
+        /**
+         * Invoked once, after the last page.
+         *
+         * @param movies   The movies of all the pages, de-duplicated by their id.
+         * @param failures The number of the requests without a page.
+         */
+        void onComplete(MovieStore movies, int failures);
+    }
+
+    /**
+     * A page of a sort order to fetch.
+     */
+    public static final class PageRequest {
+
+        public final String sortOrder;
+        public final int page;
+
+        public PageRequest(String sortOrder, int page) {
+            this.sortOrder = sortOrder;
+            this.page = page;
+        }
+
+        /**
+         * @return the requests of the pages [firstPage, lastPage] of every given sort order, page by
+         * page (i.e. the first pages of all the sort orders come first).
+         */
+        public static List<PageRequest> pages(String[] sortOrders, int firstPage, int lastPage) {
+            List<PageRequest> requests = new ArrayList<>();
+            for (int page = firstPage; page <= lastPage; page++) {
+                for (String sortOrder : sortOrders) {
+                    requests.add(new PageRequest(sortOrder, page));
+                }
+            }
+            return requests;
+        }
+
+        @Override
+        public String toString() {
+            return sortOrder + ":" + page;
+        }
+    }
+
+    private final MovieRepository mRepository;
+    private final List<PageRequest> mRequests;
+    private final TMDBApi.Priority mPriority;
+    private final boolean mForce;
+    private final int mMaxInFlight;
+
+    /* The settled pages by the index of their request, until they are delivered */
+    private final MoviePage[] mPages;
+    private final boolean[] mSettled;
+
+    /* The next request to start, the next one to deliver, and the requests in flight */
+    private int mNextToStart;
+    private int mNextToDeliver;
+    private int mInFlight;
+
+    /* The merged movies, and the ids that they include */
+    private final MovieStore mMovies = new MovieStore();
+    private final SparseBooleanArray mMovieIds = new SparseBooleanArray();
+
+    private Listener mListener;
+    private int mFailures;
+    private boolean mStarting;
+    private boolean mCancelled;
+    private long mStartTime;
+
+    /**
+     * Constructor
+     *
+     * @param context     Any context, to get the {@link MovieRepository}.
+     * @param requests    The pages to fetch, in the order of their delivery.
+     * @param priority    The priority of the requests.
+     * @param force       True to revalidate the cached pages even if they are still fresh.
+     * @param maxInFlight The maximum number of pages in flight (e.g. {@link #DEFAULT_MAX_IN_FLIGHT}).
+     */
+    public PageFetchEngine(Context context, List<PageRequest> requests, TMDBApi.Priority priority,
+                           boolean force, int maxInFlight) {
+        this.mRepository = MovieRepository.getInstance(context);
+        this.mRequests = new ArrayList<>(requests);
+        this.mPriority = priority;
+        this.mForce = force;
+        this.mMaxInFlight = Math.max(maxInFlight, 1);
+        this.mPages = new MoviePage[requests.size()];
+        this.mSettled = new boolean[requests.size()];
+    }
+
+    /**
+     * Method to start fetching the pages; an engine is started once.
+     *
+     * @param listener The listener of the pages.
+     */
+    public void start(Listener listener) {
+        Log.d(LOG_TAG, "start(): " + mRequests.size() + " page(s) ~ In flight <= " + mMaxInFlight
+                + " ~ Priority = " + mPriority);
+        mListener = listener;
+        mStartTime = SystemClock.elapsedRealtime();
+        startNext();
+        deliverSettled();
+    }
+
+    /**
+     * Method to stop delivering pages, e.g. when the results are not needed anymore.
+     * The requests in flight are not cancelled: they still complete into the cache.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Method to start the next requests, while the window allows it.
+     */
+    private void startNext() {
+        /* A cached page may settle at once, i.e. within this loop */
+        if (mStarting) {
+            return;
+        }
+        mStarting = true;
+        while (!mCancelled && mInFlight < mMaxInFlight && mNextToStart < mRequests.size()) {
+            final int index = mNextToStart++;
+            PageRequest request = mRequests.get(index);
+            mInFlight++;
+            mRepository.fetchPage(request.sortOrder, request.page, mPriority, mForce,
+                    new TMDBApi.AsyncTaskCompleteListener<MoviePage>() {
+                        @Override
+                        public void onTaskComplete(MoviePage page) {
+                            onPageSettled(index, page);
+                        }
+                    });
+        }
+        mStarting = false;
+    }
+
+    private void onPageSettled(int index, MoviePage page) {
+        mInFlight--;
+        mPages[index] = page;
+        mSettled[index] = true;
+        if (mCancelled) {
+            return;
+        }
+        startNext();
+        deliverSettled();
+    }
+
+    /**
+     * Method to deliver the settled pages that follow the delivered ones, in order, and to
+     * complete the fetch after the last page.
+     */
+    private void deliverSettled() {
+        while (!mCancelled && mNextToDeliver < mRequests.size() && mSettled[mNextToDeliver]) {
+            int index = mNextToDeliver++;
+            MoviePage page = mPages[index];
+            mPages[index] = null;
+            if (page == null) {
+                mFailures++;
+            } else {
+                merge(page.getMovies());
+            }
+            mListener.onPage(mRequests.get(index), page);
+        }
+        if (!mCancelled && mNextToDeliver == mRequests.size()) {
+            /* Nothing is left to deliver */
+            mCancelled = true;
+            Log.d(LOG_TAG, "deliverSettled(): " + mRequests.size() + " page(s) in "
+                    + (SystemClock.elapsedRealtime() - mStartTime) + " ms ~ Movies = " + mMovies.size()
+                    + " ~ Failures = " + mFailures);
+            mListener.onComplete(mMovies, mFailures);
+        }
+    }
+
+    /**
+     * Method to add the movies that are not merged yet to the merged movies.
+     */
+    private void merge(Movie[] movies) {
+        if (movies == null) {
+            return;
+        }
+        Movie[] unique = new Movie[movies.length];
+        int count = 0;
+        for (Movie movie : movies) {
+            if (!mMovieIds.get(movie.getId())) {
+                mMovieIds.put(movie.getId(), true);
+                unique[count++] = movie;
+            }
+        }
+        mMovies.append(count == movies.length ? unique : Arrays.copyOf(unique, count));
+    }
+}
@@ -0,0 +1,45 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+/**
+ * A class to represent the HTTP cache validators and the freshness lifetime of a response,
+ * so that the response can be revalidated later with a conditional request
+ * (If-None-Match / If-Modified-Since) instead of being downloaded again.
+ */
+
+public class CacheValidators {
+
+    /* The value of the "ETag" response header, or null */
+    private final String etag;
+
+    /* The value of the "Last-Modified" response header, or null */
+    private final String lastModified;
+
+    /* The freshness lifetime of the response ("Cache-Control: max-age"), or -1 if none */
+    private final int maxAgeSeconds;
+
+    public CacheValidators(String etag, String lastModified, int maxAgeSeconds) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public int getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    /**
+     * @param receivedAt The time (System.currentTimeMillis()) that the response was received.
+     * @return the time until the response is fresh, or the given time if it has no lifetime.
+     */
+    public long expiresAt(long receivedAt) {
+        return maxAgeSeconds > 0 ? receivedAt + maxAgeSeconds * 1000L : receivedAt;
+    }
+}
@@ -8,6 +8,8 @@ import java.util.List;
 /**
  * POJO that matches the structure of The Movie Database Api response.
  *
+ * Note: The JSON (de)serialization is done by {@link ModelTMDBApiTypeAdapter}, without reflection.
+ *
  * Created by Effie Sigala on 12/3/2018.
  */
 
@@ -19,6 +21,12 @@ public class ModelTMDBApi {
      * property it belongs to. If we want to name something differently, then we can annotate the
      * field with @SerializedName to tell Gson what property from the JSON to match this field with.
      */
+    @SerializedName("page")
+    public int page;
+
+    @SerializedName("total_pages")
+    public int totalPages;
+
     @SerializedName("results")
     public List<Movie> listOfMovies = new ArrayList<>();
 }
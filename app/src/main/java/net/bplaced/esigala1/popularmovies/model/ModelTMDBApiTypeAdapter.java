@@ -0,0 +1,84 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reflection-free Gson {@link TypeAdapter} for {@link ModelTMDBApi}.
+ *
+ * Note: Keep in sync with the @SerializedName annotations of {@link ModelTMDBApi}.
+ */
+public final class ModelTMDBApiTypeAdapter extends TypeAdapter<ModelTMDBApi> {
+
+    static final String PAGE = "page";
+    static final String TOTAL_PAGES = "total_pages";
+    static final String RESULTS = "results";
+
+    private final TypeAdapter<Movie> movieAdapter;
+
+    public ModelTMDBApiTypeAdapter(TypeAdapter<Movie> movieAdapter) {
+        this.movieAdapter = movieAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, ModelTMDBApi model) throws IOException {
+        if (model == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(PAGE).value(model.page);
+        out.name(TOTAL_PAGES).value(model.totalPages);
+        out.name(RESULTS);
+        out.beginArray();
+        for (Movie movie : model.listOfMovies) {
+            movieAdapter.write(out, movie);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public ModelTMDBApi read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        ModelTMDBApi model = new ModelTMDBApi();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case PAGE:
+                    model.page = in.nextInt();
+                    break;
+                case TOTAL_PAGES:
+                    model.totalPages = in.nextInt();
+                    break;
+                case RESULTS:
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Movie movie = movieAdapter.read(in);
+                        if (movie != null) {
+                            model.listOfMovies.add(movie);
+                        }
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return model;
+    }
+}
@@ -0,0 +1,27 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Gson {@link TypeAdapterFactory} of the reflection-free type adapters of the model classes.
+ * Register it with the GsonBuilder, so that Gson never falls back to its reflective adapter
+ * for {@link Movie} and {@link ModelTMDBApi} (also when they are nested, e.g. in a Movie[]).
+ */
+public final class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == Movie.class) {
+            return (TypeAdapter<T>) new MovieTypeAdapter();
+        }
+        if (rawType == ModelTMDBApi.class) {
+            return (TypeAdapter<T>) new ModelTMDBApiTypeAdapter(gson.getAdapter(Movie.class));
+        }
+        return null;
+    }
+}
@@ -2,23 +2,30 @@ package net.bplaced.esigala1.popularmovies.model;
 
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.util.Log;
 
 import com.google.gson.annotations.SerializedName;
 
+import net.bplaced.esigala1.popularmovies.utilities.DebugLog;
+
 /**
  * A class to represent a single {@link Movie} item.
  *
  * Important: Implement the Parcelable interface to be able to pass an instance
  * of this object between activities within an intent.
  *
+ * Note: The JSON (de)serialization is done by {@link MovieTypeAdapter}, without reflection.
+ *
  * Created by Effie Sigala on 07/03/2018.
  */
 
 public class Movie implements Parcelable {
 
     /* Tag for the log messages. */
-    private final String LOG_TAG = "DEBUGGING " + Movie.class.getSimpleName();
+    /* Note: Static, so that it is neither serialized by Gson nor allocated per instance. */
+    private static final String LOG_TAG = "DEBUGGING " + Movie.class.getSimpleName();
+
+    @SerializedName("id")
+    private int id;
 
     @SerializedName("original_title")
     private String originalTitle;
@@ -35,9 +42,15 @@ public class Movie implements Parcelable {
     @SerializedName("release_date")
     private String releaseDate;
 
+    @SerializedName("popularity")
+    private Double popularity;
+
+    @SerializedName("vote_count")
+    private int voteCount;
+
     /* Default Constructor */
     public Movie(){
-        Log.d(LOG_TAG, "Constructor ~ Default");
+        DebugLog.d(LOG_TAG, "Constructor ~ Default");
     }
 
     /**
@@ -47,12 +60,24 @@ public class Movie implements Parcelable {
      * @param in The Parcel in which the object has been written..
      */
     private Movie(Parcel in) {
-        Log.d(LOG_TAG, "Constructor ~ Parcelable");
+        DebugLog.d(LOG_TAG, "Constructor ~ Parcelable");
+        id = in.readInt();
         originalTitle = in.readString();
         imageThumbnail = in.readString();
         overview = in.readString();
-        rating = in.readDouble();
+        /* The rating is preceded by a flag, since it may be null */
+        rating = in.readByte() != 0 ? in.readDouble() : null;
         releaseDate = in.readString();
+        popularity = in.readByte() != 0 ? in.readDouble() : null;
+        voteCount = in.readInt();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
     }
 
     public String getOriginalTitle() {
@@ -95,6 +120,22 @@ public class Movie implements Parcelable {
         this.releaseDate = releaseDate;
     }
 
+    public Double getPopularity() {
+        return popularity;
+    }
+
+    public void setPopularity(Double popularity) {
+        this.popularity = popularity;
+    }
+
+    public int getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(int voteCount) {
+        this.voteCount = voteCount;
+    }
+
     /**********************************************************************************************
      * Implementation for the {@link Parcelable} interface
      *********************************************************************************************/
@@ -107,7 +148,7 @@ public class Movie implements Parcelable {
      */
     @Override
     public int describeContents() {
-        Log.d(LOG_TAG, "describeContents()");
+        DebugLog.d(LOG_TAG, "describeContents()");
         return 0;
     }
 
@@ -119,12 +160,26 @@ public class Movie implements Parcelable {
      */
     @Override
     public void writeToParcel(Parcel out, int flags) {
-        Log.d(LOG_TAG, "writeToParcel()");
+        DebugLog.d(LOG_TAG, "writeToParcel()");
+        out.writeInt(id);
         out.writeString(originalTitle);
         out.writeString(imageThumbnail);
         out.writeString(overview);
-        out.writeDouble(rating);
+        /* A movie without a rating is written with a flag only (writeDouble() would throw) */
+        if (rating != null) {
+            out.writeByte((byte) 1);
+            out.writeDouble(rating);
+        } else {
+            out.writeByte((byte) 0);
+        }
         out.writeString(releaseDate);
+        if (popularity != null) {
+            out.writeByte((byte) 1);
+            out.writeDouble(popularity);
+        } else {
+            out.writeByte((byte) 0);
+        }
+        out.writeInt(voteCount);
     }
 
     /**
@@ -140,14 +195,14 @@ public class Movie implements Parcelable {
         // passes along the unmarshalled `Parcel`, and then returns the new object!
         @Override
         public Movie createFromParcel(Parcel in) {
-            Log.d(LOG_TAG, "createFromParcel()");
+            DebugLog.d(LOG_TAG, "createFromParcel()");
             return new Movie(in);
         }
 
         // We just need to copy this and change the type to match our class.
         @Override
         public Movie[] newArray(int size) {
-            Log.d(LOG_TAG, "newArray()");
+            DebugLog.d(LOG_TAG, "newArray()");
             return new Movie[size];
         }
     };
@@ -0,0 +1,109 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+/**
+ * A class to represent a single page of {@link Movie} items, as returned by
+ * The Movie Database API for a given sort order.
+ */
+
+public class MoviePage {
+
+    /* The sort order (endpoint) that this page belongs to */
+    private final String sortOrder;
+
+    /* The number of this page (the first page is 1) */
+    private final int page;
+
+    /* The total number of pages available for this sort order */
+    private final int totalPages;
+
+    /* The movies of this page */
+    private final Movie[] movies;
+
+    /* True if this page was delivered from the local cache rather than from the web */
+    private final boolean fromCache;
+
+    /* The HTTP cache validators of the response (only for the pages delivered from the web) */
+    private CacheValidators validators;
+
+    /* True if the server answered "304 Not Modified", i.e. this page has no movies */
+    private boolean notModified;
+
+    /* True if the response is still being parsed, i.e. this page has only its first movies */
+    private boolean partial;
+
+    public MoviePage(String sortOrder, int page, int totalPages, Movie[] movies) {
+        this(sortOrder, page, totalPages, movies, false);
+    }
+
+    public MoviePage(String sortOrder, int page, int totalPages, Movie[] movies, boolean fromCache) {
+        this.sortOrder = sortOrder;
+        this.page = page;
+        this.totalPages = totalPages;
+        this.movies = movies;
+        this.fromCache = fromCache;
+    }
+
+    public String getSortOrder() {
+        return sortOrder;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    public Movie[] getMovies() {
+        return movies;
+    }
+
+    /**
+     * Method to create a page that the server reported as "304 Not Modified".
+     * Such a page carries only the (refreshed) validators, not the movies.
+     */
+    public static MoviePage notModified(String sortOrder, int page, CacheValidators validators) {
+        MoviePage notModifiedPage = new MoviePage(sortOrder, page, 0, null, false);
+        notModifiedPage.validators = validators;
+        notModifiedPage.notModified = true;
+        return notModifiedPage;
+    }
+
+    /**
+     * Method to create a page that is still being parsed; it carries the movies parsed so far.
+     * Note: The total number of pages may not be known yet, so it is 0.
+     */
+    public static MoviePage partial(String sortOrder, int page, Movie[] moviesSoFar) {
+        MoviePage partialPage = new MoviePage(sortOrder, page, 0, moviesSoFar, false);
+        partialPage.partial = true;
+        return partialPage;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    public CacheValidators getValidators() {
+        return validators;
+    }
+
+    public void setValidators(CacheValidators validators) {
+        this.validators = validators;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return true if there is at least one more page after this one.
+     */
+    public boolean hasNextPage() {
+        return page < totalPages;
+    }
+}
@@ -0,0 +1,194 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+/**
+ * Local ranking of the movies of a {@link MovieStore}, e.g. of the cached movies, so that a sort
+ * order can be displayed without a network round trip.
+ *
+ * Every sort order is a multi-key sort on the primitive columns of the store (the popularity, the
+ * vote average, the vote count and the release date), from its first key to its last one; the
+ * movies without a value of a key (NaN or no release date) come last for that key. The rows are
+ * ranked as an int[] permutation by a stable merge sort, so neither the rows nor any key are
+ * boxed, and the movies that are equal on all the keys keep their order in the store.
+ *
+ * The server sort orders ({@link #SORT_ORDER_POPULAR} and {@link #SORT_ORDER_TOP_RATED}, the
+ * endpoints of the API) are only approximated, since the server ranks all the movies and the
+ * store has only the cached ones. The local sort orders ({@link #SORT_ORDER_NEWEST} and
+ * {@link #SORT_ORDER_HIGHEST_RATED}) have no endpoint: they exist only locally.
+ */
+public final class MovieRanking {
+
+    /* The server sort orders (same values as the endpoints of TMDBApi) */
+    public static final String SORT_ORDER_POPULAR = "popular";
+    public static final String SORT_ORDER_TOP_RATED = "top_rated";
+
+    /* The local sort orders */
+    public static final String SORT_ORDER_NEWEST = "newest";
+    public static final String SORT_ORDER_HIGHEST_RATED = "highest_rated";
+
+    /* The minimum number of votes of a movie of the "highest rated" sort order */
+    public static final int MIN_VOTE_COUNT = 1000;
+
+    /* The keys of the sort, every one in descending order */
+    private static final int KEY_POPULARITY = 0;
+    private static final int KEY_RATING = 1;
+    private static final int KEY_VOTE_COUNT = 2;
+    private static final int KEY_RELEASE_DATE = 3;
+
+    /* Below this size a run is sorted by insertion (it is faster than merging short runs) */
+    private static final int INSERTION_SORT_THRESHOLD = 12;
+
+    private final MovieStore store;
+    private final int[] keys;
+
+    private MovieRanking(MovieStore store, int[] keys) {
+        this.store = store;
+        this.keys = keys;
+    }
+
+    /**
+     * @return true if the sort order exists only locally (it has no endpoint).
+     */
+    public static boolean isLocal(String sortOrder) {
+        return SORT_ORDER_NEWEST.equals(sortOrder) || SORT_ORDER_HIGHEST_RATED.equals(sortOrder);
+    }
+
+    /**
+     * Method to rank the movies of a store.
+     *
+     * @param store     The movies to rank.
+     * @param sortOrder One of the SORT_ORDER_* sort orders.
+     * @return the rows of the store in the order of the ranking; the "highest rated" sort order
+     * leaves out the movies with less than {@link #MIN_VOTE_COUNT} votes.
+     */
+    public static int[] rank(MovieStore store, String sortOrder) {
+        MovieRanking ranking = new MovieRanking(store, keysOf(sortOrder));
+        int[] rows = new int[store.size()];
+        int count = 0;
+        boolean minVotes = SORT_ORDER_HIGHEST_RATED.equals(sortOrder);
+        for (int row = 0; row < rows.length; row++) {
+            if (!minVotes || store.getVoteCount(row) >= MIN_VOTE_COUNT) {
+                rows[count++] = row;
+            }
+        }
+        int[] ranked = new int[count];
+        System.arraycopy(rows, 0, ranked, 0, count);
+        ranking.sort(ranked, rows, 0, count);
+        return ranked;
+    }
+
+    /**
+     * Method to rank the movies of a store, and get the first ones as {@link Movie} objects.
+     *
+     * @param limit The maximum number of movies.
+     * @see #rank(MovieStore, String)
+     */
+    public static Movie[] rankedMovies(MovieStore store, String sortOrder, int limit) {
+        int[] ranked = rank(store, sortOrder);
+        Movie[] movies = new Movie[Math.min(ranked.length, limit)];
+        for (int i = 0; i < movies.length; i++) {
+            movies[i] = store.getMovie(ranked[i]);
+        }
+        return movies;
+    }
+
+    /**
+     * @return the keys of a sort order, the primary one first.
+     */
+    private static int[] keysOf(String sortOrder) {
+        switch (sortOrder) {
+            case SORT_ORDER_TOP_RATED:
+            case SORT_ORDER_HIGHEST_RATED:
+                return new int[]{KEY_RATING, KEY_VOTE_COUNT, KEY_POPULARITY, KEY_RELEASE_DATE};
+            case SORT_ORDER_NEWEST:
+                return new int[]{KEY_RELEASE_DATE, KEY_POPULARITY, KEY_RATING, KEY_VOTE_COUNT};
+            case SORT_ORDER_POPULAR:
+                return new int[]{KEY_POPULARITY, KEY_RATING, KEY_VOTE_COUNT, KEY_RELEASE_DATE};
+            default:
+                throw new IllegalArgumentException("Unknown sort order " + sortOrder);
+        }
+    }
+
+    /**
+     * Method to sort rows[from, to) by a stable (top-down) merge sort, using the same range of
+     * buffer as scratch space.
+     */
+    private void sort(int[] rows, int[] buffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(rows, from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(rows, buffer, from, middle);
+        sort(rows, buffer, middle, to);
+        /* Already in order (e.g. the pages of the same sort order) */
+        if (compare(rows[middle - 1], rows[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+                rows[i] = buffer[left++];
+            } else {
+                rows[i] = buffer[right++];
+            }
+        }
+    }
+
+    private void insertionSort(int[] rows, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= from && compare(rows[j], row) > 0) {
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            rows[j + 1] = row;
+        }
+    }
+
+    /**
+     * @return a negative number if rowA ranks before rowB, a positive one if after, or 0.
+     */
+    private int compare(int rowA, int rowB) {
+        for (int key : keys) {
+            int result;
+            switch (key) {
+                case KEY_POPULARITY:
+                    result = compareDescending(store.getPopularity(rowA), store.getPopularity(rowB));
+                    break;
+                case KEY_RATING:
+                    result = compareDescending(store.getRating(rowA), store.getRating(rowB));
+                    break;
+                case KEY_VOTE_COUNT:
+                    result = compareDescending(store.getVoteCount(rowA), store.getVoteCount(rowB));
+                    break;
+                default:
+                    /* The release dates are of the form yyyyMMdd, and NO_RELEASE_DATE is 0 (last) */
+                    result = compareDescending(store.getReleaseDate(rowA), store.getReleaseDate(rowB));
+                    break;
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the descending order of two values, NaN (no value) last.
+     */
+    private static int compareDescending(double a, double b) {
+        boolean noA = Double.isNaN(a);
+        boolean noB = Double.isNaN(b);
+        if (noA || noB) {
+            return noA == noB ? 0 : (noA ? 1 : -1);
+        }
+        return a > b ? -1 : (a < b ? 1 : 0);
+    }
+
+    private static int compareDescending(int a, int b) {
+        return a > b ? -1 : (a < b ? 1 : 0);
+    }
+}
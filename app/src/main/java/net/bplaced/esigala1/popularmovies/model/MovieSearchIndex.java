@@ -0,0 +1,414 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * In-memory search index of the titles and the overviews of movies, for a search as the user
+ * types (e.g. "star wa" finds "Star Wars: The Last Jedi").
+ *
+ * Every word of the query must be the beginning of a word of the title or of the overview of a
+ * movie; the case and the accents are ignored. The movies whose title matches come first, and the
+ * movies of a group keep the order in which they were added (e.g. the order of the pages).
+ *
+ * The text is normalized into " word word ... word" (a space before every word), and indexed by
+ * its n-grams: the 2-gram of the start of every word (" s") and all its 3-grams (" st", "sta",
+ * "tar"). The n-grams of the query words are looked up and their posting lists (the sorted
+ * indexes of the movies) are intersected lazily, so only the movies that contain all of them are
+ * checked against the text, and only until there are enough results. The titles have their own
+ * posting lists, so the title matches are found without going through the overview matches.
+ * The index grows incrementally, as the movies are added, and shrinks as they are removed: a
+ * removed movie leaves a gap that the searches skip, and the gaps are compacted away (keeping the
+ * order of the movies) once they outnumber the movies.
+ *
+ * Note: Not thread safe.
+ */
+public class MovieSearchIndex {
+
+    /* The length of the n-grams */
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /* The indexed movies, and their normalized titles and overviews, by their index (null in a gap) */
+    private int slots;
+    private int gaps;
+    private Movie[] movies = new Movie[INITIAL_CAPACITY];
+    private String[] titles = new String[INITIAL_CAPACITY];
+    private String[] overviews = new String[INITIAL_CAPACITY];
+
+    /* The index of every movie, by its id */
+    private final HashMap<Integer, Integer> indexById = new HashMap<>();
+
+    /* The posting lists of the titles, and of the titles and the overviews, by n-gram */
+    private final HashMap<String, Postings> titlePostings = new HashMap<>();
+    private final HashMap<String, Postings> postings = new HashMap<>();
+
+    /**
+     * @return the number of indexed movies.
+     */
+    public int size() {
+        return slots - gaps;
+    }
+
+    /**
+     * Method to add movies to the index (see {@link #add(Movie)}).
+     */
+    public void addAll(Movie[] movies) {
+        if (movies == null) {
+            return;
+        }
+        for (Movie movie : movies) {
+            add(movie);
+        }
+    }
+
+    /**
+     * Method to add a movie to the index. A movie that is already indexed (by its id) keeps its
+     * place, and takes the given content.
+     */
+    public void add(Movie movie) {
+        String title = normalize(movie.getOriginalTitle());
+        String overview = normalize(movie.getOverview());
+        Integer existing = indexById.get(movie.getId());
+        int index;
+        if (existing != null) {
+            index = existing;
+            movies[index] = movie;
+            if (title.equals(titles[index]) && overview.equals(overviews[index])) {
+                return;
+            }
+            /* The n-grams of the old text may stay; the matches are checked against the text anyway */
+        } else {
+            ensureCapacity(slots + 1);
+            index = slots++;
+            indexById.put(movie.getId(), index);
+            movies[index] = movie;
+        }
+        index(index, title, overview);
+    }
+
+    /**
+     * Method to remove a movie from the index, e.g. when it leaves the cache.
+     *
+     * @param id The id of the movie.
+     * @return true if the movie was indexed.
+     */
+    public boolean remove(int id) {
+        Integer index = indexById.remove(id);
+        if (index == null) {
+            return false;
+        }
+        /* The posting lists keep the index until the compaction; the searches skip the gap */
+        movies[index] = null;
+        titles[index] = null;
+        overviews[index] = null;
+        gaps++;
+        if (gaps > slots - gaps) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Method to index the normalized title and overview of the movie at the given index.
+     */
+    private void index(int index, String title, String overview) {
+        titles[index] = title;
+        overviews[index] = overview;
+
+        HashSet<String> grams = new HashSet<>();
+        collectGrams(title, grams);
+        addPostings(titlePostings, grams, index);
+        collectGrams(overview, grams);
+        addPostings(postings, grams, index);
+    }
+
+    /**
+     * Method to rebuild the index without its gaps, keeping the order of the movies.
+     */
+    private void compact() {
+        int count = 0;
+        for (int index = 0; index < slots; index++) {
+            if (movies[index] != null) {
+                movies[count] = movies[index];
+                titles[count] = titles[index];
+                overviews[count] = overviews[index];
+                count++;
+            }
+        }
+        Arrays.fill(movies, count, slots, null);
+        Arrays.fill(titles, count, slots, null);
+        Arrays.fill(overviews, count, slots, null);
+        slots = count;
+        gaps = 0;
+
+        indexById.clear();
+        titlePostings.clear();
+        postings.clear();
+        for (int index = 0; index < count; index++) {
+            indexById.put(movies[index].getId(), index);
+            index(index, titles[index], overviews[index]);
+        }
+    }
+
+    private static void addPostings(HashMap<String, Postings> postings, HashSet<String> grams, int index) {
+        for (String gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                list = new Postings();
+                postings.put(gram, list);
+            }
+            list.add(index);
+        }
+    }
+
+    /**
+     * Method to search the movies.
+     *
+     * @param query The query, as typed.
+     * @param limit The maximum number of movies to return.
+     * @return the matching movies: first the ones whose title matches, then the ones whose
+     * overview matches; empty if the query has no words.
+     */
+    public List<Movie> search(String query, int limit) {
+        String[] words = words(normalize(query));
+        List<Movie> results = new ArrayList<>();
+        if (words.length == 0 || limit <= 0) {
+            return results;
+        }
+
+        List<String> grams = new ArrayList<>();
+        for (String word : words) {
+            grams.addAll(queryGrams(word));
+        }
+
+        /* 1. The movies whose title matches */
+        Intersection titleMatches = Intersection.of(titlePostings, grams);
+        for (int index = titleMatches.next(); index >= 0 && results.size() < limit; index = titleMatches.next()) {
+            if (movies[index] != null && matchesAll(titles[index], words)) {
+                results.add(movies[index]);
+            }
+        }
+
+        /* 2. The other movies, whose words match in the title or in the overview */
+        Intersection matches = Intersection.of(postings, grams);
+        for (int index = matches.next(); index >= 0 && results.size() < limit; index = matches.next()) {
+            if (movies[index] != null
+                    && !matchesAll(titles[index], words) && matchesAll(titles[index], overviews[index], words)) {
+                results.add(movies[index]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return true if every word is the beginning of a word of the text.
+     */
+    private static boolean matchesAll(String text, String[] words) {
+        for (String word : words) {
+            if (!startsWord(text, word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if every word is the beginning of a word of either text.
+     */
+    private static boolean matchesAll(String title, String overview, String[] words) {
+        for (String word : words) {
+            if (!startsWord(title, word) && !startsWord(overview, word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the word (with its leading space) is the beginning of a word of the text.
+     */
+    private static boolean startsWord(String text, String word) {
+        return text.contains(word);
+    }
+
+    /**
+     * Method to collect the n-grams of a normalized text: the start of every word and all its 3-grams.
+     */
+    private static void collectGrams(String text, HashSet<String> grams) {
+        int length = text.length();
+        for (int start = 0; start < length; start++) {
+            if (text.charAt(start) != ' ') {
+                continue;
+            }
+            int end = text.indexOf(' ', start + 1);
+            if (end < 0) {
+                end = length;
+            }
+            if (end - start >= 2) {
+                grams.add(text.substring(start, start + 2));
+            }
+            for (int i = start; i + GRAM_LENGTH <= end; i++) {
+                grams.add(text.substring(i, i + GRAM_LENGTH));
+            }
+            start = end - 1;
+        }
+    }
+
+    /**
+     * @return the n-grams of a query word (with its leading space).
+     */
+    private static List<String> queryGrams(String word) {
+        List<String> grams = new ArrayList<>();
+        if (word.length() < GRAM_LENGTH) {
+            grams.add(word);
+        } else {
+            for (int i = 0; i + GRAM_LENGTH <= word.length(); i++) {
+                grams.add(word.substring(i, i + GRAM_LENGTH));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * @return the words of a normalized text, each with its leading space.
+     */
+    private static String[] words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = text.indexOf(' ');
+        while (start >= 0 && start + 1 < text.length()) {
+            int end = text.indexOf(' ', start + 1);
+            words.add(end < 0 ? text.substring(start) : text.substring(start, end));
+            start = end;
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * @return the text in lower case, without accents, with every run of non letter or digit
+     * characters replaced by a single space and a space before every word (e.g. " amelie 2001").
+     */
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(decomposed.length() + 1);
+        boolean inWord = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    sb.append(' ');
+                    inWord = true;
+                }
+                sb.append(c);
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                /* An accent (a combining mark) does not end its word */
+                inWord = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= movies.length) {
+            return;
+        }
+        int capacity = Math.max(movies.length * 2, minCapacity);
+        movies = Arrays.copyOf(movies, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        overviews = Arrays.copyOf(overviews, capacity);
+    }
+
+    /**
+     * A posting list: the sorted indexes of the movies that contain an n-gram.
+     */
+    private static final class Postings implements Comparable<Postings> {
+
+        private int[] indexes = new int[4];
+        private int size;
+
+        void add(int index) {
+            /* The indexes usually arrive in order; a re-indexed movie is inserted in its place */
+            int position = size == 0 || indexes[size - 1] < index
+                    ? size : Arrays.binarySearch(indexes, 0, size, index);
+            if (position >= 0 && position < size) {
+                return;
+            }
+            if (position < 0) {
+                position = -position - 1;
+            }
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            System.arraycopy(indexes, position, indexes, position + 1, size - position);
+            indexes[position] = index;
+            size++;
+        }
+
+        @Override
+        public int compareTo(Postings other) {
+            return size < other.size ? -1 : (size == other.size ? 0 : 1);
+        }
+    }
+
+    /**
+     * A lazy intersection of posting lists: the indexes that are in all of them, in order.
+     */
+    private static final class Intersection {
+
+        /* The lists, the shortest first (it drives the intersection), and a position in each one */
+        private final Postings[] lists;
+        private final int[] positions;
+
+        private Intersection(Postings[] lists) {
+            this.lists = lists;
+            this.positions = new int[lists.length];
+        }
+
+        /**
+         * @return the intersection of the posting lists of the given n-grams (empty if an n-gram
+         * is not indexed).
+         */
+        static Intersection of(HashMap<String, Postings> postings, List<String> grams) {
+            Postings[] lists = new Postings[grams.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings.get(grams.get(i));
+                if (lists[i] == null) {
+                    return new Intersection(new Postings[]{new Postings()});
+                }
+            }
+            Arrays.sort(lists);
+            return new Intersection(lists);
+        }
+
+        /**
+         * @return the next index of the intersection, or -1 if there is none.
+         */
+        int next() {
+            Postings first = lists[0];
+            candidates:
+            while (positions[0] < first.size) {
+                int candidate = first.indexes[positions[0]++];
+                for (int i = 1; i < lists.length; i++) {
+                    Postings list = lists[i];
+                    int position = Arrays.binarySearch(list.indexes, positions[i], list.size, candidate);
+                    if (position < 0) {
+                        positions[i] = -position - 1;
+                        continue candidates;
+                    }
+                    positions[i] = position + 1;
+                }
+                return candidate;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+import java.util.Arrays;
+
+/**
+ * Compact, columnar store of {@link Movie} items, e.g. all the pages that the grid displays.
+ *
+ * Instead of one object per movie (with a boxed rating and separate String objects), every
+ * attribute is kept in its own array: primitive arrays for the ids, the ratings, the release
+ * dates, the popularities and the vote counts, and String arrays for the rest. A {@link Movie}
+ * object is created only on demand, by {@link #getMovie(int)}.
+ *
+ * The strings (the titles, the poster paths and the overviews) are kept as they are, without a
+ * pool: they are practically unique per movie, so a pool would add an entry per string and save
+ * nothing (see MovieStoreMemoryBenchmark).
+ *
+ * Note: Not thread safe.
+ */
+public class MovieStore {
+
+    /* The rating of a movie without a rating */
+    public static final double NO_RATING = Double.NaN;
+
+    /* The release date of a movie without a (valid) release date */
+    public static final int NO_RELEASE_DATE = 0;
+
+    /* The popularity of a movie without a popularity */
+    public static final double NO_POPULARITY = Double.NaN;
+
+    private static final int INITIAL_CAPACITY = 20;
+
+    private int size;
+
+    /* The columns; only the first "size" rows are used */
+    private int[] ids;
+    private double[] ratings;
+    private int[] releaseDates;
+    private double[] popularities;
+    private int[] voteCounts;
+    private String[] titles;
+    private String[] posterPaths;
+    private String[] overviews;
+
+    public MovieStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public MovieStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        ids = new int[capacity];
+        ratings = new double[capacity];
+        releaseDates = new int[capacity];
+        popularities = new double[capacity];
+        voteCounts = new int[capacity];
+        titles = new String[capacity];
+        posterPaths = new String[capacity];
+        overviews = new String[capacity];
+    }
+
+    /**
+     * @return the number of movies in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    /**
+     * @return the rating of the movie, or {@link #NO_RATING}.
+     */
+    public double getRating(int row) {
+        checkRow(row);
+        return ratings[row];
+    }
+
+    /**
+     * @return the release date of the movie as an integer of the form yyyyMMdd (e.g. 20180307),
+     * which keeps the order of the dates, or {@link #NO_RELEASE_DATE}.
+     */
+    public int getReleaseDate(int row) {
+        checkRow(row);
+        return releaseDates[row];
+    }
+
+    /**
+     * @return the popularity of the movie, or {@link #NO_POPULARITY}.
+     */
+    public double getPopularity(int row) {
+        checkRow(row);
+        return popularities[row];
+    }
+
+    public int getVoteCount(int row) {
+        checkRow(row);
+        return voteCounts[row];
+    }
+
+    public String getOriginalTitle(int row) {
+        checkRow(row);
+        return titles[row];
+    }
+
+    public String getImageThumbnail(int row) {
+        checkRow(row);
+        return posterPaths[row];
+    }
+
+    public String getOverview(int row) {
+        checkRow(row);
+        return overviews[row];
+    }
+
+    /**
+     * Method to get a view of a row as a {@link Movie} object. A new object is created on every
+     * call, so use the column getters in the hot paths (e.g. while binding the grid).
+     */
+    public Movie getMovie(int row) {
+        checkRow(row);
+        Movie movie = new Movie();
+        movie.setId(ids[row]);
+        movie.setOriginalTitle(titles[row]);
+        movie.setImageThumbnail(posterPaths[row]);
+        movie.setOverview(overviews[row]);
+        movie.setRating(Double.isNaN(ratings[row]) ? null : ratings[row]);
+        movie.setReleaseDate(formatReleaseDate(releaseDates[row]));
+        movie.setPopularity(Double.isNaN(popularities[row]) ? null : popularities[row]);
+        movie.setVoteCount(voteCounts[row]);
+        return movie;
+    }
+
+    /**
+     * @return true if the row has the same content as the given movie.
+     */
+    public boolean hasSameContent(int row, Movie movie) {
+        checkRow(row);
+        return ids[row] == movie.getId()
+                && Double.compare(ratings[row], toRating(movie.getRating())) == 0
+                && releaseDates[row] == parseReleaseDate(movie.getReleaseDate())
+                && Double.compare(popularities[row], toPopularity(movie.getPopularity())) == 0
+                && voteCounts[row] == movie.getVoteCount()
+                && equal(titles[row], movie.getOriginalTitle())
+                && equal(posterPaths[row], movie.getImageThumbnail())
+                && equal(overviews[row], movie.getOverview());
+    }
+
+    /**
+     * Method to copy the given rows into a new store, e.g. to take an immutable snapshot of them
+     * for a background thread.
+     */
+    public MovieStore copy(int row, int count) {
+        if (row < 0 || count < 0 || row + count > size) {
+            throw new IndexOutOfBoundsException("Rows " + row + "+" + count + " of " + size);
+        }
+        MovieStore snapshot = new MovieStore(count);
+        System.arraycopy(titles, row, snapshot.titles, 0, count);
+        System.arraycopy(posterPaths, row, snapshot.posterPaths, 0, count);
+        System.arraycopy(overviews, row, snapshot.overviews, 0, count);
+        System.arraycopy(ids, row, snapshot.ids, 0, count);
+        System.arraycopy(ratings, row, snapshot.ratings, 0, count);
+        System.arraycopy(releaseDates, row, snapshot.releaseDates, 0, count);
+        System.arraycopy(popularities, row, snapshot.popularities, 0, count);
+        System.arraycopy(voteCounts, row, snapshot.voteCounts, 0, count);
+        snapshot.size = count;
+        return snapshot;
+    }
+
+    /**
+     * Method to add the given movies after the last row.
+     */
+    public void append(Movie[] movies) {
+        insert(size, movies);
+    }
+
+    /**
+     * Method to insert the given movies at the given row; the following rows are shifted.
+     */
+    public void insert(int row, Movie[] movies) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        int count = movies.length;
+        ensureCapacity(size + count);
+        shift(row, row + count, size - row);
+        for (int i = 0; i < count; i++) {
+            setRow(row + i, movies[i]);
+        }
+        size += count;
+    }
+
+    /**
+     * Method to replace the content of the given rows with the given movies, one to one.
+     */
+    public void set(int row, Movie[] movies) {
+        if (row < 0 || row + movies.length > size) {
+            throw new IndexOutOfBoundsException("Rows " + row + "+" + movies.length + " of " + size);
+        }
+        for (int i = 0; i < movies.length; i++) {
+            setRow(row + i, movies[i]);
+        }
+    }
+
+    /**
+     * Method to remove the given rows; the following rows are shifted.
+     */
+    public void remove(int row, int count) {
+        if (row < 0 || count < 0 || row + count > size) {
+            throw new IndexOutOfBoundsException("Rows " + row + "+" + count + " of " + size);
+        }
+        shift(row + count, row, size - row - count);
+        /* Release the references of the rows that are no longer used */
+        Arrays.fill(titles, size - count, size, null);
+        Arrays.fill(posterPaths, size - count, size, null);
+        Arrays.fill(overviews, size - count, size, null);
+        size -= count;
+    }
+
+    /**
+     * Method to remove all the rows.
+     */
+    public void clear() {
+        remove(0, size);
+    }
+
+    private void setRow(int row, Movie movie) {
+        ids[row] = movie.getId();
+        ratings[row] = toRating(movie.getRating());
+        releaseDates[row] = parseReleaseDate(movie.getReleaseDate());
+        popularities[row] = toPopularity(movie.getPopularity());
+        voteCounts[row] = movie.getVoteCount();
+        titles[row] = movie.getOriginalTitle();
+        posterPaths[row] = movie.getImageThumbnail();
+        overviews[row] = movie.getOverview();
+    }
+
+    /**
+     * Method to move "count" rows from the row "from" to the row "to" (the ranges may overlap).
+     */
+    private void shift(int from, int to, int count) {
+        if (count <= 0 || from == to) {
+            return;
+        }
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(ratings, from, ratings, to, count);
+        System.arraycopy(releaseDates, from, releaseDates, to, count);
+        System.arraycopy(popularities, from, popularities, to, count);
+        System.arraycopy(voteCounts, from, voteCounts, to, count);
+        System.arraycopy(titles, from, titles, to, count);
+        System.arraycopy(posterPaths, from, posterPaths, to, count);
+        System.arraycopy(overviews, from, overviews, to, count);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(minCapacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        releaseDates = Arrays.copyOf(releaseDates, capacity);
+        popularities = Arrays.copyOf(popularities, capacity);
+        voteCounts = Arrays.copyOf(voteCounts, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        posterPaths = Arrays.copyOf(posterPaths, capacity);
+        overviews = Arrays.copyOf(overviews, capacity);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    private static double toRating(Double rating) {
+        return rating != null ? rating : NO_RATING;
+    }
+
+    private static double toPopularity(Double popularity) {
+        return popularity != null ? popularity : NO_POPULARITY;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Method to convert a release date of the form "yyyy-MM-dd" to an integer of the form
+     * yyyyMMdd, without any allocation.
+     *
+     * @return the release date as an integer, or {@link #NO_RELEASE_DATE} if it is not valid.
+     */
+    public static int parseReleaseDate(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return NO_RELEASE_DATE;
+        }
+        int value = 0;
+        for (int i = 0; i < 10; i++) {
+            if (i == 4 || i == 7) {
+                continue;
+            }
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_RELEASE_DATE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Method to convert a release date of the form yyyyMMdd to a string of the form "yyyy-MM-dd".
+     *
+     * @return the release date as a string, or null if there is no release date.
+     */
+    public static String formatReleaseDate(int date) {
+        if (date == NO_RELEASE_DATE) {
+            return null;
+        }
+        char[] chars = new char[10];
+        int value = date;
+        for (int i = 9; i >= 0; i--) {
+            if (i == 4 || i == 7) {
+                chars[i] = '-';
+                continue;
+            }
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,98 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reflection-free Gson {@link TypeAdapter} for {@link Movie}.
+ *
+ * The JSON property names are the ones of the @SerializedName annotations of {@link Movie}, but
+ * they are matched here as string literals and the values are set through the setters, so
+ * neither reflection nor the field names are involved. This keeps the (de)serialization fast on
+ * the first use and correct when the release build is minified.
+ *
+ * Note: Keep in sync with the @SerializedName annotations of {@link Movie}.
+ */
+public final class MovieTypeAdapter extends TypeAdapter<Movie> {
+
+    static final String ID = "id";
+    static final String ORIGINAL_TITLE = "original_title";
+    static final String POSTER_PATH = "poster_path";
+    static final String OVERVIEW = "overview";
+    static final String VOTE_AVERAGE = "vote_average";
+    static final String RELEASE_DATE = "release_date";
+    static final String POPULARITY = "popularity";
+    static final String VOTE_COUNT = "vote_count";
+
+    @Override
+    public void write(JsonWriter out, Movie movie) throws IOException {
+        if (movie == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(ID).value(movie.getId());
+        out.name(ORIGINAL_TITLE).value(movie.getOriginalTitle());
+        out.name(POSTER_PATH).value(movie.getImageThumbnail());
+        out.name(OVERVIEW).value(movie.getOverview());
+        out.name(VOTE_AVERAGE).value(movie.getRating());
+        out.name(RELEASE_DATE).value(movie.getReleaseDate());
+        out.name(POPULARITY).value(movie.getPopularity());
+        out.name(VOTE_COUNT).value(movie.getVoteCount());
+        out.endObject();
+    }
+
+    @Override
+    public Movie read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Movie movie = new Movie();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            /* A null value leaves the field to its default (null) */
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case ID:
+                    movie.setId(in.nextInt());
+                    break;
+                case ORIGINAL_TITLE:
+                    movie.setOriginalTitle(in.nextString());
+                    break;
+                case POSTER_PATH:
+                    movie.setImageThumbnail(in.nextString());
+                    break;
+                case OVERVIEW:
+                    movie.setOverview(in.nextString());
+                    break;
+                case VOTE_AVERAGE:
+                    movie.setRating(in.nextDouble());
+                    break;
+                case RELEASE_DATE:
+                    movie.setReleaseDate(in.nextString());
+                    break;
+                case POPULARITY:
+                    movie.setPopularity(in.nextDouble());
+                    break;
+                case VOTE_COUNT:
+                    movie.setVoteCount(in.nextInt());
+                    break;
+                default:
+                    /* The other properties of the response are not used */
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return movie;
+    }
+}
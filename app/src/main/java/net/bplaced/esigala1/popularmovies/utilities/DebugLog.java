@@ -0,0 +1,61 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import android.util.Log;
+
+import net.bplaced.esigala1.popularmovies.BuildConfig;
+
+/**
+ * Logging facade for the debug messages of the hot paths (e.g. binding the grid, creating and
+ * parcelling the movies).
+ *
+ * The debug messages are logged only in debug builds. {@link #ENABLED} is a compile time
+ * constant, so in a release build every {@code if (DebugLog.ENABLED)} block is removed by the
+ * compiler, and the methods below return before any message is built: a value is appended to its
+ * message only when the message is actually logged.
+ *
+ * Usage:
+ * <pre>
+ *     DebugLog.d(LOG_TAG, "bind(): Position = ", position);
+ *
+ *     if (DebugLog.ENABLED) {
+ *         Log.d(LOG_TAG, "applyReplacement(): " + count + " item(s) changed at " + position);
+ *     }
+ * </pre>
+ * Note: The "checkHotPathLogging" Gradle task (part of "check") fails on a message-building debug
+ * log call of a hot path that is not guarded this way.
+ */
+public final class DebugLog {
+
+    /* True if the debug messages are logged */
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    private DebugLog() {
+    }
+
+    /**
+     * Method to log a debug message.
+     */
+    public static void d(String tag, String message) {
+        if (ENABLED) {
+            Log.d(tag, message);
+        }
+    }
+
+    /**
+     * Method to log a debug message followed by a value; they are concatenated only if logged.
+     */
+    public static void d(String tag, String message, int value) {
+        if (ENABLED) {
+            Log.d(tag, message + value);
+        }
+    }
+
+    /**
+     * Method to log a debug message followed by a value; they are concatenated only if logged.
+     */
+    public static void d(String tag, String message, Object value) {
+        if (ENABLED) {
+            Log.d(tag, message + value);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StatFs;
+import android.util.Log;
+
+import com.jakewharton.picasso.OkHttp3Downloader;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.StatsSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Holder of the single {@link Picasso} instance of the application.
+ *
+ * The poster images are downloaded through the shared OkHttp client of {@link TMDBClient},
+ * so they use the same connection pool and dispatcher as the API calls.
+ *
+ * The posters are cached in two size-bounded tiers:
+ * <ul>
+ *     <li>a memory LRU cache of decoded bitmaps, sized from the memory class of the device, and</li>
+ *     <li>a disk LRU cache of the downloaded files (the OkHttp response cache), sized from the
+ *     free space of the cache directory.</li>
+ * </ul>
+ * The files of the posters never change (a new image gets a new path), so they are cached as
+ * immutable and a cached poster is served from the disk without a network request, even after
+ * the application is relaunched.
+ */
+public final class ImageLoader {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + ImageLoader.class.getSimpleName();
+
+    /* The memory cache gets 1/MEMORY_CACHE_DIVISOR of the application's heap */
+    private static final int MEMORY_CACHE_DIVISOR = 7;
+
+    /* Name of the disk cache directory for the poster images, and the bounds of its size */
+    private static final String DISK_CACHE_DIR = "picasso-cache";
+    private static final long MIN_DISK_CACHE_SIZE = 5L * 1024 * 1024;
+    private static final long MAX_DISK_CACHE_SIZE = 50L * 1024 * 1024;
+
+    /* The disk cache gets 1/DISK_CACHE_DIVISOR of the free space, within the above bounds */
+    private static final int DISK_CACHE_DIVISOR = 50;
+
+    /* The cache control of the poster responses (the poster files are immutable) */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000";
+
+    private static volatile Picasso sPicasso;
+
+    /* The two cache tiers, kept to report their counters */
+    private static LruCache sMemoryCache;
+    private static Cache sDiskCache;
+
+    /* The OkHttp client of Picasso, with the disk tier */
+    private static OkHttpClient sImageClient;
+
+    private ImageLoader() {
+    }
+
+    /**
+     * Method to get the single instance of Picasso, creating it on the first call.
+     *
+     * @param context Any context; only the application context is retained.
+     * @return the shared instance of Picasso.
+     */
+    public static Picasso get(Context context) {
+        Picasso picasso = sPicasso;
+        if (picasso == null) {
+            synchronized (ImageLoader.class) {
+                picasso = sPicasso;
+                if (picasso == null) {
+                    Context appContext = context.getApplicationContext();
+
+                    /* Memory tier: the decoded bitmaps */
+                    sMemoryCache = new LruCache(calculateMemoryCacheSize(appContext));
+
+                    /* Disk tier: the downloaded files; the pool and dispatcher stay shared */
+                    File cacheDir = new File(appContext.getCacheDir(), DISK_CACHE_DIR);
+                    sDiskCache = new Cache(cacheDir, calculateDiskCacheSize(cacheDir));
+                    sImageClient = TMDBClient.getInstance().getOkHttpClient().newBuilder()
+                            .cache(sDiskCache)
+                            .addNetworkInterceptor(new ImmutableCacheInterceptor())
+                            .build();
+
+                    picasso = new Picasso.Builder(appContext)
+                            .memoryCache(sMemoryCache)
+                            .downloader(new OkHttp3Downloader(sImageClient))
+                            .build();
+                    sPicasso = picasso;
+                    Log.d(LOG_TAG, "get(): Picasso created ~ Memory cache = "
+                            + sMemoryCache.maxSize() / 1024 + " KB ~ Disk cache = "
+                            + sDiskCache.maxSize() / 1024 + " KB");
+                }
+            }
+        }
+        return picasso;
+    }
+
+    /**
+     * Method to release memory when the system asks for it (see
+     * {@link ComponentCallbacks2#onTrimMemory(int)}). The memory tier is emptied when the
+     * application is in the background and the system runs low on memory; the disk tier is kept.
+     *
+     * @param level The level of the trim.
+     */
+    public static void onTrimMemory(int level) {
+        if (sPicasso == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            Log.d(LOG_TAG, "onTrimMemory(): Level " + level + " ~ Empty the memory cache.");
+            sMemoryCache.evictAll();
+        }
+    }
+
+    /**
+     * Method to download images into the disk tier only, without decoding them (e.g. to warm the
+     * cache in the background, where no bitmap is displayed). The images that are already on the
+     * disk are not downloaded again.
+     *
+     * @param context Any context, to create Picasso and its caches if needed.
+     * @param urls    The URLs of the images.
+     * @param onDone  Invoked on the main thread once every image is either cached or has failed,
+     *                with the number of the failed ones.
+     */
+    public static void prefetchToDisk(Context context, List<String> urls,
+                                      final TMDBApi.AsyncTaskCompleteListener<Integer> onDone) {
+        get(context);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        final AtomicInteger pending = new AtomicInteger(urls.size());
+        final AtomicInteger failures = new AtomicInteger();
+        if (urls.isEmpty()) {
+            onDone.onTaskComplete(0);
+            return;
+        }
+        for (String url : urls) {
+            sImageClient.newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    failures.incrementAndGet();
+                    countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    /* The response is written to the disk tier only once its body is read to the end */
+                    try {
+                        if (!response.isSuccessful() || response.body() == null) {
+                            failures.incrementAndGet();
+                        } else {
+                            response.body().bytes();
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        response.close();
+                    }
+                    countDown();
+                }
+
+                private void countDown() {
+                    if (pending.decrementAndGet() == 0) {
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onDone.onTaskComplete(failures.get());
+                            }
+                        });
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Method to log the counters of both cache tiers.
+     *
+     * Memory tier: hits, misses and evictions of the decoded bitmaps.
+     * Disk tier: the requests, the ones served from the disk (hits) and the ones that went to the
+     * network (misses or revalidations).
+     * Note: The OkHttp disk cache does not count its evictions; its size against its maximum size
+     * shows when it starts to evict.
+     */
+    public static void logCacheStats() {
+        Picasso picasso = sPicasso;
+        if (picasso == null) {
+            return;
+        }
+        StatsSnapshot snapshot = picasso.getSnapshot();
+        long diskSize;
+        try {
+            diskSize = sDiskCache.size();
+        } catch (IOException e) {
+            diskSize = -1;
+        }
+        Log.d(LOG_TAG, "Memory cache: Hits = " + snapshot.cacheHits
+                + " ~ Misses = " + snapshot.cacheMisses
+                + " ~ Evictions = " + sMemoryCache.evictionCount()
+                + " ~ Size = " + sMemoryCache.size() / 1024 + "/" + sMemoryCache.maxSize() / 1024 + " KB");
+        Log.d(LOG_TAG, "Disk cache: Requests = " + sDiskCache.requestCount()
+                + " ~ Hits = " + sDiskCache.hitCount()
+                + " ~ Network = " + sDiskCache.networkCount()
+                + " ~ Size = " + diskSize / 1024 + "/" + sDiskCache.maxSize() / 1024 + " KB");
+    }
+
+    /**
+     * Method to calculate the size of the memory cache from the memory class of the device
+     * (i.e. the heap limit of the application).
+     */
+    private static int calculateMemoryCacheSize(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR);
+        }
+        boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+        int memoryClass = largeHeap ? activityManager.getLargeMemoryClass() : activityManager.getMemoryClass();
+        return (int) (1024L * 1024L * memoryClass / MEMORY_CACHE_DIVISOR);
+    }
+
+    /**
+     * Method to calculate the size of the disk cache from the free space of its directory.
+     */
+    @SuppressWarnings("deprecation")
+    private static long calculateDiskCacheSize(File dir) {
+        long size = MIN_DISK_CACHE_SIZE;
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                return size;
+            }
+            StatFs statFs = new StatFs(dir.getAbsolutePath());
+            long available;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                available = statFs.getAvailableBytes();
+            } else {
+                available = (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
+            }
+            size = available / DISK_CACHE_DIVISOR;
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_TAG, "calculateDiskCacheSize(): Unable to read the free space.", e);
+        }
+        return Math.max(Math.min(size, MAX_DISK_CACHE_SIZE), MIN_DISK_CACHE_SIZE);
+    }
+
+    /**
+     * Network interceptor to store the poster responses as immutable, so that the disk tier
+     * serves them without any network request (not even a revalidation).
+     */
+    private static final class ImmutableCacheInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Response response = chain.proceed(chain.request());
+            if (!response.isSuccessful()) {
+                return response;
+            }
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .header("Cache-Control", IMMUTABLE_CACHE_CONTROL)
+                    .build();
+        }
+    }
+}
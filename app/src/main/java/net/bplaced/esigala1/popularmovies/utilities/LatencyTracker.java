@@ -0,0 +1,103 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Tracker of latencies (e.g. of the loads from {@link TMDBApi#start} to
+ * {@link TMDBApi.AsyncTaskCompleteListener#onTaskComplete}), reporting their percentiles.
+ *
+ * The most recent {@link #MAX_SAMPLES} latencies are kept in a ring buffer, so the percentiles
+ * follow the current conditions (e.g. the latency and the faults of the mock server) and the
+ * memory stays bounded.
+ *
+ * Note: Thread safe.
+ */
+public class LatencyTracker {
+
+    /* The number of the most recent latencies to keep */
+    public static final int MAX_SAMPLES = 1024;
+
+    private final String name;
+    private final long[] samples = new long[MAX_SAMPLES];
+
+    /* The number of latencies that were recorded (the ring buffer keeps the last MAX_SAMPLES) */
+    private long count;
+
+    /* The number of operations that failed (their latencies are recorded too) */
+    private long failures;
+
+    /**
+     * @param name The name of the tracked operation, for the summary.
+     */
+    public LatencyTracker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Method to record the latency of a completed operation.
+     *
+     * @param millis  The latency in milliseconds.
+     * @param success False if the operation failed.
+     */
+    public synchronized void record(long millis, boolean success) {
+        samples[(int) (count % MAX_SAMPLES)] = millis;
+        count++;
+        if (!success) {
+            failures++;
+        }
+    }
+
+    /**
+     * @return the number of latencies that were recorded.
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    /**
+     * @return the given percentile (0 - 100) of the kept latencies in milliseconds, or -1 if
+     * there is no latency.
+     */
+    public synchronized long percentile(double percentile) {
+        return percentile(sortedSamples(), percentile);
+    }
+
+    /**
+     * Method to forget all the latencies, e.g. before a new measurement.
+     */
+    public synchronized void reset() {
+        count = 0;
+        failures = 0;
+    }
+
+    /**
+     * @return a one-line summary of the kept latencies: their count, the failures, and the
+     * p50, p90, p95, p99 and maximum latencies.
+     */
+    public synchronized String summary() {
+        long[] sorted = sortedSamples();
+        return String.format(Locale.US, "%s: n = %d ~ failures = %d ~ p50 = %d ms ~ p90 = %d ms"
+                        + " ~ p95 = %d ms ~ p99 = %d ms ~ max = %d ms",
+                name, count, failures,
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 95),
+                percentile(sorted, 99), percentile(sorted, 100));
+    }
+
+    private long[] sortedSamples() {
+        long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, MAX_SAMPLES));
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * @return the given percentile of the sorted latencies (nearest rank), or -1 if there is none.
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(Math.min(rank, sorted.length), 1) - 1];
+    }
+}
@@ -0,0 +1,120 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import net.bplaced.esigala1.popularmovies.model.ModelTMDBApi;
+import net.bplaced.esigala1.popularmovies.model.Movie;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser of The Movie Database API list responses.
+ *
+ * The response is read token by token with a {@link JsonReader}, straight from the (network)
+ * stream, so the movies can be handed over in batches while the rest of the body is still being
+ * downloaded, instead of waiting for the whole body to be buffered and parsed.
+ *
+ * Note: The methods block on the stream, so they must not be called on the main thread.
+ */
+public class MovieStreamParser {
+
+    /**
+     * Interface to receive the movies while they are parsed.
+     * Note: Invoked on the thread that parses the response.
+     */
+    public interface BatchListener {
+        /**
+         * Invoked every time a batch of movies has been parsed.
+         *
+         * @param parsedSoFar All the movies that have been parsed so far, in order.
+         */
+        void onBatch(List<Movie> parsedSoFar);
+    }
+
+    /* The JSON property names of the response */
+    private static final String PROPERTY_PAGE = "page";
+    private static final String PROPERTY_TOTAL_PAGES = "total_pages";
+    private static final String PROPERTY_RESULTS = "results";
+
+    private final TypeAdapter<Movie> movieAdapter;
+
+    /**
+     * Constructor
+     *
+     * @param gson The Gson instance to get the type adapter of a single {@link Movie} from.
+     */
+    public MovieStreamParser(Gson gson) {
+        this.movieAdapter = gson.getAdapter(Movie.class);
+    }
+
+    /**
+     * Method to parse a list response.
+     *
+     * @param in             The body of the response.
+     * @param firstBatchSize The number of movies of the first batch (e.g. one screen of posters).
+     * @param batchSize      The number of movies of every later batch.
+     * @param batchListener  The listener to receive the batches, or null.
+     * @return the parsed response.
+     * @throws IOException if the body could not be read or is not a valid response.
+     */
+    public ModelTMDBApi parse(Reader in, int firstBatchSize, int batchSize,
+                              BatchListener batchListener) throws IOException {
+        ModelTMDBApi model = new ModelTMDBApi();
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case PROPERTY_PAGE:
+                        model.page = reader.nextInt();
+                        break;
+                    case PROPERTY_TOTAL_PAGES:
+                        model.totalPages = reader.nextInt();
+                        break;
+                    case PROPERTY_RESULTS:
+                        readResults(reader, model.listOfMovies, firstBatchSize, batchSize, batchListener);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return model;
+    }
+
+    /**
+     * Method to read the "results" array, handing the movies over in batches.
+     */
+    private void readResults(JsonReader reader, List<Movie> movies, int firstBatchSize,
+                             int batchSize, BatchListener batchListener) throws IOException {
+        int nextBatchEnd = firstBatchSize;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Movie movie = movieAdapter.read(reader);
+            if (movie != null) {
+                movies.add(movie);
+            }
+            if (batchListener != null && movies.size() == nextBatchEnd) {
+                /* Hand over a copy, since the list keeps growing on this thread */
+                batchListener.onBatch(new ArrayList<>(movies));
+                nextBatchEnd += batchSize;
+            }
+        }
+        reader.endArray();
+    }
+}
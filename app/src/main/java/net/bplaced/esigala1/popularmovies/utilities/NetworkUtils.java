@@ -20,6 +20,8 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.util.Log;
 
+import net.bplaced.esigala1.popularmovies.BuildConfig;
+
 /**
  * These utilities will be used to communicate with the "themoviedb.org" servers.
  *
@@ -29,8 +31,35 @@ public final class NetworkUtils {
     /* Tag for the log messages. */
     private static final String LOG_TAG = "DEBUGGING " + NetworkUtils.class.getSimpleName();
 
-    /* The TheMovieDB Image Size value */
-    private final static String IMAGE_SIZE = "w185";
+    /* The base image URL, or the one of a stand-in server, set with the Gradle property "tmdbImageBaseUrl" */
+    private static final String BASE_IMAGE_URL = BuildConfig.TMDB_IMAGE_BASE_URL;
+
+    /* The TheMovieDB poster sizes (widths in pixels), in ascending order */
+    private static final int[] POSTER_WIDTHS = {92, 154, 185, 342, 500, 780};
+
+    /*
+     * The TheMovieDB Image Size value of every poster width. A target wider than the largest one
+     * gets the largest one (w780) and is scaled up on screen: the "original" size is never used,
+     * since it is the full file of the poster (often several MB).
+     */
+    private static final String[] POSTER_SIZES = {"w92", "w154", "w185", "w342", "w500", "w780"};
+
+    /*
+     * The URL prefix of every poster size, without and with the trailing "/", built once so that
+     * a URL costs a single concatenation.
+     */
+    private static final String[] POSTER_URL_PREFIXES = new String[POSTER_SIZES.length];
+    private static final String[] POSTER_URL_PREFIXES_WITH_SLASH = new String[POSTER_SIZES.length];
+
+    static {
+        for (int i = 0; i < POSTER_SIZES.length; i++) {
+            POSTER_URL_PREFIXES[i] = BASE_IMAGE_URL + POSTER_SIZES[i];
+            POSTER_URL_PREFIXES_WITH_SLASH[i] = POSTER_URL_PREFIXES[i] + "/";
+        }
+    }
+
+    /* The default poster width (w185), when the size of the target view is unknown */
+    public final static int DEFAULT_POSTER_WIDTH = 185;
 
     /**
      * Method to build the image URL as a String.
@@ -39,21 +68,62 @@ public final class NetworkUtils {
      * @return the path to the image as a String
      */
     public static String buildImageURL(String imageName){
-        Log.d(LOG_TAG, "buildImageURL()");
+        return buildImageURL(imageName, DEFAULT_POSTER_WIDTH);
+    }
+
+    /**
+     * Method to build the image URL as a String, for the smallest poster size that covers the
+     * given width, so that a small grid cell does not download a larger poster than it displays
+     * and a large view does not upscale a small one.
+     *
+     * Note: Called on every bind, so it allocates nothing but the resulting String.
+     *
+     * @param imageName   is the name of the image
+     * @param targetWidth is the width (in pixels, i.e. including the density) of the target view
+     * @return the path to the image as a String
+     */
+    public static String buildImageURL(String imageName, int targetWidth){
         if (imageName == null) {
             return null;
         }
-        /* The base image URL */
-        String baseImageURL = "http://image.tmdb.org/t/p/";
-        /* Build the image URL */
-        StringBuilder sb = new StringBuilder();
-        sb.append(baseImageURL);
-        sb.append(IMAGE_SIZE);
-        sb.append("/");
-        sb.append(imageName);
-        Log.d(LOG_TAG, "Image URL: " + sb);
-        /* Return  */
-        return sb.toString();
+        int index = selectPosterSizeIndex(targetWidth);
+        /* The image names of the API start with "/" */
+        if (imageName.startsWith("/")) {
+            return POSTER_URL_PREFIXES[index].concat(imageName);
+        }
+        return POSTER_URL_PREFIXES_WITH_SLASH[index].concat(imageName);
+    }
+
+    /**
+     * @return the TheMovieDB Image Size value that would be used for the given width.
+     */
+    public static String selectPosterSize(int targetWidth) {
+        return POSTER_SIZES[selectPosterSizeIndex(targetWidth)];
+    }
+
+    /**
+     * @return the width (in pixels) of the poster size that would be used for the given width.
+     */
+    public static int selectPosterWidth(int targetWidth) {
+        return POSTER_WIDTHS[selectPosterSizeIndex(targetWidth)];
+    }
+
+    /**
+     * @return the index of the smallest poster size that is at least as wide as the given width,
+     * of the largest size if none is, or of the default size if the width is unknown (e.g. 0, for
+     * a view that is not measured yet).
+     */
+    private static int selectPosterSizeIndex(int targetWidth) {
+        if (targetWidth <= 0) {
+            targetWidth = DEFAULT_POSTER_WIDTH;
+        }
+        for (int i = 0; i < POSTER_WIDTHS.length; i++) {
+            if (POSTER_WIDTHS[i] >= targetWidth) {
+                return i;
+            }
+        }
+        /* Wider than the largest poster size */
+        return POSTER_WIDTHS.length - 1;
     }
 
     /**
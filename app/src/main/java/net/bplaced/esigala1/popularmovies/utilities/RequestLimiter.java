@@ -0,0 +1,276 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.PriorityQueue;
+
+/**
+ * Client-side rate limiter of the requests to The Movie Database API: a token bucket, with a
+ * priority queue of the requests that wait for a token.
+ *
+ * The bucket holds up to "capacity" tokens and gains "rate" tokens per second; every request
+ * takes a token. A request without a token waits in the queue, where the requests of a higher
+ * {@link TMDBApi.Priority} (e.g. a page that the user waits for) go ahead of the lower ones (e.g.
+ * prefetches and cache warming), and requests of the same priority keep their order.
+ *
+ * When the server answers "429 Too Many Requests", all the requests are paused until the time of
+ * its "Retry-After" header (see {@link #pauseFor(long)}).
+ *
+ * The time and the delayed starts come from a {@link Clock}: the main thread in the app, or a
+ * fake clock in the tests.
+ *
+ * Note: All the methods must be called, and the requests are started, on the main thread.
+ */
+class RequestLimiter {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + RequestLimiter.class.getSimpleName();
+
+    private final int capacity;
+    private final double tokensPerMs;
+
+    /* The tokens of the bucket, as of lastRefillTime */
+    private double tokens;
+    private long lastRefillTime;
+
+    /* The time (of the clock) until no request may start (Retry-After) */
+    private long pausedUntil;
+
+    /* The requests that wait for a token */
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+
+    /* Source of the order of the requests of the same priority */
+    private long sequence;
+
+    /* The statistics of the limiter */
+    private long granted;
+    private long delayed;
+
+    private final Clock clock;
+    private boolean drainScheduled;
+
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainScheduled = false;
+            drain();
+        }
+    };
+
+    /**
+     * The source of the time of the limiter, and of the delayed drains of its queue.
+     */
+    interface Clock {
+        /**
+         * @return the current time in milliseconds (monotonic).
+         */
+        long now();
+
+        /**
+         * Method to run a task after a delay, on the thread of the limiter.
+         */
+        void schedule(Runnable task, long delayMs);
+
+        /**
+         * Method to remove a scheduled task that has not run yet.
+         */
+        void cancel(Runnable task);
+    }
+
+    /**
+     * The clock of the app: SystemClock.elapsedRealtime(), and the main thread.
+     */
+    private static final class MainThreadClock implements Clock {
+
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            mainHandler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            mainHandler.removeCallbacks(task);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity          The maximum number of tokens (i.e. of requests in a burst).
+     * @param requestsPerSecond The number of tokens that are added every second.
+     */
+    RequestLimiter(int capacity, double requestsPerSecond) {
+        this(capacity, requestsPerSecond, new MainThreadClock());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param clock The source of the time, and of the delayed drains.
+     * @see #RequestLimiter(int, double)
+     */
+    RequestLimiter(int capacity, double requestsPerSecond, Clock clock) {
+        this.capacity = capacity;
+        this.tokensPerMs = requestsPerSecond / 1000.0;
+        this.tokens = capacity;
+        this.clock = clock;
+        this.lastRefillTime = clock.now();
+    }
+
+    /**
+     * Method to start a request as soon as the rate allows it.
+     *
+     * @param priority The priority of the request.
+     * @param request  The request to start (on the main thread), at once or later.
+     * @return the ticket of the request, to cancel it while it waits.
+     */
+    Ticket acquire(TMDBApi.Priority priority, Runnable request) {
+        Ticket ticket = new Ticket(priority, sequence++, request);
+        queue.add(ticket);
+        drain();
+        if (!ticket.started) {
+            delayed++;
+            Log.d(LOG_TAG, "acquire(): " + priority + " request waits ~ Queue = " + queue.size());
+        }
+        return ticket;
+    }
+
+    /**
+     * Method to raise the priority of a request that waits for a token (e.g. a prefetch that a
+     * visible request was coalesced into). It goes ahead of the requests of a lower priority, and
+     * takes its place among the ones of the new priority by its arrival. A started request is
+     * not affected.
+     *
+     * @param ticket   The ticket of the request.
+     * @param priority The new priority, if it is higher than the current one.
+     */
+    void raise(Ticket ticket, TMDBApi.Priority priority) {
+        if (ticket.started || ticket.cancelled || priority.compareTo(ticket.priority) >= 0) {
+            return;
+        }
+        /* The position of a ticket in the queue is fixed when it is added */
+        if (queue.remove(ticket)) {
+            ticket.priority = priority;
+            queue.add(ticket);
+        }
+    }
+
+    /**
+     * Method to pause all the requests, e.g. for the "Retry-After" of a "429" response.
+     *
+     * @param millis The time to pause for.
+     */
+    void pauseFor(long millis) {
+        long until = clock.now() + millis;
+        if (until > pausedUntil) {
+            Log.d(LOG_TAG, "pauseFor(): " + millis + " ms");
+            pausedUntil = until;
+            /* The server has counted the requests so far, so start again from an empty bucket */
+            tokens = 0;
+            lastRefillTime = until;
+        }
+    }
+
+    /**
+     * @return the time in milliseconds until the requests may start again, or 0 if not paused.
+     */
+    long remainingPause() {
+        return Math.max(pausedUntil - clock.now(), 0);
+    }
+
+    /**
+     * @return the statistics of the limiter, for the log.
+     */
+    String stats() {
+        return "Granted = " + granted + " ~ Delayed = " + delayed + " ~ Waiting = " + queue.size();
+    }
+
+    /**
+     * Method to start the waiting requests, in priority order, while there are tokens.
+     */
+    private void drain() {
+        long now = clock.now();
+        refill(now);
+        while (!queue.isEmpty()) {
+            Ticket ticket = queue.peek();
+            if (ticket.cancelled) {
+                queue.poll();
+                continue;
+            }
+            if (now < pausedUntil) {
+                scheduleDrain(pausedUntil - now);
+                return;
+            }
+            if (tokens < 1) {
+                scheduleDrain((long) Math.ceil((1 - tokens) / tokensPerMs));
+                return;
+            }
+            tokens -= 1;
+            queue.poll();
+            granted++;
+            ticket.started = true;
+            ticket.request.run();
+        }
+    }
+
+    private void refill(long now) {
+        if (now > lastRefillTime) {
+            tokens = Math.min(capacity, tokens + (now - lastRefillTime) * tokensPerMs);
+            lastRefillTime = now;
+        }
+    }
+
+    private void scheduleDrain(long delay) {
+        if (drainScheduled) {
+            clock.cancel(drainRunnable);
+        }
+        drainScheduled = true;
+        clock.schedule(drainRunnable, Math.max(delay, 1));
+    }
+
+    /**
+     * A request that waits for a token (or was started).
+     */
+    static final class Ticket implements Comparable<Ticket> {
+
+        private TMDBApi.Priority priority;
+        private final long sequence;
+        private final Runnable request;
+
+        private boolean started;
+        private boolean cancelled;
+
+        private Ticket(TMDBApi.Priority priority, long sequence, Runnable request) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.request = request;
+        }
+
+        /**
+         * Method to remove the request from the queue (e.g. the load missed its deadline),
+         * without taking a token. A started request is not affected.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byPriority = priority.compareTo(other.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Class to coalesce identical requests into a single in-flight call ("single flight").
+ *
+ * The first subscriber of a key starts the call; every subscriber that joins while the call is
+ * in flight simply waits for it. When the call completes, its result is delivered to all the
+ * subscribers of that moment. The calls are kept by this (process wide) object, not by the
+ * subscribers, so a call survives the destruction of the Activity that started it and its result
+ * reaches the recreated Activity as well.
+ *
+ * Note: Not thread safe; all the methods must be called on the main thread.
+ *
+ * @param <T> The type of the result of the calls.
+ */
+public class SingleFlight<T> {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + SingleFlight.class.getSimpleName();
+
+    /* The subscribers of every call in flight, keyed by the identity of the call */
+    private final HashMap<String, ArrayList<TMDBApi.AsyncTaskCompleteListener<T>>> mCalls = new HashMap<>();
+
+    /**
+     * Method to subscribe to the call of the given key.
+     *
+     * @param key        The identity of the call (identical requests must have equal keys).
+     * @param subscriber The listener to deliver the result of the call to.
+     * @return true if there was no such call in flight, so the caller must start it now.
+     */
+    public boolean join(String key, TMDBApi.AsyncTaskCompleteListener<T> subscriber) {
+        ArrayList<TMDBApi.AsyncTaskCompleteListener<T>> subscribers = mCalls.get(key);
+        if (subscribers != null) {
+            Log.d(LOG_TAG, "join(): Coalesced with the call in flight ~ Key = " + key);
+            subscribers.add(subscriber);
+            return false;
+        }
+        subscribers = new ArrayList<>();
+        subscribers.add(subscriber);
+        mCalls.put(key, subscribers);
+        return true;
+    }
+
+    /**
+     * Method to unsubscribe from the call of the given key, e.g. when the screen that waits for
+     * it is destroyed, so the call does not keep a reference to the subscriber until it completes.
+     * The call itself goes on, for its other subscribers and for the identical requests that join
+     * it later (e.g. of the recreated screen).
+     *
+     * @param key        The identity of the call.
+     * @param subscriber The listener that was passed to {@link #join}.
+     * @return true if the subscriber was waiting for the call.
+     */
+    public boolean leave(String key, TMDBApi.AsyncTaskCompleteListener<T> subscriber) {
+        ArrayList<TMDBApi.AsyncTaskCompleteListener<T>> subscribers = mCalls.get(key);
+        if (subscribers == null || !subscribers.remove(subscriber)) {
+            return false;
+        }
+        Log.d(LOG_TAG, "leave(): " + subscribers.size() + " subscriber(s) left ~ Key = " + key);
+        return true;
+    }
+
+    /**
+     * @return the number of subscribers of the call of the given key, or 0 if it is not in flight.
+     */
+    public int subscriberCount(String key) {
+        ArrayList<TMDBApi.AsyncTaskCompleteListener<T>> subscribers = mCalls.get(key);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    /**
+     * Method to deliver an intermediate result of the call of the given key (e.g. the first items
+     * of a response that is still being parsed) to its subscribers, without completing it.
+     *
+     * @param key    The identity of the call.
+     * @param result The intermediate result of the call.
+     */
+    public void publish(String key, T result) {
+        ArrayList<TMDBApi.AsyncTaskCompleteListener<T>> subscribers = mCalls.get(key);
+        if (subscribers == null) {
+            return;
+        }
+        /* Iterate over a copy, in case a subscriber joins another call of the same key */
+        for (TMDBApi.AsyncTaskCompleteListener<T> subscriber : new ArrayList<>(subscribers)) {
+            subscriber.onTaskComplete(result);
+        }
+    }
+
+    /**
+     * Method to complete the call of the given key and deliver its result to all its subscribers.
+     *
+     * @param key    The identity of the call.
+     * @param result The result of the call.
+     */
+    public void complete(String key, T result) {
+        ArrayList<TMDBApi.AsyncTaskCompleteListener<T>> subscribers = mCalls.remove(key);
+        if (subscribers == null) {
+            Log.e(LOG_TAG, "complete(): No call in flight ~ Key = " + key);
+            return;
+        }
+        Log.d(LOG_TAG, "complete(): Deliver to " + subscribers.size() + " subscriber(s) ~ Key = " + key);
+        for (TMDBApi.AsyncTaskCompleteListener<T> subscriber : subscribers) {
+            subscriber.onTaskComplete(result);
+        }
+    }
+
+    /**
+     * @return true if the call of the given key is in flight.
+     */
+    public boolean isInFlight(String key) {
+        return mCalls.containsKey(key);
+    }
+}
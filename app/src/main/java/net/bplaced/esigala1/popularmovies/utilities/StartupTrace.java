@@ -0,0 +1,141 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timeline of the start-up of the process, from the creation of the Application to the first
+ * poster drawn in the grid.
+ *
+ * Every phase is marked once per process (e.g. a rotation does not mark it again), as the time in
+ * milliseconds since the start of the process ({@link Process#getStartElapsedRealtime()} on API 24+,
+ * or else the time that the Application was attached). The timeline is exposed as a map of the
+ * phases in the order that they were marked (see {@link #getTimings()}), so that a test or a
+ * developer can read it, and as a one-line summary for the log.
+ *
+ * Two durations are derived from the timeline:
+ * - The time to initial display: until the first frame of the launched Activity.
+ * - The time to full display: until the first poster is drawn (see Activity#reportFullyDrawn()).
+ *
+ * If the process was started for something else (e.g. a cache warming job) and the Activity was
+ * launched into it later, then it is not a cold start: both durations are measured from the
+ * creation of the Activity instead.
+ *
+ * Note: Thread safe.
+ */
+public final class StartupTrace {
+
+    /* The phases of the start-up, in their usual order */
+    public static final String PHASE_APPLICATION_ATTACH = "application_attach";
+    public static final String PHASE_APPLICATION_CREATED = "application_created";
+    public static final String PHASE_DEFERRED_INIT_DONE = "deferred_init_done";
+    public static final String PHASE_ACTIVITY_CREATE = "activity_create";
+    public static final String PHASE_ACTIVITY_CREATED = "activity_created";
+    public static final String PHASE_INITIAL_DISPLAY = "initial_display";
+    public static final String PHASE_FIRST_CONTENT = "first_content";
+    public static final String PHASE_FULL_DISPLAY = "full_display";
+
+    /* The maximum time from the creation of the Application to the Activity, for a cold start */
+    private static final long MAX_LAUNCH_GAP_MS = 2000;
+
+    /* The start of the process (SystemClock.elapsedRealtime()), or -1 until the Application is attached */
+    private static long sOrigin = -1;
+
+    /* The marked phases, in the order that they were marked */
+    private static final LinkedHashMap<String, Long> sTimings = new LinkedHashMap<>();
+
+    private static boolean sColdStart = true;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Method to mark a phase of the start-up, unless it is already marked.
+     *
+     * @param phase One of the PHASE_* phases.
+     * @return true if the phase was marked now (i.e. for the first time).
+     */
+    public static synchronized boolean mark(String phase) {
+        if (sTimings.containsKey(phase)) {
+            return false;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (sOrigin < 0) {
+            sOrigin = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? Process.getStartElapsedRealtime() : now;
+        }
+        if (PHASE_ACTIVITY_CREATE.equals(phase)) {
+            Long applicationCreated = sTimings.get(PHASE_APPLICATION_CREATED);
+            sColdStart = applicationCreated != null && now - sOrigin - applicationCreated <= MAX_LAUNCH_GAP_MS;
+        }
+        sTimings.put(phase, now - sOrigin);
+        return true;
+    }
+
+    /**
+     * @return true if the phase is already marked.
+     */
+    public static synchronized boolean isMarked(String phase) {
+        return sTimings.containsKey(phase);
+    }
+
+    /**
+     * @return the marked phases and their times in milliseconds since the start of the process,
+     * in the order that they were marked.
+     */
+    public static synchronized Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(sTimings));
+    }
+
+    /**
+     * @return true if the Activity was launched with the process (see the class comment).
+     */
+    public static synchronized boolean isColdStart() {
+        return sColdStart;
+    }
+
+    /**
+     * @return the time to initial display in milliseconds, or -1 if it is not marked yet.
+     */
+    public static synchronized long getTimeToInitialDisplay() {
+        return durationOf(PHASE_INITIAL_DISPLAY);
+    }
+
+    /**
+     * @return the time to full display in milliseconds, or -1 if it is not marked yet.
+     */
+    public static synchronized long getTimeToFullDisplay() {
+        return durationOf(PHASE_FULL_DISPLAY);
+    }
+
+    /**
+     * @return a one-line summary of the timeline, for the log.
+     */
+    public static synchronized String summary() {
+        StringBuilder sb = new StringBuilder(sColdStart ? "Cold start" : "Warm start");
+        sb.append(String.format(Locale.US, " ~ TTID = %d ms ~ TTFD = %d ms",
+                getTimeToInitialDisplay(), getTimeToFullDisplay()));
+        for (Map.Entry<String, Long> timing : sTimings.entrySet()) {
+            sb.append(" ~ ").append(timing.getKey()).append(" = ").append(timing.getValue()).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the time of the phase since the start of the process (or of the Activity, if it is
+     * not a cold start), or -1 if it is not marked.
+     */
+    private static long durationOf(String phase) {
+        Long time = sTimings.get(phase);
+        if (time == null) {
+            return -1;
+        }
+        Long activityCreate = sTimings.get(PHASE_ACTIVITY_CREATE);
+        return sColdStart || activityCreate == null ? time : time - activityCreate;
+    }
+}
@@ -1,30 +1,51 @@
 package net.bplaced.esigala1.popularmovies.utilities;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import net.bplaced.esigala1.popularmovies.BuildConfig;
-import net.bplaced.esigala1.popularmovies.MainActivity;
+import net.bplaced.esigala1.popularmovies.model.CacheValidators;
 import net.bplaced.esigala1.popularmovies.model.ModelTMDBApi;
 import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
 import retrofit2.http.QueryMap;
+import retrofit2.http.Streaming;
 
 /**
- * Class to create the Retrofit client, call The Movie Database API and handle the result.
+ * Class to call The Movie Database API and handle the result.
+ *
+ * Every load is resilient to slow and failed responses (all the requests are idempotent GETs):
+ * - A failed attempt (a network error, a "5xx" or "429" response, or a body that could not be
+ *   read) is retried, up to {@link #MAX_ATTEMPTS} attempts, after an exponential backoff with
+ *   full jitter.
+ * - If an attempt has not been answered after the p95 of the earlier response times, then a
+ *   duplicate ("hedged") request is sent once; the first response wins and the other is cancelled.
+ * - All the requests go through a client-side rate limiter ({@link RequestLimiter}), that keeps
+ *   them under the rate limit of the API, honours the "Retry-After" of a "429" response, and
+ *   starts the requests of a higher {@link Priority} first.
+ * - The whole load has a deadline of {@link #LOAD_DEADLINE_MS}. A load that misses it is
+ *   cancelled and completes with null, so the caller falls back to its cached data (see
+ *   MovieRepository).
  *
  * URL EXAMPLES:
  * https://api.themoviedb.org/3/movie/popular?api_key=###&page=1
@@ -33,7 +54,7 @@ import retrofit2.http.QueryMap;
  * Created by Effie Sigala on 12/3/2018.
  */
 
-public class TMDBApi implements Callback<ModelTMDBApi> {
+public class TMDBApi {
 
     /* Tag for the log messages. */
     private final String LOG_TAG = "DEBUGGING " + TMDBApi.class.getSimpleName();
@@ -42,94 +63,608 @@ public class TMDBApi implements Callback<ModelTMDBApi> {
     public static final String SORT_ORDER_MOST_POPULAR = "popular";
     public static final String SORT_ORDER_TOP_RATED = "top_rated";
 
-    /* Base URL for data from the "themoviedb.org" */
-    private static final String BASE_URL = "https://api.themoviedb.org/3/";
-
     /* The TheMovieDB API Key parameter */
     private static final String API_KEY_PARAM = "api_key";
 
-    /* Reference to listener to update the UI of {@link MainActivity} when the response is completed. */
-    private AsyncTaskCompleteListener<Movie[]> listener;
+    /* HTTP status code of the response to a conditional request, if the resource has not changed */
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    /* The first page of every sort order */
+    public static final int FIRST_PAGE = 1;
+
+    /* The number of movies to hand over first (about one screen of posters), then in every batch */
+    private static final int FIRST_BATCH_SIZE = 9;
+    private static final int BATCH_SIZE = 6;
+
+    /* The maximum number of attempts of a load (the first request and its retries) */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /* The backoff before a retry: a random delay up to BASE * 2^(retry - 1), capped at MAX */
+    private static final long BACKOFF_BASE_MS = 250;
+    private static final long BACKOFF_MAX_MS = 2000;
+
+    /* The deadline of a load, from start() to its complete result */
+    private static final long LOAD_DEADLINE_MS = 8000;
+
+    /* The delay of the hedged request: the p95 of the response times, once there are enough of them */
+    private static final int HEDGE_PERCENTILE = 95;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final long DEFAULT_HEDGE_DELAY_MS = 1000;
+    private static final long MIN_HEDGE_DELAY_MS = 100;
+
+    /* HTTP status code of a response to a client that sent too many requests */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /* The pause after a "429" response without a (valid) "Retry-After" header */
+    private static final long DEFAULT_RETRY_AFTER_MS = 1000;
+
+    /*
+     * The client-side rate limit: bursts of up to RATE_LIMIT_BURST requests, and
+     * RATE_LIMIT_PER_SECOND requests per second on average (below the limit of the API per key).
+     */
+    private static final int RATE_LIMIT_BURST = 10;
+    private static final double RATE_LIMIT_PER_SECOND = 3.5;
+
+    /**
+     * The priorities of the loads, highest first.
+     */
+    public enum Priority {
+        /* A page that the user waits for (e.g. the first page, a refresh) */
+        VISIBLE,
+        /* A page that the user will probably need soon (e.g. the next page while scrolling) */
+        PREFETCH,
+        /* A page that is cached in advance (e.g. in the background) */
+        WARMING
+    }
+
+    /* Handler to deliver the results of the background parsing on the main thread */
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /*
+     * The calls in flight of the whole process. Identical requests are coalesced into one call,
+     * so e.g. a rotation or a repeated menu selection does not start a second HTTP call.
+     */
+    private static final SingleFlight<MoviePage> sCallsInFlight = new SingleFlight<>();
+
+    /* The loads that make the calls in flight, by the identity of the call (to raise their priority) */
+    private static final HashMap<String, TMDBApi> sLoadsInFlight = new HashMap<>();
+
+    /* The end-to-end latencies of the calls, from start() to the delivery of the complete result */
+    private static final LatencyTracker sLoadLatency = new LatencyTracker("TMDB loads");
+
+    /* The same latencies per priority (e.g. of the visible loads under contention) */
+    private static final LatencyTracker[] sLoadLatencyByPriority = new LatencyTracker[Priority.values().length];
+
+    static {
+        for (Priority priority : Priority.values()) {
+            sLoadLatencyByPriority[priority.ordinal()] = new LatencyTracker("TMDB " + priority + " loads");
+        }
+    }
+
+    /* The rate limiter of all the requests of the process */
+    private static final RequestLimiter sLimiter = new RequestLimiter(RATE_LIMIT_BURST, RATE_LIMIT_PER_SECOND);
+
+    /* The response times of the single requests (to their headers), for the delay of the hedged requests */
+    private static final LatencyTracker sResponseLatency = new LatencyTracker("TMDB responses");
+
+    /* Source of the jitter of the backoffs */
+    private static final Random sRandom = new Random();
+
+    /*
+     * False to make every load a single request, without the retries, the hedged request and the
+     * deadline (see setResilient())
+     */
+    private static boolean sResilient = true;
+
+    /* Reference to listener to update the UI of the MainActivity when the response is completed. */
+    private AsyncTaskCompleteListener<MoviePage> listener;
+
+    /* The sort order and the page of the current request */
+    private String sortOrder;
+    private int page;
+
+    /* The identity of the current request, for coalescing identical requests */
+    private String callKey;
+
+    /* The priority of the requests of this load */
+    private Priority priority = Priority.VISIBLE;
+
+    /* The time (SystemClock.elapsedRealtime()) that the current request was started */
+    private long startTime;
+
+    /* The call of the first attempt, to clone for the retries and the hedged request */
+    private Call<ResponseBody> firstCall;
+
+    /* The attempts in flight (at most two, while a hedged request is in flight) */
+    private final List<Attempt> attemptsInFlight = new ArrayList<>();
+
+    /* The number of attempts that were started, and whether a hedged request was sent */
+    private int attempts;
+    private boolean hedged;
+
+    /* True once the result of the load has been delivered; later results are ignored */
+    private boolean completed;
+
+    /* Sends the hedged request, if no attempt has been answered by then */
+    private final Runnable hedgeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (completed || attemptsInFlight.isEmpty()) {
+                return;
+            }
+            Log.d(LOG_TAG, "hedge(): No response yet; send a hedged request.");
+            hedged = true;
+            execute(firstCall.clone());
+        }
+    };
+
+    /* Completes the load with null, if it has not been completed by its deadline */
+    private final Runnable deadlineRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (completed) {
+                return;
+            }
+            Log.e(LOG_TAG, "deadline(): The load missed its deadline of " + LOAD_DEADLINE_MS + " ms.");
+            cancelAttempts(null);
+            deliver(null);
+        }
+    };
 
     /**
      * Constructor
      *
-     * @param listener to update the UI of {@link MainActivity} when the response is completed.
+     * @param listener to update the UI of {@link net.bplaced.esigala1.popularmovies.MainActivity} when the response is completed.
      */
-    public TMDBApi(AsyncTaskCompleteListener<Movie[]> listener) {
+    public TMDBApi(AsyncTaskCompleteListener<MoviePage> listener) {
         Log.d(LOG_TAG,"Constructor");
         this.listener = listener;
     }
 
     /**
-     * Method to start the network transactions.
+     * Method to set the priority of the requests of this load (the default is
+     * {@link Priority#VISIBLE}); must be called before {@link #start}.
+     *
+     * @return this instance, for chaining.
+     */
+    public TMDBApi setPriority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Method to start the network transactions for the first page of the given sort order.
      */
     public void start(String sortOrderCurrent) {
-        Log.d(LOG_TAG, "start()");
+        start(sortOrderCurrent, FIRST_PAGE);
+    }
 
-        /* The JSON Converter to add to Retrofit */
-        Gson gson = new GsonBuilder()
-                .setLenient()
-                .create();
+    /**
+     * Method to start the network transactions for the given page of the given sort order.
+     *
+     * @param sortOrderCurrent The sort order (endpoint) to request.
+     * @param pageToLoad       The page to request (the first page is {@link #FIRST_PAGE}).
+     */
+    public void start(String sortOrderCurrent, int pageToLoad) {
+        start(sortOrderCurrent, pageToLoad, null);
+    }
+
+    /**
+     * Method to start the network transactions for the given page of the given sort order,
+     * as a conditional request if there are validators of an earlier response. If the page has
+     * not changed, then the server answers "304 Not Modified" without a body, so nothing is
+     * downloaded or parsed and the listener receives {@link MoviePage#notModified}.
+     *
+     * @param sortOrderCurrent The sort order (endpoint) to request.
+     * @param pageToLoad       The page to request (the first page is {@link #FIRST_PAGE}).
+     * @param validators       The validators of an earlier response for the same page, or null.
+     */
+    public void start(String sortOrderCurrent, int pageToLoad, CacheValidators validators) {
+        Log.d(LOG_TAG, "start(): Page = " + pageToLoad + " ~ Conditional = " + (validators != null));
+        this.sortOrder = sortOrderCurrent;
+        this.page = pageToLoad;
+        this.callKey = buildCallKey(sortOrderCurrent, pageToLoad, validators);
+        this.startTime = SystemClock.elapsedRealtime();
 
-        /* Set the Retrofit */
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create(gson))
-                .build();
+        /* If an identical request is already in flight, then just wait for its result (at the higher priority) */
+        if (!sCallsInFlight.join(callKey, listener)) {
+            TMDBApi load = sLoadsInFlight.get(callKey);
+            if (load != null) {
+                load.raisePriority(priority);
+            }
+            return;
+        }
+        sLoadsInFlight.put(callKey, this);
 
-        /* Get an instance of the API Interface */
-        TMDBApiInterface apiInterface = retrofit.create(TMDBApiInterface.class);
+        /* Get the shared instance of the API Interface (created once per process) */
+        TMDBApiInterface apiInterface = TMDBClient.getInstance().getApiInterface();
 
         /* Query parameters to append to the URL */
         Map<String, String> data = new HashMap<>();
         data.put(API_KEY_PARAM, BuildConfig.THEMOVIEDB_ORG_API_KEY);
 
         /* Get an instance of the API interface */
-        Call<ModelTMDBApi> call = apiInterface.getPopularMovies(sortOrderCurrent, data);
+        firstCall = apiInterface.getPopularMovies(sortOrderCurrent, pageToLoad,
+                validators != null ? validators.getEtag() : null,
+                validators != null ? validators.getLastModified() : null,
+                data);
         /* Asynchronously send the request to the webserver and notify callback of its response. */
-        call.enqueue(this);
+        if (sResilient) {
+            sMainHandler.postDelayed(deadlineRunnable, LOAD_DEADLINE_MS);
+        }
+        execute(firstCall);
+    }
+
+    /**
+     * Method to stop delivering the result of this load to its listener, e.g. when the screen
+     * that waits for it is destroyed. The listener leaves the call (see {@link SingleFlight#leave}),
+     * but the call itself is not cancelled: identical requests that were coalesced into it, or
+     * that join it later (e.g. of the recreated screen), still receive its result.
+     */
+    public void cancel() {
+        if (callKey != null && sCallsInFlight.leave(callKey, listener)) {
+            Log.d(LOG_TAG, "cancel(): The listener left the call ~ Key = " + callKey);
+        }
+    }
+
+    /**
+     * Method to raise the priority of this load, e.g. when a page that was prefetched is now
+     * waited for by the user. The attempts that wait for the rate limiter move up in its queue,
+     * and the later attempts (the retries and the hedged request) get the new priority too.
+     */
+    private void raisePriority(Priority higher) {
+        if (higher.compareTo(priority) >= 0) {
+            return;
+        }
+        Log.d(LOG_TAG, "raisePriority(): " + priority + " -> " + higher + " ~ Key = " + callKey);
+        priority = higher;
+        for (Attempt attempt : attemptsInFlight) {
+            sLimiter.raise(attempt.ticket, higher);
+        }
+    }
+
+    /**
+     * Method to send a request of the load (the first one, a retry, or the hedged one).
+     */
+    private void execute(final Call<ResponseBody> call) {
+        /* The request waits for the rate limiter, and counts as in flight while it waits */
+        final Attempt attempt = new Attempt(call);
+        attemptsInFlight.add(attempt);
+        attempt.ticket = sLimiter.acquire(priority, new Runnable() {
+            @Override
+            public void run() {
+                if (completed || !attemptsInFlight.contains(attempt)) {
+                    return;
+                }
+                attempts++;
+                attempt.startTime = SystemClock.elapsedRealtime();
+                call.enqueue(attempt);
+                /* (Re)schedule the hedged request of this attempt; a load sends a single hedged request */
+                if (!hedged && sResilient) {
+                    sMainHandler.removeCallbacks(hedgeRunnable);
+                    sMainHandler.postDelayed(hedgeRunnable, hedgeDelay());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the delay of the hedged request: the p95 of the earlier response times.
+     */
+    private static long hedgeDelay() {
+        if (sResponseLatency.count() < MIN_HEDGE_SAMPLES) {
+            return DEFAULT_HEDGE_DELAY_MS;
+        }
+        return Math.max(sResponseLatency.percentile(HEDGE_PERCENTILE), MIN_HEDGE_DELAY_MS);
+    }
+
+    /**
+     * Method to handle a failed attempt: if another attempt is still in flight, then wait for it;
+     * else retry after a backoff (if the attempts and the deadline allow it), or complete the load
+     * with null.
+     */
+    private void onAttemptFailed(Attempt attempt, String reason) {
+        attemptsInFlight.remove(attempt);
+        if (completed || !attemptsInFlight.isEmpty()) {
+            return;
+        }
+        /* The next attempt cannot start before the end of a "Retry-After" pause either */
+        long backoff = Math.max(backoff(attempts), sLimiter.remainingPause());
+        long timeLeft = startTime + LOAD_DEADLINE_MS - SystemClock.elapsedRealtime();
+        if (attempts >= (sResilient ? MAX_ATTEMPTS : 1) || backoff >= timeLeft) {
+            Log.e(LOG_TAG, "onAttemptFailed(): " + reason + " ~ Give up after " + attempts + " attempt(s).");
+            deliver(null);
+            return;
+        }
+        Log.d(LOG_TAG, "onAttemptFailed(): " + reason + " ~ Retry in " + backoff + " ms.");
+        sMainHandler.removeCallbacks(hedgeRunnable);
+        sMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!completed) {
+                    execute(firstCall.clone());
+                }
+            }
+        }, backoff);
+    }
+
+    /**
+     * @return the backoff before the next attempt: a random delay ("full jitter") up to
+     * {@link #BACKOFF_BASE_MS} * 2^(attempts - 1), capped at {@link #BACKOFF_MAX_MS}.
+     */
+    private static long backoff(int attempts) {
+        long ceiling = Math.min(BACKOFF_BASE_MS << Math.min(attempts - 1, 16), BACKOFF_MAX_MS);
+        return (long) (sRandom.nextDouble() * ceiling);
+    }
+
+    /**
+     * Method to cancel the attempts in flight, except the given one (e.g. the winner of a hedge),
+     * including the ones that still wait for the rate limiter.
+     */
+    private void cancelAttempts(Attempt except) {
+        for (Attempt attempt : new ArrayList<>(attemptsInFlight)) {
+            if (attempt != except) {
+                attempt.ticket.cancel();
+                attempt.call.cancel();
+                attemptsInFlight.remove(attempt);
+            }
+        }
     }
 
-    @Override
-    public void onResponse(@NonNull Call<ModelTMDBApi> call, @NonNull Response<ModelTMDBApi> response) {
+    /**
+     * Method to build the identity of a request: the endpoint, the page and the validators
+     * (a conditional request may get a different response than an unconditional one).
+     */
+    private static String buildCallKey(String sortOrder, int page, CacheValidators validators) {
+        StringBuilder sb = new StringBuilder("movie/").append(sortOrder).append("?page=").append(page);
+        if (validators != null) {
+            sb.append('#').append(validators.getEtag()).append('#').append(validators.getLastModified());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to inform every subscriber of the call (i.e. the listener of this instance and the
+     * listeners of the identical requests that were coalesced into it) that it is completed.
+     */
+    private void deliver(MoviePage result) {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        sMainHandler.removeCallbacks(hedgeRunnable);
+        sMainHandler.removeCallbacks(deadlineRunnable);
+        /* The attempts are over, including any that still waits for the rate limiter */
+        cancelAttempts(null);
+        sLoadsInFlight.remove(callKey);
+        long latency = SystemClock.elapsedRealtime() - startTime;
+        sLoadLatency.record(latency, result != null);
+        sLoadLatencyByPriority[priority.ordinal()].record(latency, result != null);
+        sCallsInFlight.complete(callKey, result);
+    }
+
+    /**
+     * @return the end-to-end latencies of the calls of the process, from {@link #start} to the
+     * delivery of the complete result (or of the failure) to the listeners.
+     */
+    public static LatencyTracker getLoadLatency() {
+        return sLoadLatency;
+    }
+
+    /**
+     * @return the end-to-end latencies of the calls of the given priority.
+     */
+    public static LatencyTracker getLoadLatency(Priority priority) {
+        return sLoadLatencyByPriority[priority.ordinal()];
+    }
+
+    /**
+     * Method to turn the retries, the hedged requests and the deadline of the loads on (the
+     * default) or off, e.g. to measure what they save in the tail latency under faults (see the
+     * AppLoadTest of the mock server). The rate limiter stays on. Not meant for the app itself.
+     * Note: Must be called before the first load.
+     */
+    public static void setResilient(boolean resilient) {
+        sResilient = resilient;
+    }
+
+    /**
+     * @return the statistics of the rate limiter, for the log.
+     */
+    public static String getLimiterStats() {
+        return sLimiter.stats();
+    }
+
+    /**
+     * Method to handle the response of an attempt; the first response of the load wins.
+     */
+    private void onResponse(Attempt attempt, Response<ResponseBody> response) {
         Log.d(LOG_TAG, "onResponse(): Response Code = " + response.code()
                 + " ~ URL = " + response.raw().request().url());
+        if (completed) {
+            closeQuietly(response.body());
+            return;
+        }
+        /* Rate limited: no request of the process may start before the "Retry-After" */
+        if (response.code() == HTTP_TOO_MANY_REQUESTS) {
+            sLimiter.pauseFor(retryAfterMillis(response));
+        }
+        /* A server error is worth another attempt */
+        if (response.code() >= 500 || response.code() == HTTP_TOO_MANY_REQUESTS) {
+            closeQuietly(response.body());
+            onAttemptFailed(attempt, "HTTP " + response.code());
+            return;
+        }
+        /*
+         * This response wins, so the other attempt (if any) is not needed anymore.
+         * Note: The winner stays in flight while its body is read, so the deadline can cancel it.
+         */
+        sResponseLatency.record(SystemClock.elapsedRealtime() - attempt.startTime, true);
+        sMainHandler.removeCallbacks(hedgeRunnable);
+        cancelAttempts(attempt);
+
+        /* Log the reuse of the shared connections across the calls */
+        TMDBClient.getInstance().logConnectionStats();
+        /* The validators and the freshness lifetime to keep for the next (conditional) request */
+        CacheValidators validators = new CacheValidators(
+                response.headers().get("ETag"),
+                response.headers().get("Last-Modified"),
+                response.raw().cacheControl().maxAgeSeconds());
+
+        /* If the page has not changed since the earlier response, then... */
+        if (response.code() == HTTP_NOT_MODIFIED) {
+            Log.d(LOG_TAG, "onResponse(): Not modified.");
+            /* There is no body, so there is nothing to parse */
+            deliver(MoviePage.notModified(sortOrder, page, validators));
+        }
         /* If the response is successful, then... */
-        if(response.isSuccessful()) {
+        else if(response.isSuccessful() && response.body() != null) {
             Log.d(LOG_TAG, "onResponse(): Successful response.");
+            /* Only the headers have arrived; stream and parse the body in the background */
+            parseInBackground(attempt, response.body(), validators);
+        }
+        /* The response is unsuccessful (e.g. an invalid API key), so another attempt would not help */
+        else {
+            Log.e(LOG_TAG, "onResponse(): Unsuccessful response.");
+            closeQuietly(response.body());
+            /* Inform the subscribers (e.g. the MainActivity) that the response is completed */
+            deliver(null);
+        }
+    }
 
-            /* Map the Model class to the response */
-            ModelTMDBApi model = response.body();
-
-            /* If the Model was initialized successfully, then... */
-            if (model != null) {
-                Log.d(LOG_TAG, "Number of movies = " + model.listOfMovies.size());
-                /* Convert the List of Objects to an Array of Objects */
-                Movie[] arrayOfMovies = model.listOfMovies.toArray(new Movie[model.listOfMovies.size()]);
-                /* Inform the MainActivity that the response is completed */
-                listener.onTaskComplete(arrayOfMovies);
+    /**
+     * @return the time to wait as the "Retry-After" header of the response asks (either a number
+     * of seconds or an HTTP date), or {@link #DEFAULT_RETRY_AFTER_MS}.
+     */
+    private static long retryAfterMillis(Response<ResponseBody> response) {
+        String retryAfter = response.headers().get("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Math.max(Long.parseLong(retryAfter.trim()) * 1000, 0);
+            } catch (NumberFormatException e) {
+                Date date = response.headers().getDate("Retry-After");
+                if (date != null) {
+                    return Math.max(date.getTime() - System.currentTimeMillis(), 0);
+                }
             }
-            /* The Model was not initialized successfully, so... */
-            else {
-                Log.e(LOG_TAG, "onResponse(): The model is null.");
-                /* Inform the MainActivity that the response is completed */
-                listener.onTaskComplete(null);
+        }
+        return DEFAULT_RETRY_AFTER_MS;
+    }
+
+    /**
+     * Method to handle an attempt without a response (e.g. no connection, a timeout, a cancellation).
+     */
+    private void onFailure(Attempt attempt, Call<ResponseBody> call, Throwable t) {
+        /* A cancelled attempt (the loser of a hedge, or after the deadline) is already handled */
+        if (call.isCanceled()) {
+            return;
+        }
+        onAttemptFailed(attempt, t.toString());
+    }
+
+    /**
+     * Method to read and parse the body of a successful response on a background thread.
+     *
+     * The movies are handed over to the subscribers in batches while the body is being read:
+     * the first {@link #FIRST_BATCH_SIZE} movies (about one screen of posters) as soon as they
+     * are parsed, then every {@link #BATCH_SIZE} movies, and finally the complete page.
+     */
+    private void parseInBackground(final Attempt attempt, final ResponseBody body,
+                                   final CacheValidators validators) {
+        final long startTime = SystemClock.elapsedRealtime();
+        TMDBClient.getInstance().getParseExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                MovieStreamParser parser = new MovieStreamParser(TMDBClient.getInstance().getGson());
+                MoviePage result;
+                try {
+                    ModelTMDBApi model = parser.parse(body.charStream(), FIRST_BATCH_SIZE, BATCH_SIZE,
+                            new MovieStreamParser.BatchListener() {
+                                private boolean firstBatch = true;
+
+                                @Override
+                                public void onBatch(List<Movie> parsedSoFar) {
+                                    if (firstBatch) {
+                                        Log.d(LOG_TAG, "parseInBackground(): Time to first batch = "
+                                                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                                        firstBatch = false;
+                                    }
+                                    final MoviePage partialPage = MoviePage.partial(sortOrder, page,
+                                            parsedSoFar.toArray(new Movie[parsedSoFar.size()]));
+                                    sMainHandler.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            if (!completed) {
+                                                sCallsInFlight.publish(callKey, partialPage);
+                                            }
+                                        }
+                                    });
+                                }
+                            });
+                    Log.d(LOG_TAG, "parseInBackground(): Number of movies = " + model.listOfMovies.size()
+                            + " ~ Time to parse = " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                    /* Convert the List of Objects to an Array of Objects */
+                    Movie[] arrayOfMovies = model.listOfMovies.toArray(new Movie[model.listOfMovies.size()]);
+                    result = new MoviePage(sortOrder, page, model.totalPages, arrayOfMovies);
+                    result.setValidators(validators);
+                } catch (IOException | RuntimeException e) {
+                    /* e.g. a truncated body or a malformed response */
+                    Log.e(LOG_TAG, "parseInBackground(): " + e.toString());
+                    result = null;
+                } finally {
+                    closeQuietly(body);
+                }
+                final MoviePage finalResult = result;
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finalResult == null) {
+                            /* The body could not be read (e.g. it was truncated), so try again */
+                            onAttemptFailed(attempt, "Unreadable body");
+                            return;
+                        }
+                        /* Inform the subscribers (e.g. the MainActivity) that the response is completed */
+                        deliver(finalResult);
+                    }
+                });
             }
+        });
+    }
+
+    /**
+     * A single request of a load, with the time that it was sent.
+     * Note: Retrofit invokes the callbacks on the main thread.
+     */
+    private class Attempt implements Callback<ResponseBody> {
+
+        final Call<ResponseBody> call;
+
+        /* The ticket of the request at the rate limiter (it waits for it, or it was started) */
+        RequestLimiter.Ticket ticket;
+
+        /* The time that the request was sent (after the rate limiter) */
+        long startTime;
+
+        Attempt(Call<ResponseBody> call) {
+            this.call = call;
         }
-        /* The response is unsuccessful, so... */
-        else {
-            Log.e(LOG_TAG, "onResponse(): Unsuccessful response.");
-            /* Inform the MainActivity that the response is completed */
-            listener.onTaskComplete(null);
+
+        @Override
+        public void onResponse(@NonNull Call<ResponseBody> call, @NonNull Response<ResponseBody> response) {
+            TMDBApi.this.onResponse(this, response);
+        }
+
+        @Override
+        public void onFailure(@NonNull Call<ResponseBody> call, @NonNull Throwable t) {
+            Log.e(LOG_TAG, "onFailure(): " + t.toString());
+            TMDBApi.this.onFailure(this, call, t);
         }
     }
 
-    @Override
-    public void onFailure(@NonNull Call<ModelTMDBApi> call, @NonNull Throwable t) {
-        Log.e(LOG_TAG, "onFailure(): " + t.toString());
-        /* Inform the MainActivity that the response is completed */
-        listener.onTaskComplete(null);
+    private static void closeQuietly(ResponseBody body) {
+        if (body != null) {
+            body.close();
+        }
     }
 
     /**
@@ -140,12 +675,19 @@ public class TMDBApi implements Callback<ModelTMDBApi> {
      * Each method of this interface will be used for network transactions, corresponding to
      * an endpoint of the REST API.
      */
-    private interface TMDBApiInterface {
+    interface TMDBApiInterface {
         /**
          * Method to make a @GET request and connect to the given endpoint.
+         * Note: The conditional headers are omitted if their values are null.
+         * Note: The body is streamed (not buffered), so it can be parsed while it is downloaded.
          */
+        @Streaming
         @GET("movie/{sort_order}")
-        Call<ModelTMDBApi> getPopularMovies(@Path("sort_order") String sort_order, @QueryMap Map<String, String> query_parameters);
+        Call<ResponseBody> getPopularMovies(@Path("sort_order") String sort_order,
+                                            @Query("page") int page,
+                                            @Header("If-None-Match") String if_none_match,
+                                            @Header("If-Modified-Since") String if_modified_since,
+                                            @QueryMap Map<String, String> query_parameters);
     }
 
     /**
@@ -0,0 +1,171 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.bplaced.esigala1.popularmovies.BuildConfig;
+import net.bplaced.esigala1.popularmovies.model.ModelTMDBApi;
+import net.bplaced.esigala1.popularmovies.model.ModelTypeAdapterFactory;
+import net.bplaced.esigala1.popularmovies.model.Movie;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Process-wide holder of the HTTP stack, shared by {@link TMDBApi} and {@link ImageLoader}.
+ *
+ * The OkHttp client (connection pool and dispatcher), the Gson converter, the Retrofit instance
+ * and the API interface proxy are created once, lazily, the first time they are requested.
+ * Every later call reuses them, so a sort order switch or a device rotation reuses the already
+ * open (TLS) connections instead of paying the handshakes and the reflection setup again.
+ *
+ * The stack is usually created on a background thread at the start of the process, together with
+ * the Gson adapters of the responses (see {@link #warmUp()} and the Application).
+ */
+public final class TMDBClient {
+
+    /* Tag for the log messages. */
+    private static final String LOG_TAG = "DEBUGGING " + TMDBClient.class.getSimpleName();
+
+    /*
+     * Base URL for data from the "themoviedb.org", or from a stand-in server (e.g. the mock server
+     * of the "mockserver" module), set with the Gradle property "tmdbBaseUrl".
+     */
+    private static final String BASE_URL = BuildConfig.TMDB_BASE_URL;
+
+    /* Settings of the shared connection pool */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION_MINUTES = 5;
+
+    /* Settings of the shared dispatcher */
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+
+    /* Timeouts of the shared client */
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+
+    private final OkHttpClient okHttpClient;
+    private final Gson gson;
+    private final TMDBApi.TMDBApiInterface apiInterface;
+
+    /* Background threads to read and parse the (streamed) response bodies */
+    private final ExecutorService parseExecutor = Executors.newFixedThreadPool(2);
+
+    /* Creation statistics, useful to verify that the stack is built only once per process */
+    private static long setupTimeNanos;
+
+    private TMDBClient() {
+        long startTime = System.nanoTime();
+
+        /* The Dispatcher that runs the asynchronous calls of every consumer */
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        /* The OkHttp client with a single connection pool for the whole process */
+        okHttpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+
+        /* The JSON Converter to add to Retrofit, with the reflection-free adapters of the model */
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create();
+
+        /* Set the Retrofit */
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(BASE_URL)
+                .client(okHttpClient)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                /* Parse the annotations of the API methods now, instead of on the first call */
+                .validateEagerly(true)
+                .build();
+
+        /* Get an instance of the API Interface */
+        apiInterface = retrofit.create(TMDBApi.TMDBApiInterface.class);
+
+        setupTimeNanos = System.nanoTime() - startTime;
+        Log.d(LOG_TAG, "Constructor: HTTP stack created in " + (setupTimeNanos / 1000) + " us");
+    }
+
+    /**
+     * Lazy initialization holder; the JVM guarantees that the instance is created only once,
+     * on first access, without any explicit synchronization.
+     */
+    private static final class Holder {
+        static final TMDBClient INSTANCE = new TMDBClient();
+    }
+
+    /**
+     * @return the single instance of the HTTP stack.
+     */
+    public static TMDBClient getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Method to create the Gson adapters of the responses, so that the first response is not
+     * delayed by their creation. The stack itself is created by the first call of {@link #getInstance()}.
+     */
+    public void warmUp() {
+        long startTime = System.nanoTime();
+        gson.getAdapter(ModelTMDBApi.class);
+        gson.getAdapter(Movie.class);
+        gson.getAdapter(Movie[].class);
+        Log.d(LOG_TAG, "warmUp(): Adapters created in " + ((System.nanoTime() - startTime) / 1000) + " us");
+    }
+
+    /**
+     * @return the shared OkHttp client (connection pool and dispatcher).
+     */
+    public OkHttpClient getOkHttpClient() {
+        return okHttpClient;
+    }
+
+    /**
+     * @return the shared Gson instance, that is also used by the Retrofit converter.
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * @return the shared proxy of The Movie Database API interface.
+     */
+    TMDBApi.TMDBApiInterface getApiInterface() {
+        return apiInterface;
+    }
+
+    /**
+     * @return the shared executor that reads and parses the streamed response bodies.
+     */
+    ExecutorService getParseExecutor() {
+        return parseExecutor;
+    }
+
+    /**
+     * Method to log the reuse statistics of the shared connection pool.
+     * A growing number of calls with a steady number of connections means that the
+     * connections are reused across the calls.
+     */
+    public void logConnectionStats() {
+        ConnectionPool pool = okHttpClient.connectionPool();
+        Log.d(LOG_TAG, "Setup time = " + (setupTimeNanos / 1000) + " us"
+                + " ~ Connections = " + pool.connectionCount()
+                + " ~ Idle connections = " + pool.idleConnectionCount()
+                + " ~ Running calls = " + okHttpClient.dispatcher().runningCallsCount());
+    }
+}
@@ -0,0 +1,278 @@
+package net.bplaced.esigala1.popularmovies;
+
+import android.support.v7.util.ListUpdateCallback;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the updates that {@link MyRVAdapter} dispatches when pages are added and replaced.
+ *
+ * The replacements run synchronously (or step by step, with a queued main thread), and the
+ * updates are recorded instead of being sent to a RecyclerView. A RecyclerView binds exactly the
+ * inserted and the changed positions of an update, so their sum is the number of binds that a
+ * replacement costs (see {@link #rebinds()}); the moved and the removed items are not bound.
+ */
+public class MyRVAdapterTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    private MyRVAdapter adapter;
+
+    /* The recorded updates, e.g. "changed 25+1" or "moved 21->22" */
+    private final List<String> updates = new ArrayList<>();
+
+    /* The tasks posted to the main thread, while it is queued (see queueMainThread()) */
+    private final ArrayDeque<Runnable> mainQueue = new ArrayDeque<>();
+    private boolean mainThreadQueued;
+
+    @Before
+    public void setUp() {
+        adapter = new MyRVAdapter(null);
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        Executor main = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (mainThreadQueued) {
+                    mainQueue.add(command);
+                } else {
+                    command.run();
+                }
+            }
+        };
+        adapter.setUpdateDispatch(direct, main, new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add("inserted " + position + "+" + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add("removed " + position + "+" + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("moved " + fromPosition + "->" + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                updates.add("changed " + position + "+" + count);
+            }
+        });
+    }
+
+    @Test
+    public void appendedPages_insertOnlyTheirRange() {
+        adapter.appendPage(page(1, movies(1)));
+        adapter.appendPage(page(2, movies(2)));
+
+        assertEquals(Arrays.asList("inserted 0+20", "inserted 20+20"), updates);
+        assertEquals(40, adapter.getItemCount());
+    }
+
+    @Test
+    public void unchangedReplacement_dispatchesNothing() {
+        appendTwoPages();
+
+        assertTrue(adapter.replacePage(page(2, movies(2))));
+
+        assertEquals(0, updates.size());
+        assertEquals(0, rebinds());
+    }
+
+    @Test
+    public void changedMovie_rebindsOnlyThatItem() {
+        appendTwoPages();
+        Movie[] newContent = movies(2);
+        newContent[5].setRating(1.5);
+
+        adapter.replacePage(page(2, newContent));
+
+        assertEquals(Arrays.asList("changed 25+1"), updates);
+        assertEquals(1, rebinds());
+        assertEquals(1.5, adapter.getItem(25).getRating(), 0);
+    }
+
+    @Test
+    public void swappedMovies_areMovedWithoutARebind() {
+        appendTwoPages();
+        Movie[] newContent = movies(2);
+        Movie third = newContent[3];
+        newContent[3] = newContent[2];
+        newContent[2] = third;
+
+        adapter.replacePage(page(2, newContent));
+
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(0), updates.get(0).equals("moved 22->23") || updates.get(0).equals("moved 23->22"));
+        assertEquals(0, rebinds());
+        assertIds(newContent, 20);
+    }
+
+    @Test
+    public void insertedAndRemovedMovies_areOffsetByThePosition() {
+        appendTwoPages();
+        adapter.appendPage(page(3, movies(3)));
+        updates.clear();
+        /* The first movie of page 2 drops out, and a new movie enters in the middle */
+        List<Movie> newContent = new ArrayList<>(Arrays.asList(movies(2)));
+        newContent.remove(0);
+        newContent.add(10, movie(9999));
+
+        adapter.replacePage(page(2, newContent.toArray(new Movie[newContent.size()])));
+
+        assertEquals(2, updates.size());
+        assertTrue(updates.contains("inserted 31+1") && updates.contains("removed 20+1"));
+        assertEquals(1, rebinds());
+        assertEquals(60, adapter.getItemCount());
+        assertIds(newContent.toArray(new Movie[newContent.size()]), 20);
+        /* The next page is untouched */
+        assertIds(movies(3), 40);
+    }
+
+    @Test
+    public void bindCount_isResetWhenAReplacementIsDispatched() {
+        appendTwoPages();
+        Movie[] newContent = movies(1);
+        newContent[0].setVoteCount(123);
+
+        adapter.replacePage(page(1, newContent));
+
+        assertEquals(Arrays.asList("changed 0+1"), updates);
+        assertEquals(0, adapter.getBindCount());
+    }
+
+    @Test
+    public void staleReplacement_isDiscarded() {
+        appendTwoPages();
+        queueMainThread();
+        Movie[] first = movies(2);
+        first[0].setRating(2.0);
+        Movie[] second = movies(2);
+        second[1].setRating(3.0);
+
+        adapter.replacePage(page(2, first));
+        adapter.replacePage(page(2, second));
+        runMainThread();
+
+        /* Only the newer content is applied, as a diff from the content on screen */
+        assertEquals(Arrays.asList("changed 21+1"), updates);
+        assertEquals(3.0, adapter.getItem(21).getRating(), 0);
+    }
+
+    @Test
+    public void replacementOfADroppedPage_isDiscarded() {
+        appendTwoPages();
+        queueMainThread();
+        Movie[] newContent = movies(1);
+        newContent[0].setRating(2.0);
+        adapter.replacePage(page(1, newContent));
+
+        /* Enough pages to drop the first one */
+        for (int number = 3; number <= MyRVAdapter.MAX_PAGES_IN_MEMORY + 1; number++) {
+            adapter.appendPage(page(number, movies(number)));
+        }
+        updates.clear();
+        runMainThread();
+
+        assertEquals(0, updates.size());
+        assertEquals(2, adapter.getFirstPage());
+    }
+
+    @Test
+    public void partialPage_isRemovedAndThenAppendedAgain() {
+        adapter.appendPage(page(1, movies(1)));
+        Movie[] firstMovies = Arrays.copyOf(movies(2), 9);
+        adapter.appendPage(MoviePage.partial("popular", 2, firstMovies));
+        updates.clear();
+
+        assertTrue(adapter.removePartialPages());
+
+        assertEquals(Arrays.asList("removed 20+9"), updates);
+        assertEquals(1, adapter.getLastPage());
+        adapter.appendPage(page(2, movies(2)));
+        assertEquals(40, adapter.getItemCount());
+    }
+
+    private void appendTwoPages() {
+        adapter.appendPage(page(1, movies(1)));
+        adapter.appendPage(page(2, movies(2)));
+        updates.clear();
+    }
+
+    /**
+     * @return the number of binds that the recorded updates cost (the inserted and changed items).
+     */
+    private int rebinds() {
+        int binds = 0;
+        for (String update : updates) {
+            if (update.startsWith("inserted ") || update.startsWith("changed ")) {
+                binds += Integer.parseInt(update.substring(update.indexOf('+') + 1));
+            }
+        }
+        return binds;
+    }
+
+    private void queueMainThread() {
+        mainThreadQueued = true;
+    }
+
+    private void runMainThread() {
+        while (!mainQueue.isEmpty()) {
+            mainQueue.poll().run();
+        }
+    }
+
+    private void assertIds(Movie[] expected, int positionStart) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getId(), adapter.getItem(positionStart + i).getId());
+        }
+    }
+
+    private static MoviePage page(int number, Movie[] movies) {
+        return new MoviePage("popular", number, 100, movies);
+    }
+
+    /**
+     * @return the movies of a page, the same on every call.
+     */
+    private static Movie[] movies(int page) {
+        Movie[] movies = new Movie[PAGE_SIZE];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            movies[i] = movie(page * 100 + i);
+        }
+        return movies;
+    }
+
+    private static Movie movie(int id) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setOriginalTitle("Movie " + id);
+        movie.setImageThumbnail("/poster" + id + ".jpg");
+        movie.setOverview("Overview of movie " + id);
+        movie.setRating(5 + (id % 50) / 10.0);
+        movie.setReleaseDate("2018-03-" + (10 + id % 18));
+        movie.setPopularity(id / 7.0);
+        movie.setVoteCount(1000 + id);
+        return movie;
+    }
+}
@@ -0,0 +1,99 @@
+package net.bplaced.esigala1.popularmovies.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the removal of movies from {@link MovieSearchIndex}, before and after the compaction
+ * of its gaps.
+ */
+public class MovieSearchIndexTest {
+
+    private static final int LIMIT = 100;
+
+    private MovieSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new MovieSearchIndex();
+        index.add(movie(1, "Star Wars: The Last Jedi", "Rey develops her powers."));
+        index.add(movie(2, "Star Trek Beyond", "The crew of the Enterprise is stranded."));
+        index.add(movie(3, "A Star Is Born", "A musician helps a young singer."));
+        index.add(movie(4, "Solo", "A Star Wars story of a young smuggler."));
+    }
+
+    @Test
+    public void removedMovie_isNotFound() {
+        assertTrue(index.remove(2));
+
+        assertEquals(3, index.size());
+        assertEquals(ids(1, 3, 4), ids(index.search("star", LIMIT)));
+        assertEquals(ids(), ids(index.search("enterprise", LIMIT)));
+    }
+
+    @Test
+    public void unknownMovie_isNotRemoved() {
+        assertFalse(index.remove(99));
+        assertTrue(index.remove(1));
+        assertFalse(index.remove(1));
+
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void compaction_keepsTheOrderAndTheMatches() {
+        /* The third removal outnumbers the movies left, and compacts the index */
+        index.remove(1);
+        index.remove(3);
+        index.remove(2);
+
+        assertEquals(1, index.size());
+        assertEquals(ids(4), ids(index.search("star wa", LIMIT)));
+
+        index.add(movie(5, "Star Wars", "A young farmer joins the rebellion."));
+        index.add(movie(1, "Star Wars: The Last Jedi", "Rey develops her powers."));
+        /* The title matches first, then the overview match; each group in the order of addition */
+        assertEquals(ids(5, 1, 4), ids(index.search("star wars", LIMIT)));
+        assertEquals(ids(4, 5), ids(index.search("young", LIMIT)));
+    }
+
+    @Test
+    public void readdedMovie_isFoundAgain() {
+        index.remove(3);
+        index.add(movie(3, "A Star Is Born", "A musician helps a young singer."));
+
+        assertEquals(4, index.size());
+        assertEquals(ids(3), ids(index.search("musician", LIMIT)));
+    }
+
+    private static List<Integer> ids(List<Movie> movies) {
+        List<Integer> ids = new ArrayList<>();
+        for (Movie movie : movies) {
+            ids.add(movie.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(int... values) {
+        List<Integer> ids = new ArrayList<>();
+        for (int value : values) {
+            ids.add(value);
+        }
+        return ids;
+    }
+
+    private static Movie movie(int id, String title, String overview) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setOriginalTitle(title);
+        movie.setOverview(overview);
+        return movie;
+    }
+}
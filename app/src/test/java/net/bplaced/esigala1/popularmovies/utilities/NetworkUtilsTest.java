@@ -0,0 +1,66 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import net.bplaced.esigala1.popularmovies.BuildConfig;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of the selection of the poster size and of the image URLs.
+ */
+public class NetworkUtilsTest {
+
+    private static final String POSTER = "/kqjL17yufvn9OVLyXYpvtyrFfak.jpg";
+
+    /* The base image URL of the build (see the Gradle property "tmdbImageBaseUrl") */
+    private static final String BASE = BuildConfig.TMDB_IMAGE_BASE_URL;
+
+    @Test
+    public void exactWidths_selectTheirOwnSize() {
+        assertEquals("w92", NetworkUtils.selectPosterSize(92));
+        assertEquals("w154", NetworkUtils.selectPosterSize(154));
+        assertEquals("w185", NetworkUtils.selectPosterSize(185));
+        assertEquals("w342", NetworkUtils.selectPosterSize(342));
+        assertEquals("w500", NetworkUtils.selectPosterSize(500));
+        assertEquals("w780", NetworkUtils.selectPosterSize(780));
+    }
+
+    @Test
+    public void widthsBetweenSizes_selectTheNextLargerSize() {
+        assertEquals("w92", NetworkUtils.selectPosterSize(1));
+        assertEquals("w154", NetworkUtils.selectPosterSize(93));
+        assertEquals("w185", NetworkUtils.selectPosterSize(160));
+        assertEquals("w342", NetworkUtils.selectPosterSize(186));
+        assertEquals("w500", NetworkUtils.selectPosterSize(360));
+        assertEquals("w780", NetworkUtils.selectPosterSize(501));
+        assertEquals(342, NetworkUtils.selectPosterWidth(270));
+    }
+
+    @Test
+    public void widthsAboveTheLargestSize_selectTheLargestSize() {
+        /* The "original" file of a poster can be several MB, so it is never selected */
+        assertEquals("w780", NetworkUtils.selectPosterSize(781));
+        assertEquals("w780", NetworkUtils.selectPosterSize(1440));
+        assertEquals(780, NetworkUtils.selectPosterWidth(1440));
+        assertEquals(BASE + "w780" + POSTER, NetworkUtils.buildImageURL(POSTER, 1080));
+    }
+
+    @Test
+    public void unknownWidth_selectsTheDefaultSize() {
+        assertEquals("w185", NetworkUtils.selectPosterSize(0));
+        assertEquals("w185", NetworkUtils.selectPosterSize(-1));
+        assertEquals(NetworkUtils.DEFAULT_POSTER_WIDTH, NetworkUtils.selectPosterWidth(0));
+        assertEquals(BASE + "w185" + POSTER, NetworkUtils.buildImageURL(POSTER, 0));
+    }
+
+    @Test
+    public void buildImageURL_joinsTheSizeAndTheName() {
+        assertEquals(BASE + "w342" + POSTER, NetworkUtils.buildImageURL(POSTER, 300));
+        /* A name without the leading "/" gets one */
+        assertEquals(BASE + "w92/poster.jpg", NetworkUtils.buildImageURL("poster.jpg", 80));
+        assertEquals(BASE + "w185" + POSTER, NetworkUtils.buildImageURL(POSTER));
+        assertNull(NetworkUtils.buildImageURL(null, 300));
+    }
+}
@@ -0,0 +1,233 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link RequestLimiter} with a fake clock, so that minutes of traffic run in
+ * milliseconds and every start time is exact.
+ */
+public class RequestLimiterTest {
+
+    /* The limits of TMDBApi */
+    private static final int BURST = 10;
+    private static final double PER_SECOND = 3.5;
+
+    /* The longest wait for a token of a request at the head of the queue */
+    private static final long TOKEN_INTERVAL_MS = (long) Math.ceil(1000 / PER_SECOND);
+
+    private FakeClock clock;
+    private RequestLimiter limiter;
+
+    /* The start times of the requests, in the order that they were started */
+    private final List<Long> startTimes = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        limiter = new RequestLimiter(BURST, PER_SECOND, clock);
+    }
+
+    @Test
+    public void rateIsNeverExceeded() {
+        /* A burst of mixed priorities at once, then a steady overload */
+        for (int i = 0; i < 100; i++) {
+            acquire(TMDBApi.Priority.values()[i % 3], null);
+        }
+        for (int second = 0; second < 60; second++) {
+            clock.advanceBy(500);
+            acquire(TMDBApi.Priority.PREFETCH, null);
+            clock.advanceBy(500);
+            acquire(TMDBApi.Priority.VISIBLE, null);
+        }
+        clock.advanceBy(60000);
+
+        assertEquals(220, startTimes.size());
+        /* In any window, at most the burst plus the tokens that the window adds */
+        for (int first = 0; first < startTimes.size(); first++) {
+            for (int last = first; last < startTimes.size(); last++) {
+                long window = startTimes.get(last) - startTimes.get(first);
+                long allowed = BURST + (long) Math.floor(window * PER_SECOND / 1000);
+                assertTrue("Requests " + first + ".." + last + " in " + window + " ms",
+                        last - first + 1 <= allowed);
+            }
+        }
+    }
+
+    @Test
+    public void visibleLatencyStaysLow_underBackgroundLoad() {
+        /* The bucket is empty and the warming requests keep the queue long */
+        for (int i = 0; i < 200; i++) {
+            acquire(TMDBApi.Priority.WARMING, null);
+        }
+        long maxVisibleLatency = 0;
+        for (int i = 0; i < 20; i++) {
+            clock.advanceBy(1700);
+            for (int j = 0; j < 5; j++) {
+                acquire(TMDBApi.Priority.PREFETCH, null);
+            }
+            long requestedAt = clock.now();
+            long[] startedAt = {-1};
+            acquire(TMDBApi.Priority.VISIBLE, startedAt);
+            clock.advanceBy(TOKEN_INTERVAL_MS);
+            assertTrue("The visible request did not start", startedAt[0] >= 0);
+            maxVisibleLatency = Math.max(maxVisibleLatency, startedAt[0] - requestedAt);
+        }
+        /* A visible request waits at most for the next token, never behind the background requests */
+        assertTrue("Max visible latency = " + maxVisibleLatency + " ms", maxVisibleLatency <= TOKEN_INTERVAL_MS);
+    }
+
+    @Test
+    public void sameRequestsOfAPriority_keepTheirOrder() {
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < BURST; i++) {
+            acquire(TMDBApi.Priority.WARMING, null);
+        }
+        for (int i = 0; i < 5; i++) {
+            final int index = i;
+            limiter.acquire(TMDBApi.Priority.PREFETCH, new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                }
+            });
+        }
+        clock.advanceBy(10000);
+
+        assertEquals(5, order.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void raisedRequest_goesAheadOfTheLowerOnes() {
+        for (int i = 0; i < BURST; i++) {
+            acquire(TMDBApi.Priority.VISIBLE, null);
+        }
+        long[] prefetchStart = {-1};
+        long[] warmingStart = {-1};
+        acquire(TMDBApi.Priority.PREFETCH, prefetchStart);
+        RequestLimiter.Ticket warming = acquire(TMDBApi.Priority.WARMING, warmingStart);
+
+        limiter.raise(warming, TMDBApi.Priority.VISIBLE);
+        clock.advanceBy(10000);
+
+        assertTrue(warmingStart[0] >= 0 && prefetchStart[0] >= 0);
+        assertTrue(warmingStart[0] < prefetchStart[0]);
+    }
+
+    @Test
+    public void cancelledRequest_takesNoToken() {
+        for (int i = 0; i < BURST; i++) {
+            acquire(TMDBApi.Priority.VISIBLE, null);
+        }
+        long[] cancelledStart = {-1};
+        RequestLimiter.Ticket cancelled = acquire(TMDBApi.Priority.VISIBLE, cancelledStart);
+        long[] nextStart = {-1};
+        acquire(TMDBApi.Priority.VISIBLE, nextStart);
+
+        cancelled.cancel();
+        clock.advanceBy(10000);
+
+        assertEquals(-1, cancelledStart[0]);
+        assertEquals(TOKEN_INTERVAL_MS, nextStart[0]);
+    }
+
+    @Test
+    public void noRequestStarts_duringAPause() {
+        limiter.pauseFor(5000);
+        long[] startedAt = {-1};
+        acquire(TMDBApi.Priority.VISIBLE, startedAt);
+        clock.advanceBy(4999);
+        assertEquals(-1, startedAt[0]);
+        assertEquals(1, limiter.remainingPause());
+
+        clock.advanceBy(TOKEN_INTERVAL_MS + 1);
+        /* The bucket is empty after the pause, so the request waits for a whole token */
+        assertEquals(5000 + TOKEN_INTERVAL_MS, startedAt[0]);
+    }
+
+    /**
+     * Method to acquire a token for a request that records its start time.
+     *
+     * @param startedAt Receives the start time at index 0, or null.
+     */
+    private RequestLimiter.Ticket acquire(TMDBApi.Priority priority, final long[] startedAt) {
+        return limiter.acquire(priority, new Runnable() {
+            @Override
+            public void run() {
+                startTimes.add(clock.now());
+                if (startedAt != null) {
+                    startedAt[0] = clock.now();
+                }
+            }
+        });
+    }
+
+    /**
+     * A clock that only moves when the test advances it, and runs the due tasks in their order.
+     */
+    private static class FakeClock implements RequestLimiter.Clock {
+
+        private long now;
+        private final List<ScheduledTask> tasks = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            tasks.add(new ScheduledTask(task, now + delayMs));
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i).task == task) {
+                    tasks.remove(i);
+                }
+            }
+        }
+
+        /**
+         * Method to move the time forward, running every task that is due on the way at its time.
+         */
+        void advanceBy(long millis) {
+            long end = now + millis;
+            while (true) {
+                ScheduledTask next = null;
+                for (ScheduledTask task : tasks) {
+                    if (task.time <= end && (next == null || task.time < next.time)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                tasks.remove(next);
+                now = Math.max(now, next.time);
+                next.task.run();
+            }
+            now = end;
+        }
+    }
+
+    private static class ScheduledTask {
+        final Runnable task;
+        final long time;
+
+        ScheduledTask(Runnable task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package net.bplaced.esigala1.popularmovies.utilities;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link SingleFlight} against a local mock server, that counts the requests that reach
+ * it ("upstream hits").
+ *
+ * The calls are made the way {@link TMDBApi} makes them: the first subscriber of a key starts an
+ * asynchronous HTTP call, and its result is completed on the "main thread", which is the thread
+ * of the test here (see {@link #runMainLoop(int)}).
+ */
+public class SingleFlightTest {
+
+    /* The delay of the response body, so that the calls are still in flight when the others join */
+    private static final long BODY_DELAY_MS = 200;
+
+    /* The maximum time to wait for the results */
+    private static final long TIMEOUT_MS = 5000;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private SingleFlight<String> flight;
+
+    /* The tasks posted to the main thread */
+    private final LinkedBlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse()
+                    .setBody("{\"page\":1,\"results\":[]}")
+                    .setBodyDelay(BODY_DELAY_MS, TimeUnit.MILLISECONDS));
+        }
+        server.start();
+        client = new OkHttpClient();
+        flight = new SingleFlight<>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void concurrentIdenticalRequests_hitUpstreamOnce() throws InterruptedException {
+        List<Subscriber> subscribers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Subscriber subscriber = new Subscriber();
+            subscribers.add(subscriber);
+            load("movie/popular?page=1", subscriber);
+        }
+
+        runMainLoop(1);
+
+        assertEquals(1, server.getRequestCount());
+        for (Subscriber subscriber : subscribers) {
+            assertEquals(1, subscriber.results.size());
+            assertEquals("{\"page\":1,\"results\":[]}", subscriber.results.get(0));
+        }
+        assertFalse(flight.isInFlight("movie/popular?page=1"));
+    }
+
+    @Test
+    public void differentRequests_areNotCoalesced() throws InterruptedException {
+        Subscriber popular = new Subscriber();
+        Subscriber topRated = new Subscriber();
+        Subscriber secondPage = new Subscriber();
+        load("movie/popular?page=1", popular);
+        load("movie/top_rated?page=1", topRated);
+        load("movie/popular?page=2", secondPage);
+
+        runMainLoop(3);
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(1, popular.results.size());
+        assertEquals(1, topRated.results.size());
+        assertEquals(1, secondPage.results.size());
+    }
+
+    @Test
+    public void rapidRotation_deliversOnlyToTheCurrentSubscriber() throws InterruptedException {
+        /* Every "rotation" destroys the subscriber (it leaves) and the recreated one joins again */
+        List<Subscriber> destroyed = new ArrayList<>();
+        Subscriber current = new Subscriber();
+        load("movie/popular?page=1", current);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(flight.leave("movie/popular?page=1", current));
+            destroyed.add(current);
+            current = new Subscriber();
+            load("movie/popular?page=1", current);
+        }
+        assertEquals(1, flight.subscriberCount("movie/popular?page=1"));
+
+        runMainLoop(1);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, current.results.size());
+        for (Subscriber subscriber : destroyed) {
+            assertTrue(subscriber.results.isEmpty());
+        }
+    }
+
+    @Test
+    public void callWithoutSubscribers_stillCompletes() throws InterruptedException {
+        Subscriber subscriber = new Subscriber();
+        load("movie/popular?page=1", subscriber);
+        flight.leave("movie/popular?page=1", subscriber);
+        assertFalse(flight.leave("movie/popular?page=1", subscriber));
+        assertTrue(flight.isInFlight("movie/popular?page=1"));
+
+        runMainLoop(1);
+
+        assertTrue(subscriber.results.isEmpty());
+        assertFalse(flight.isInFlight("movie/popular?page=1"));
+    }
+
+    @Test
+    public void requestAfterCompletion_startsANewCall() throws InterruptedException {
+        Subscriber first = new Subscriber();
+        load("movie/popular?page=1", first);
+        runMainLoop(1);
+
+        Subscriber second = new Subscriber();
+        load("movie/popular?page=1", second);
+        runMainLoop(1);
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, first.results.size());
+        assertEquals(1, second.results.size());
+    }
+
+    /**
+     * Method to load a path of the mock server, coalesced with the identical loads in flight.
+     */
+    private void load(final String key, Subscriber subscriber) {
+        if (!flight.join(key, subscriber)) {
+            return;
+        }
+        Request request = new Request.Builder().url(server.url("/3/" + key)).build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                completeOnMainThread(key, null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    completeOnMainThread(key, response.body().string());
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    private void completeOnMainThread(final String key, final String result) {
+        mainQueue.add(new Runnable() {
+            @Override
+            public void run() {
+                flight.complete(key, result);
+            }
+        });
+    }
+
+    /**
+     * Method to run the tasks posted to the main thread, until the given number of calls completed.
+     */
+    private void runMainLoop(int completions) throws InterruptedException {
+        for (int i = 0; i < completions; i++) {
+            Runnable task = mainQueue.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (task == null) {
+                throw new AssertionError("No call completed within " + TIMEOUT_MS + " ms");
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * A subscriber that records its results.
+     */
+    private static class Subscriber implements TMDBApi.AsyncTaskCompleteListener<String> {
+
+        final List<String> results = new ArrayList<>();
+
+        @Override
+        public void onTaskComplete(String result) {
+            results.add(result);
+        }
+    }
+}
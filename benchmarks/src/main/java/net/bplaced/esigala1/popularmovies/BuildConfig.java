@@ -0,0 +1,17 @@
+package net.bplaced.esigala1.popularmovies;
+
+/**
+ * Stand-in for the BuildConfig that the Android build generates for the app, with the values of a
+ * release build, so that the benchmarks measure the code paths of a release build.
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+    public static final String APPLICATION_ID = "net.bplaced.esigala1.popularmovies";
+    public static final String BUILD_TYPE = "release";
+    public static final String THEMOVIEDB_ORG_API_KEY = "";
+    public static final String TMDB_IMAGE_BASE_URL = "http://image.tmdb.org/t/p/";
+    public static final boolean GRID_POSTERS_RGB_565 = true;
+
+    private BuildConfig() {
+    }
+}
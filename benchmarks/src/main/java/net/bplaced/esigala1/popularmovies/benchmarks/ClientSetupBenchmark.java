@@ -0,0 +1,205 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.bplaced.esigala1.popularmovies.model.ModelTypeAdapterFactory;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.QueryMap;
+import retrofit2.http.Streaming;
+
+/**
+ * Benchmarks of the setup cost of the HTTP stack and of the connection reuse across the API
+ * calls, against a local mock server:
+ * - createStack:  the creation of the stack (OkHttp client, Gson, Retrofit and the API proxy),
+ *                 as TMDBClient does it once per process.
+ * - call:         one API call, with the stack created for the call ("perCall", as TMDBApi.start()
+ *                 did before TMDBClient, each time with a new connection pool) or the process-wide
+ *                 one ("shared").
+ *
+ * Every call reports two counters: the calls, and the connections that the server accepted for
+ * them; connections / calls is the share of the calls that could not reuse a connection. The
+ * server is plain HTTP, so a new connection costs a TCP handshake here and a TLS handshake on
+ * top of it against the real API.
+ *
+ * The stack of the app is built the same way (see TMDBClient); the API interface is a copy of
+ * TMDBApi.TMDBApiInterface, which cannot be compiled without the Android framework.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClientSetupBenchmark {
+
+    /* The settings of TMDBClient */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_DURATION_MINUTES = 5;
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+
+    private static final Map<String, String> QUERY_PARAMETERS = Collections.singletonMap("api_key", "mock");
+
+    /**
+     * The mock server, that serves one page of the API for every request and counts the
+     * connections that it accepts.
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"perCall", "shared"})
+        public String stack;
+
+        MockWebServer server;
+        String baseUrl;
+        ApiInterface sharedApi;
+        final AtomicInteger connections = new AtomicInteger();
+
+        @Setup
+        public void setUp() throws IOException {
+            final String page = Payloads.listResponse(20);
+            server = new MockWebServer();
+            server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    /* The first request on a connection opened it */
+                    if (request.getSequenceNumber() == 0) {
+                        connections.incrementAndGet();
+                    }
+                    return new MockResponse()
+                            .setHeader("Content-Type", "application/json;charset=utf-8")
+                            .setBody(page);
+                }
+            });
+            server.start();
+            baseUrl = server.url("/3/").toString();
+            sharedApi = createStack(baseUrl).api;
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * The counters of the calls.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Connections {
+        public long calls;
+        public long connections;
+    }
+
+    @Benchmark
+    public Object createStack() {
+        return createStack("http://localhost/3/");
+    }
+
+    @Benchmark
+    public int call(Server server, Connections counters) throws IOException {
+        Stack perCall = null;
+        ApiInterface api;
+        if ("perCall".equals(server.stack)) {
+            perCall = createStack(server.baseUrl);
+            api = perCall.api;
+        } else {
+            api = server.sharedApi;
+        }
+        int connectionsBefore = server.connections.get();
+        Response<ResponseBody> response = api.getPopularMovies("popular", 1, null, null, QUERY_PARAMETERS).execute();
+        int length;
+        try {
+            length = response.body().bytes().length;
+        } finally {
+            response.body().close();
+        }
+        counters.calls++;
+        counters.connections += server.connections.get() - connectionsBefore;
+        if (perCall != null) {
+            /* The stack of the call is dropped; its idle connection would only pile up here */
+            perCall.client.connectionPool().evictAll();
+        }
+        return length;
+    }
+
+    /**
+     * Method to create the HTTP stack, the way TMDBClient does.
+     */
+    private static Stack createStack(String baseUrl) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .validateEagerly(true)
+                .build();
+        return new Stack(client, retrofit.create(ApiInterface.class));
+    }
+
+    private static final class Stack {
+        final OkHttpClient client;
+        final ApiInterface api;
+
+        Stack(OkHttpClient client, ApiInterface api) {
+            this.client = client;
+            this.api = api;
+        }
+    }
+
+    /**
+     * Copy of TMDBApi.TMDBApiInterface.
+     */
+    interface ApiInterface {
+        @Streaming
+        @GET("movie/{sort_order}")
+        Call<ResponseBody> getPopularMovies(@Path("sort_order") String sort_order,
+                                            @Query("page") int page,
+                                            @Header("If-None-Match") String if_none_match,
+                                            @Header("If-Modified-Since") String if_modified_since,
+                                            @QueryMap Map<String, String> query_parameters);
+    }
+}
@@ -0,0 +1,49 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the image URL building, that runs on every bind of a grid cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImageUrlBenchmark {
+
+    /* The target widths of a grid cell (phone portrait, phone landscape, tablet) and of the detail screen */
+    @Param({"171", "342", "500", "1032"})
+    public int targetWidth;
+
+    private String posterPath;
+
+    @Setup
+    public void setUp() {
+        posterPath = Payloads.movies(1)[0].getImageThumbnail();
+    }
+
+    @Benchmark
+    public String buildImageURL() {
+        return NetworkUtils.buildImageURL(posterPath, targetWidth);
+    }
+
+    @Benchmark
+    public String buildDefaultImageURL() {
+        return NetworkUtils.buildImageURL(posterPath);
+    }
+
+    @Benchmark
+    public String selectPosterSize() {
+        return NetworkUtils.selectPosterSize(targetWidth);
+    }
+}
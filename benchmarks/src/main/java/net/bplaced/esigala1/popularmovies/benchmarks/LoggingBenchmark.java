@@ -0,0 +1,86 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.utilities.DebugLog;
+import net.bplaced.esigala1.popularmovies.utilities.NetworkUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the debug logging of a bind of a grid cell in a release build. Every benchmark
+ * does the work of MyRVAdapter.onBindViewHolder() that runs off the framework (the item count,
+ * the bind counter, the poster name from the store and its URL), for the next position of a grid
+ * of 10 pages:
+ * - bindWithoutLogging:        the bind without any log call, the baseline.
+ * - bindWithFacade:            the bind with its log calls through {@link DebugLog}, as in the app.
+ * - bindWithUnguardedLogging:  the bind with the log calls that it had before the facade, whose
+ *                              messages are built even if they are not logged. (The messages go
+ *                              to the Blackhole, since the Log of the stub android.jar throws.)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoggingBenchmark {
+
+    private static final String LOG_TAG = "DEBUGGING MyRVAdapter";
+    private static final String HOLDER_LOG_TAG = "DEBUGGING MyViewHolder";
+
+    private static final int PAGES = 10;
+    private static final int PAGE_SIZE = 20;
+
+    /* The poster width of a grid cell of a phone (3 columns of 1080 px) */
+    private static final int POSTER_WIDTH = 342;
+
+    private MovieStore store;
+    private int position;
+    private int bindCount;
+
+    @Setup
+    public void setUp() {
+        store = new MovieStore();
+        for (int page = 1; page <= PAGES; page++) {
+            store.append(Payloads.distinctPage(page, PAGE_SIZE));
+        }
+    }
+
+    @Benchmark
+    public String bindWithoutLogging() {
+        int position = nextPosition();
+        bindCount++;
+        return NetworkUtils.buildImageURL(store.getImageThumbnail(position), POSTER_WIDTH);
+    }
+
+    @Benchmark
+    public String bindWithFacade() {
+        DebugLog.d(LOG_TAG, "getItemCount()");
+        int position = nextPosition();
+        DebugLog.d(LOG_TAG, "onBindViewHolder(): Position = ", position);
+        bindCount++;
+        DebugLog.d(HOLDER_LOG_TAG, "bind(): Position = ", position);
+        return NetworkUtils.buildImageURL(store.getImageThumbnail(position), POSTER_WIDTH);
+    }
+
+    @Benchmark
+    public String bindWithUnguardedLogging(Blackhole log) {
+        log.consume("getItemCount()");
+        int position = nextPosition();
+        log.consume("onBindViewHolder(): Position = " + position);
+        bindCount++;
+        log.consume("bind(): Position = " + position);
+        return NetworkUtils.buildImageURL(store.getImageThumbnail(position), POSTER_WIDTH);
+    }
+
+    private int nextPosition() {
+        position = position + 1 < store.size() ? position + 1 : 0;
+        return position;
+    }
+}
@@ -0,0 +1,148 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MovieRanking;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the model: the construction of the movies, the columnar store of the grid, the
+ * content comparison that the diff of a replaced page (MovieDiffCallback) runs per item, and the
+ * local ranking of the stored movies (MovieRanking).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MovieBenchmark {
+
+    /* The number of movies of a page of the API */
+    private static final int PAGE_SIZE = 20;
+
+    /* The number of pages in the store (e.g. after a long scroll) */
+    @Param({"1", "10", "50"})
+    public int pageCount;
+
+    private Movie[] page;
+    private Movie[] changedPage;
+    private MovieStore store;
+    private int lastPageStart;
+
+    @Setup
+    public void setUp() {
+        page = Payloads.movies(PAGE_SIZE);
+        store = new MovieStore();
+        for (int i = 0; i < pageCount; i++) {
+            store.append(page);
+        }
+        lastPageStart = store.size() - PAGE_SIZE;
+
+        /* The same page, with one changed rating (as a refresh usually delivers it) */
+        changedPage = Payloads.movies(PAGE_SIZE);
+        changedPage[PAGE_SIZE / 2].setRating(changedPage[PAGE_SIZE / 2].getRating() + 0.1);
+    }
+
+    /**
+     * The construction of a movie, as the type adapter does it.
+     */
+    @Benchmark
+    public Movie newMovie() {
+        Movie source = page[0];
+        Movie movie = new Movie();
+        movie.setId(source.getId());
+        movie.setOriginalTitle(source.getOriginalTitle());
+        movie.setImageThumbnail(source.getImageThumbnail());
+        movie.setOverview(source.getOverview());
+        movie.setRating(source.getRating());
+        movie.setReleaseDate(source.getReleaseDate());
+        movie.setPopularity(source.getPopularity());
+        movie.setVoteCount(source.getVoteCount());
+        return movie;
+    }
+
+    /**
+     * The copy of a row of the store into a movie (e.g. for a click on a grid cell).
+     */
+    @Benchmark
+    public Movie getMovie() {
+        return store.getMovie(lastPageStart);
+    }
+
+    /**
+     * The reads of a bind of a grid cell, straight from the columns.
+     */
+    @Benchmark
+    public void bindColumns(Blackhole blackhole) {
+        blackhole.consume(store.getImageThumbnail(lastPageStart));
+        blackhole.consume(store.getId(lastPageStart));
+    }
+
+    /**
+     * The snapshot of a page for the background diff of a replaced page.
+     */
+    @Benchmark
+    public MovieStore copyPage() {
+        return store.copy(lastPageStart, PAGE_SIZE);
+    }
+
+    /**
+     * The content comparison of every item of a replaced page with the new page.
+     */
+    @Benchmark
+    public int diffPage() {
+        int changed = 0;
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (store.getId(lastPageStart + i) != changedPage[i].getId()
+                    || !store.hasSameContent(lastPageStart + i, changedPage[i])) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * The local ranking of all the stored movies, as a switch of the sort order runs it.
+     */
+    @Benchmark
+    public int[] rankPopular() {
+        return MovieRanking.rank(store, MovieRanking.SORT_ORDER_POPULAR);
+    }
+
+    /**
+     * The local ranking of the movies with enough votes (a filter, then the sort).
+     */
+    @Benchmark
+    public int[] rankHighestRated() {
+        return MovieRanking.rank(store, MovieRanking.SORT_ORDER_HIGHEST_RATED);
+    }
+
+    /**
+     * The replacement of the last page (remove and insert), after its diff.
+     */
+    @Benchmark
+    public int replacePage() {
+        store.remove(lastPageStart, PAGE_SIZE);
+        store.insert(lastPageStart, page);
+        return store.size();
+    }
+
+    /**
+     * The replacement of the first page; every following row is shifted twice.
+     */
+    @Benchmark
+    public int replaceFirstPage() {
+        store.remove(0, PAGE_SIZE);
+        store.insert(0, page);
+        return store.size();
+    }
+}
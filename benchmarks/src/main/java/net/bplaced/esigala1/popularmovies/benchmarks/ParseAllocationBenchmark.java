@@ -0,0 +1,165 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.bplaced.esigala1.popularmovies.model.ModelTMDBApi;
+import net.bplaced.esigala1.popularmovies.model.ModelTypeAdapterFactory;
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.utilities.MovieStreamParser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory benchmark of the parse of a large list response: the streaming parse of TMDBApi against
+ * the buffered parse that it replaced (the whole body read into a String, converted by Gson, and
+ * then copied into an array, as ResponseBody.string() and the Gson converter did).
+ *
+ * Every single shot reports three counters:
+ * - peakLiveBytes:          the heap that is live at the end of the parse, when it peaks (the
+ *                           parsed movies, and the buffered body if any), after a collection.
+ * - allocatedBytes:         the bytes allocated by the parse, garbage included.
+ * - bytesToFirstMovies:     the bytes allocated until the first screen of movies is available,
+ *                           i.e. until the first batch (streaming) or the whole page (buffered).
+ *
+ * The allocation counters need a HotSpot JVM (com.sun.management.ThreadMXBean), otherwise they
+ * are -1. For the allocation rate under load, run ParseBenchmark with "-prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseAllocationBenchmark {
+
+    /* The batch sizes of the streaming parser, as used by TMDBApi */
+    private static final int FIRST_BATCH_SIZE = 9;
+    private static final int BATCH_SIZE = 6;
+
+    /* The size of the buffer of ResponseBody.string() (Okio reads in segments of 8 KiB) */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    @Param({"20", "1000", "10000"})
+    public int movieCount;
+
+    @Param({"buffered", "streaming"})
+    public String path;
+
+    private String payload;
+    private Gson gson;
+    private MovieStreamParser parser;
+
+    /**
+     * The counters of the last parse.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Allocation {
+        public long peakLiveBytes;
+        public long allocatedBytes;
+        public long bytesToFirstMovies;
+    }
+
+    @Setup
+    public void setUp() {
+        payload = Payloads.listResponse(movieCount);
+        /* The same Gson setup as the TMDBClient */
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create();
+        parser = new MovieStreamParser(gson);
+    }
+
+    @Benchmark
+    public Object parse(Allocation allocation) throws IOException {
+        long before = usedHeap();
+        long startBytes = allocatedBytes();
+        final Object[] retained;
+        if ("buffered".equals(path)) {
+            String body = readFully(new StringReader(payload));
+            ModelTMDBApi model = gson.fromJson(body, ModelTMDBApi.class);
+            Movie[] movies = model.listOfMovies.toArray(new Movie[model.listOfMovies.size()]);
+            allocation.bytesToFirstMovies = allocatedBytes() - startBytes;
+            retained = new Object[]{body, movies};
+        } else {
+            final long[] firstMoviesBytes = {-1};
+            ModelTMDBApi model = parser.parse(new StringReader(payload), FIRST_BATCH_SIZE, BATCH_SIZE,
+                    new MovieStreamParser.BatchListener() {
+                        @Override
+                        public void onBatch(List<Movie> parsedSoFar) {
+                            if (firstMoviesBytes[0] < 0) {
+                                firstMoviesBytes[0] = allocatedBytes();
+                            }
+                        }
+                    });
+            Movie[] movies = model.listOfMovies.toArray(new Movie[model.listOfMovies.size()]);
+            /* A page smaller than the first batch is available only when it is complete */
+            allocation.bytesToFirstMovies = (firstMoviesBytes[0] < 0 ? allocatedBytes() : firstMoviesBytes[0])
+                    - startBytes;
+            retained = new Object[]{movies};
+        }
+        allocation.allocatedBytes = allocatedBytes() - startBytes;
+        if (startBytes < 0) {
+            allocation.allocatedBytes = -1;
+            allocation.bytesToFirstMovies = -1;
+        }
+        allocation.peakLiveBytes = usedHeap() - before;
+        return retained;
+    }
+
+    /**
+     * Method to read a body into a String, as ResponseBody.string() does.
+     */
+    private static String readFully(Reader in) throws IOException {
+        StringBuilder body = new StringBuilder();
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            body.append(buffer, 0, count);
+        }
+        return body.toString();
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or -1 if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the used heap in bytes, after the garbage has been collected.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        /* A few rounds, until a collection frees nothing more */
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
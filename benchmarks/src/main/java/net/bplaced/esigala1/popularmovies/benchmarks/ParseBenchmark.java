@@ -0,0 +1,127 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.bplaced.esigala1.popularmovies.model.ModelTMDBApi;
+import net.bplaced.esigala1.popularmovies.model.ModelTypeAdapterFactory;
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.utilities.MovieStreamParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the deserialization of the list responses, with list responses of different
+ * sizes (20 movies is one page of the API).
+ *
+ * The reflective benchmarks are the baseline: a plain Gson, that binds the model through
+ * reflection, as the app did before the type adapters of the model. (The lenient Gson of the app
+ * parsed the same way, since Gson reads every JsonReader leniently.) The "firstParse" benchmarks
+ * are single shots with a new Gson, i.e. the first parse after a cold start, that also creates
+ * the adapters.
+ *
+ * For the allocations per parse, run with the GC profiler:
+ * ./gradlew :benchmarks:jmh -Pjmh.include=ParseBenchmark -Pjmh.prof=gc
+ * and compare the "gc.alloc.rate.norm" (bytes per operation) of the benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    /* The batch sizes of the streaming parser, as used by TMDBApi */
+    private static final int FIRST_BATCH_SIZE = 9;
+    private static final int BATCH_SIZE = 6;
+
+    @Param({"1", "20", "100", "1000"})
+    public int movieCount;
+
+    private String payload;
+    private Gson gson;
+    private Gson reflectiveGson;
+    private MovieStreamParser parser;
+
+    @Setup
+    public void setUp() {
+        payload = Payloads.listResponse(movieCount);
+        /* The same Gson setup as the TMDBClient */
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create();
+        parser = new MovieStreamParser(gson);
+        /* The baseline, without the type adapters of the model */
+        reflectiveGson = new Gson();
+    }
+
+    /**
+     * The whole response through the type adapters (as Retrofit's Gson converter does).
+     */
+    @Benchmark
+    public ModelTMDBApi gsonFromJson() {
+        return gson.fromJson(payload, ModelTMDBApi.class);
+    }
+
+    /**
+     * The whole response through reflection (the baseline of {@link #gsonFromJson()}).
+     */
+    @Benchmark
+    public ModelTMDBApi reflectiveFromJson() {
+        return reflectiveGson.fromJson(payload, ModelTMDBApi.class);
+    }
+
+    /**
+     * The first parse with a new Gson of the app, including the creation of the type adapters.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public ModelTMDBApi firstParseWithAdapters() {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create()
+                .fromJson(payload, ModelTMDBApi.class);
+    }
+
+    /**
+     * The first parse with a new plain Gson, including the creation of the reflective adapters.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public ModelTMDBApi firstParseReflective() {
+        return new Gson().fromJson(payload, ModelTMDBApi.class);
+    }
+
+    /**
+     * The whole response through the streaming parser, without batches.
+     */
+    @Benchmark
+    public ModelTMDBApi streamParse() throws IOException {
+        return parser.parse(new StringReader(payload), FIRST_BATCH_SIZE, BATCH_SIZE, null);
+    }
+
+    /**
+     * The whole response through the streaming parser, handing the batches over (as TMDBApi does).
+     */
+    @Benchmark
+    public ModelTMDBApi streamParseWithBatches(final Blackhole blackhole) throws IOException {
+        return parser.parse(new StringReader(payload), FIRST_BATCH_SIZE, BATCH_SIZE,
+                new MovieStreamParser.BatchListener() {
+                    @Override
+                    public void onBatch(List<Movie> parsedSoFar) {
+                        blackhole.consume(parsedSoFar);
+                    }
+                });
+    }
+}
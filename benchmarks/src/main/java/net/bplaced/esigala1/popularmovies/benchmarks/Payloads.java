@@ -0,0 +1,155 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Source of the test data of the benchmarks: list responses with the structure and the field
+ * lengths of The Movie Database API responses ("/movie/popular"), and the movies of them.
+ *
+ * The data is generated from a fixed seed, so every run (and every fork) measures the same data.
+ */
+final class Payloads {
+
+    private static final long SEED = 20180307L;
+
+    /* An overview of a typical length (about 300 characters) */
+    private static final String OVERVIEW = "A former soldier returns home to find that the city he "
+            + "once protected has fallen under the control of a ruthless syndicate. With the help of "
+            + "an unlikely ally, he sets out to uncover the truth behind the disappearance of his "
+            + "brother, only to discover a conspiracy that reaches the highest levels of power.";
+
+    /* The vocabulary of the titles and the overviews of the search benchmark */
+    private static final String[] WORDS = ("star wars return jedi empire strikes back force awakens "
+            + "last night day dark knight rises lord rings fellowship king return two towers "
+            + "city love war peace man woman girl boy home alone lost found secret life death "
+            + "soldier ally truth brother sister father mother family power control syndicate "
+            + "conspiracy mission impossible fast furious story toy planet apes island lake river "
+            + "mountain ocean space time travel future past present dream nightmare ghost house "
+            + "street road journey adventure legend hero villain captain marvel iron spider").split(" ");
+
+    private Payloads() {
+    }
+
+    /**
+     * @return a list response (JSON) with the given number of movies.
+     */
+    static String listResponse(int movieCount) {
+        Random random = new Random(SEED);
+        StringBuilder json = new StringBuilder(movieCount * 900);
+        json.append("{\"page\":1,\"total_results\":19843,\"total_pages\":993,\"results\":[");
+        for (int i = 0; i < movieCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int id = 100000 + random.nextInt(400000);
+            json.append("{\"vote_count\":").append(random.nextInt(10000))
+                    .append(",\"id\":").append(id)
+                    .append(",\"video\":false")
+                    .append(",\"vote_average\":").append(String.format(Locale.US, "%.1f", random.nextDouble() * 10))
+                    .append(",\"title\":\"Movie Title ").append(id).append('"')
+                    .append(",\"popularity\":").append(String.format(Locale.US, "%.6f", random.nextDouble() * 500))
+                    .append(",\"poster_path\":\"/").append(posterName(random)).append(".jpg\"")
+                    .append(",\"original_language\":\"en\"")
+                    .append(",\"original_title\":\"Movie Title ").append(id).append('"')
+                    .append(",\"genre_ids\":[28,12,878]")
+                    .append(",\"backdrop_path\":\"/").append(posterName(random)).append(".jpg\"")
+                    .append(",\"adult\":false")
+                    .append(",\"overview\":\"").append(OVERVIEW).append('"')
+                    .append(",\"release_date\":\"").append(2000 + random.nextInt(19)).append('-')
+                    .append(String.format(Locale.US, "%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)))
+                    .append("\"}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * @return the given number of movies, as the parser delivers them.
+     */
+    static Movie[] movies(int movieCount) {
+        Random random = new Random(SEED);
+        Movie[] movies = new Movie[movieCount];
+        for (int i = 0; i < movieCount; i++) {
+            Movie movie = new Movie();
+            int id = 100000 + random.nextInt(400000);
+            movie.setId(id);
+            movie.setOriginalTitle("Movie Title " + id);
+            movie.setImageThumbnail("/" + posterName(random) + ".jpg");
+            movie.setOverview(OVERVIEW);
+            movie.setRating(Math.round(random.nextDouble() * 100) / 10.0);
+            movie.setReleaseDate(String.format(Locale.US, "%d-%02d-%02d",
+                    2000 + random.nextInt(19), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            movie.setPopularity(Math.round(random.nextDouble() * 500000000) / 1000000.0);
+            movie.setVoteCount(random.nextInt(10000));
+            movies[i] = movie;
+        }
+        return movies;
+    }
+
+    /**
+     * @return the given number of movies with varied titles and overviews, made of the words of a
+     * fixed vocabulary (for the search index).
+     */
+    static Movie[] searchMovies(int movieCount) {
+        Random random = new Random(SEED);
+        Movie[] movies = new Movie[movieCount];
+        for (int i = 0; i < movieCount; i++) {
+            Movie movie = new Movie();
+            movie.setId(100000 + i);
+            movie.setOriginalTitle(sentence(random, 1 + random.nextInt(4)));
+            movie.setOverview(sentence(random, 30 + random.nextInt(30)));
+            movies[i] = movie;
+        }
+        return movies;
+    }
+
+    /**
+     * @return a page of movies with distinct titles, overviews and poster paths, as a page of the
+     * API delivers them (i.e. every string is a new instance). Every page has its own seed.
+     */
+    static Movie[] distinctPage(int page, int pageSize) {
+        Random random = new Random(SEED + page);
+        Movie[] movies = new Movie[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            Movie movie = new Movie();
+            movie.setId(page * pageSize + i);
+            movie.setOriginalTitle(sentence(random, 1 + random.nextInt(4)) + " " + movie.getId());
+            movie.setImageThumbnail("/" + posterName(random) + ".jpg");
+            movie.setOverview(sentence(random, 30 + random.nextInt(30)));
+            movie.setRating(Math.round(random.nextDouble() * 100) / 10.0);
+            movie.setReleaseDate(String.format(Locale.US, "%d-%02d-%02d",
+                    2000 + random.nextInt(19), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            movies[i] = movie;
+        }
+        return movies;
+    }
+
+    /**
+     * @return the given number of words of the vocabulary, separated by spaces.
+     */
+    private static String sentence(Random random, int wordCount) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+
+    /**
+     * @return a poster file name of the same form as the API ones (27 alphanumeric characters).
+     */
+    private static String posterName(Random random) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        char[] name = new char[27];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(name);
+    }
+}
@@ -0,0 +1,69 @@
+package net.bplaced.esigala1.popularmovies.benchmarks;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MovieSearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the search index of the cached movies: the search of every keystroke, and the
+ * indexing of the movies as their pages arrive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchIndexBenchmark {
+
+    /* The number of indexed movies (e.g. 2500 pages) */
+    private static final int MOVIE_COUNT = 50000;
+
+    /* The number of movies of a page of the API */
+    private static final int PAGE_SIZE = 20;
+
+    /* The maximum number of results, as the search of the app requests them */
+    private static final int LIMIT = 100;
+
+    /* The query as the user types it: a prefix, a word, a word and a prefix, and no match */
+    @Param({"s", "star", "star wa", "zzz"})
+    public String query;
+
+    private Movie[] movies;
+    private MovieSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        movies = Payloads.searchMovies(MOVIE_COUNT);
+        index = new MovieSearchIndex();
+        index.addAll(movies);
+    }
+
+    /**
+     * The search of a keystroke.
+     */
+    @Benchmark
+    public List<Movie> search() {
+        return index.search(query, LIMIT);
+    }
+
+    /**
+     * The indexing of a page of movies, as a page arrives.
+     */
+    @Benchmark
+    public int addPage() {
+        MovieSearchIndex pageIndex = new MovieSearchIndex();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            pageIndex.add(movies[i]);
+        }
+        return pageIndex.size();
+    }
+}
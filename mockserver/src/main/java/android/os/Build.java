@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * JVM stand-in of the Android Build, with the minimum SDK of the app.
+ *
+ * Note: Retrofit picks its Android platform when this class is found, so the callbacks of the
+ * calls are delivered on the main thread (see {@link Looper}), as in the app; on its plain Java
+ * platform they would run on the threads of OkHttp.
+ */
+public final class Build {
+
+    private Build() {
+    }
+
+    public static final class VERSION {
+
+        public static final int SDK_INT = 15;
+
+        private VERSION() {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM stand-in of the Android Handler: posts messages (runnables) to the thread of its
+ * {@link Looper}, at once or after a delay, and removes the pending ones.
+ *
+ * Note: Only the methods that the load path of the app uses are implemented.
+ */
+public class Handler {
+
+    private final Looper mLooper;
+
+    /* The pending messages of every runnable, to remove them (see removeCallbacks) */
+    private final Map<Runnable, List<Message>> mPending = new IdentityHashMap<>();
+
+    public Handler(Looper looper) {
+        if (looper == null) {
+            throw new NullPointerException("looper");
+        }
+        this.mLooper = looper;
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    public final boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    public final boolean postDelayed(Runnable r, long delayMillis) {
+        Message message = new Message(r);
+        synchronized (mPending) {
+            List<Message> messages = mPending.get(r);
+            if (messages == null) {
+                messages = new ArrayList<>(1);
+                mPending.put(r, messages);
+            }
+            messages.add(message);
+            message.future = mLooper.executor.schedule(message, Math.max(delayMillis, 0), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable r) {
+        List<Message> messages;
+        synchronized (mPending) {
+            messages = mPending.remove(r);
+        }
+        if (messages != null) {
+            for (Message message : messages) {
+                message.future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * A posted runnable, that leaves the pending messages when it runs.
+     */
+    private final class Message implements Runnable {
+
+        final Runnable callback;
+        Future<?> future;
+
+        Message(Runnable callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mPending) {
+                List<Message> messages = mPending.get(callback);
+                if (messages != null && messages.remove(this) && messages.isEmpty()) {
+                    mPending.remove(callback);
+                }
+            }
+            callback.run();
+        }
+    }
+}
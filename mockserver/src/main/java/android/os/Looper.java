@@ -0,0 +1,57 @@
+package android.os;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JVM stand-in of the Android Looper, for the load path of the app (TMDBApi, its rate limiter and
+ * Retrofit) in the harnesses of this module: the main looper is a single thread ("main") that runs
+ * the posted messages in the order of their times, and the messages of the same time in the order
+ * that they were posted, as the main thread of the app does.
+ *
+ * Note: Only the methods that the load path uses are implemented.
+ */
+public final class Looper {
+
+    private static final Looper sMainLooper = new Looper("main");
+
+    /* The thread of the looper, and its queue of (delayed) messages */
+    final ScheduledThreadPoolExecutor executor;
+    private volatile Thread thread;
+
+    private Looper(final String name) {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                thread = new Thread(runnable, name);
+                /* The harnesses exit when their own work is done */
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        /* A removed message leaves the queue at once (see Handler#removeCallbacks) */
+        executor.setRemoveOnCancelPolicy(true);
+        executor.prestartCoreThread();
+    }
+
+    /**
+     * @return the looper of the main thread.
+     */
+    public static Looper getMainLooper() {
+        return sMainLooper;
+    }
+
+    /**
+     * @return the looper of the current thread, or null if it has none.
+     */
+    public static Looper myLooper() {
+        return Thread.currentThread() == sMainLooper.thread ? sMainLooper : null;
+    }
+
+    /**
+     * @return the thread of this looper.
+     */
+    public Thread getThread() {
+        return thread;
+    }
+}
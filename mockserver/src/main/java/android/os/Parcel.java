@@ -0,0 +1,43 @@
+package android.os;
+
+/**
+ * JVM stand-in of the Android Parcel, so that the model of the app compiles; the harnesses of
+ * this module never parcel a movie.
+ */
+public final class Parcel {
+
+    private Parcel() {
+    }
+
+    public int readInt() {
+        throw new UnsupportedOperationException();
+    }
+
+    public byte readByte() {
+        throw new UnsupportedOperationException();
+    }
+
+    public double readDouble() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String readString() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeInt(int val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeByte(byte val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeDouble(double val) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeString(String val) {
+        throw new UnsupportedOperationException();
+    }
+}
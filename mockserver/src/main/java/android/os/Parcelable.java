@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * JVM stand-in of the Android Parcelable, so that the model of the app compiles and loads.
+ */
+public interface Parcelable {
+
+    int PARCELABLE_WRITE_RETURN_VALUE = 0x0001;
+    int CONTENTS_FILE_DESCRIPTOR = 0x0001;
+
+    int describeContents();
+
+    void writeToParcel(Parcel dest, int flags);
+
+    interface Creator<T> {
+
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+}
@@ -0,0 +1,18 @@
+package android.os;
+
+/**
+ * JVM stand-in of the Android SystemClock: a monotonic clock in milliseconds.
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -0,0 +1,43 @@
+package android.util;
+
+/**
+ * JVM stand-in of the Android Log. The messages of the app are dropped, unless the harness runs
+ * with "-Dlog=true" (e.g. to follow the retries of a load), since printing them would distort the
+ * measured latencies.
+ */
+public final class Log {
+
+    private static final boolean ENABLED = Boolean.getBoolean("log");
+
+    private Log() {
+    }
+
+    public static int d(String tag, String msg) {
+        return println("D", tag, msg);
+    }
+
+    public static int i(String tag, String msg) {
+        return println("I", tag, msg);
+    }
+
+    public static int w(String tag, String msg) {
+        return println("W", tag, msg);
+    }
+
+    public static int e(String tag, String msg) {
+        return println("E", tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return println("E", tag, msg + "\n" + tr);
+    }
+
+    private static int println(String level, String tag, String msg) {
+        if (!ENABLED) {
+            return 0;
+        }
+        String line = level + "/" + tag + " [" + Thread.currentThread().getName() + "]: " + msg;
+        System.err.println(line);
+        return line.length();
+    }
+}
@@ -0,0 +1,19 @@
+package net.bplaced.esigala1.popularmovies;
+
+/**
+ * Stand-in for the BuildConfig that the Android build generates for the app, with the values of a
+ * release build, for the load path of the app in the harnesses of this module.
+ *
+ * The base URL of the API is read from the system property "tmdbBaseUrl" (the harnesses set it to
+ * their mock server before the first load), instead of the Gradle property of the app.
+ */
+public final class BuildConfig {
+    public static final boolean DEBUG = false;
+    public static final String APPLICATION_ID = "net.bplaced.esigala1.popularmovies";
+    public static final String BUILD_TYPE = "release";
+    public static final String THEMOVIEDB_ORG_API_KEY = "mock";
+    public static final String TMDB_BASE_URL = System.getProperty("tmdbBaseUrl", "http://localhost:8080/3/");
+
+    private BuildConfig() {
+    }
+}
@@ -0,0 +1,172 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.utilities.LatencyTracker;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Load test of the loads of the app: {@link TMDBApi} loads against an in-process
+ * {@link MockTMDBServer}, with the percentiles of their latencies from {@link TMDBApi#start} to
+ * the delivery of the complete page (or of the failure) to the listener, i.e. the time that the
+ * app waits for a page, including the rate limiter, the retries, the hedged requests and the
+ * parsing.
+ *
+ * The loads run on a stand-in of the main thread (see android.os.Looper of this module) and start
+ * at a fixed rate ("open loop"), whether the earlier loads have completed or not, so a slow load
+ * does not hold back the loads after it and hide their latencies. The loads cycle through the
+ * pages of both sort orders.
+ * Note: The percentiles are those of the last LatencyTracker.MAX_SAMPLES loads.
+ *
+ * Options:
+ * --requests N          The number of loads (default 200).
+ * --rate N              The loads started per second (default 2.5, under the 3.5 requests per
+ *                       second of the rate limiter of the app).
+ * --pages N             The loads cycle through this many pages of every sort order (default 10).
+ * --resilience on|off   The retries, the hedged requests and the deadline of the loads (default
+ *                       on; see TMDBApi#setResilient). The rate limiter is always on.
+ * The options of the {@link MockTMDBServer} (e.g. --latency-ms, --jitter-ms, --error-rate,
+ * --truncate-rate, --seed), except --host and --port: the server listens on a free local port.
+ *
+ * E.g. ./gradlew :mockserver:appLoadTest -Pargs="--requests 500 --latency-ms 150 --jitter-ms 100"
+ *
+ * Results of the example (JDK 17): p50 = 207 ms, p90 = 245 ms, p95 = 250 ms, p99 = 258 ms,
+ * max = 266 ms, no failures; the server latency is 150 - 250 ms, so a load adds a few milliseconds
+ * (parsing, the hops to the main thread) when the limiter has tokens.
+ *
+ * Results with the resilience on and off (500 loads each, --latency-ms 150, JDK 17; the p99 of all
+ * the loads, and the failed loads):
+ * Faults                                      On                    Off
+ * --jitter-ms 100                             258 ms, 0 failed      258 ms, 0 failed
+ * --jitter-ms 1000                            1144 ms, 0 failed     1147 ms, 0 failed
+ * --jitter-ms 100 --error-rate 0.1            684 ms, 0 failed      253 ms, 48 failed
+ * --jitter-ms 100 --truncate-rate 0.1         691 ms, 0 failed      260 ms, 44 failed
+ * --jitter-ms 1000 --error-rate 0.1
+ *   --truncate-rate 0.1                       2842 ms, 5 failed     1141 ms, 96 failed
+ * The retries turn the failed loads into successful ones that take a second request (and a
+ * backoff), so the p99 grows while the failures almost vanish; without them a failed load
+ * completes early, which keeps the p99 low but leaves the user without the page. The hedged
+ * request does not shorten the tail of a bounded (uniform) jitter.
+ */
+public final class AppLoadTest {
+
+    private static final String[] SORT_ORDERS = {TMDBApi.SORT_ORDER_MOST_POPULAR, TMDBApi.SORT_ORDER_TOP_RATED};
+
+    /* The loads start, and complete, on the main thread of the app */
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private AppLoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int requests = 200;
+        double rate = 2.5;
+        int pages = 10;
+        boolean resilient = true;
+        List<String> serverArgs = new ArrayList<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--requests":
+                    requests = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--pages":
+                    pages = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--resilience":
+                    resilient = "on".equals(args[i + 1]);
+                    break;
+                default:
+                    serverArgs.add(args[i]);
+                    serverArgs.add(args[i + 1]);
+            }
+        }
+        ServerOptions options = ServerOptions.parse(serverArgs.toArray(new String[serverArgs.size()]));
+        MockWebServer server = new MockWebServer();
+        ReplayDispatcher dispatcher = new ReplayDispatcher(options);
+        server.setDispatcher(dispatcher);
+        server.start(InetAddress.getByName("127.0.0.1"), 0);
+        /* The base URL of the HTTP stack of the app, before its first load (see BuildConfig) */
+        System.setProperty("tmdbBaseUrl", server.url("/3/").toString());
+        TMDBApi.setResilient(resilient);
+        System.out.println("Loads = " + requests + " at " + rate + "/s ~ Resilience = " + (resilient ? "on" : "off")
+                + " ~ Faults: " + options);
+
+        /* A load that is not measured, to create the HTTP stack and load the classes of the load path */
+        final LatencyTracker warmUpTracker = new LatencyTracker("Warm-up");
+        final CountDownLatch warmedUp = new CountDownLatch(1);
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                load(SORT_ORDERS[0], 1, warmUpTracker, warmUpTracker, warmedUp);
+            }
+        });
+        warmedUp.await();
+
+        final LatencyTracker tracker = new LatencyTracker("TMDBApi loads");
+        /* A failed load may complete early (e.g. without a retry), so the successful ones on their own too */
+        final LatencyTracker successTracker = new LatencyTracker("Successful loads");
+        final CountDownLatch done = new CountDownLatch(requests);
+        long intervalMs = Math.round(1000 / rate);
+        long startTime = System.nanoTime();
+        for (int n = 0; n < requests; n++) {
+            final String sortOrder = SORT_ORDERS[n % SORT_ORDERS.length];
+            final int page = 1 + (n / SORT_ORDERS.length) % pages;
+            sMainHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    load(sortOrder, page, tracker, successTracker, done);
+                }
+            }, n * intervalMs);
+        }
+        done.await();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        System.out.println(tracker.summary());
+        System.out.println(successTracker.summary());
+        System.out.println(String.format(Locale.US, "Throughput = %.2f loads/s", requests * 1000.0 / Math.max(elapsedMs, 1)));
+        System.out.println("Rate limiter: " + TMDBApi.getLimiterStats());
+        System.out.println("Server: " + dispatcher.stats());
+        server.shutdown();
+        /* The threads of the HTTP stack of the app are not daemons */
+        System.exit(0);
+    }
+
+    /**
+     * Method to start a load on the main thread, and record its latency when it completes.
+     */
+    private static void load(String sortOrder, int page, final LatencyTracker tracker,
+                             final LatencyTracker successTracker, final CountDownLatch done) {
+        final long startTime = SystemClock.elapsedRealtime();
+        new TMDBApi(new TMDBApi.AsyncTaskCompleteListener<MoviePage>() {
+            @Override
+            public void onTaskComplete(MoviePage result) {
+                /* The batches of a page that is still parsed are not its result */
+                if (result != null && result.isPartial()) {
+                    return;
+                }
+                long latency = SystemClock.elapsedRealtime() - startTime;
+                tracker.record(latency, result != null);
+                if (result != null) {
+                    successTracker.record(latency, true);
+                }
+                done.countDown();
+            }
+        }).start(sortOrder, page);
+    }
+}
@@ -0,0 +1,262 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import net.bplaced.esigala1.popularmovies.model.Movie;
+import net.bplaced.esigala1.popularmovies.model.MoviePage;
+import net.bplaced.esigala1.popularmovies.model.MovieStore;
+import net.bplaced.esigala1.popularmovies.utilities.TMDBApi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput benchmark of a multi-page fetch against a (mock) server, through the load path of the
+ * app: every page is a {@link TMDBApi} load, so its requests go through the rate limiter of the
+ * process (bursts of 10 requests, 3.5 requests per second), with the retries, the hedged requests
+ * and the streaming parser of the app, on a stand-in of the main thread (see android.os.Looper of
+ * this module).
+ *
+ * The same pages are fetched serially (one load in flight) and with a window of loads in flight,
+ * and the wall times are compared. As in PageFetchEngine, the pages are delivered in the order of
+ * the requests, and their movies are merged into a {@link MovieStore}, de-duplicated by their id.
+ * The engine itself needs the MovieRepository (a Context and its disk cache), so its window and
+ * its merge are repeated here (see {@link Fetch}).
+ *
+ * Every round starts with a full bucket of the limiter (after a pause), as a fetch after an idle
+ * period does. With more pages than the burst of the limiter, both modes are bound by its rate
+ * rather than by the latency of the server, so the speedup shrinks accordingly. The first round of
+ * each mode warms up the connections and is not counted.
+ *
+ * Options:
+ * --base-url URL        The base URL of the API (default "http://localhost:8080/3/").
+ * --pages N             The pages of every sort order (default 10).
+ * --sort-orders LIST    The comma separated sort orders (default "popular").
+ * --in-flight N         The pages in flight of the parallel mode (default 4, the default of the app).
+ * --rounds N            The measured rounds of each mode (default 5).
+ *
+ * E.g. with "--latency-ms 150 --jitter-ms 100" on the mock server:
+ * ./gradlew :mockserver:fetchBenchmark -Pargs="--pages 10 --sort-orders popular,top_rated"
+ *
+ * Results of the example (20 pages, JDK 17): serial median = 4891 ms, parallel median = 3028 ms,
+ * i.e. a speedup of 1.62x. The parallel fetch sends the first 10 pages in a burst and then waits
+ * for the limiter (10 pages at 3.5 per second, about 2.9 s). The same requests as raw HTTP calls,
+ * without the limiter, took 4847 ms and 1255 ms (3.86x), which overstates the speedup of the app.
+ */
+public final class FetchBenchmark {
+
+    /* The pause before every round, to refill the bucket of the limiter (10 tokens at 3.5 per second) */
+    private static final long BUCKET_REFILL_MS = 3000;
+
+    /* The loads start, and complete, on the main thread of the app */
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private FetchBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = "http://localhost:8080/3/";
+        int pages = 10;
+        String[] sortOrders = {TMDBApi.SORT_ORDER_MOST_POPULAR};
+        int inFlight = 4;
+        int rounds = 5;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--base-url":
+                    baseUrl = args[i + 1];
+                    break;
+                case "--pages":
+                    pages = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--sort-orders":
+                    sortOrders = args[i + 1].split(",");
+                    break;
+                case "--in-flight":
+                    inFlight = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        /* The base URL of the HTTP stack of the app, before its first load (see BuildConfig) */
+        System.setProperty("tmdbBaseUrl", baseUrl);
+
+        /* Page by page, as the app requests them (the first pages of all the sort orders first) */
+        List<PageRequest> requests = new ArrayList<>();
+        for (int page = 1; page <= pages; page++) {
+            for (String sortOrder : sortOrders) {
+                requests.add(new PageRequest(sortOrder, page));
+            }
+        }
+
+        System.out.println("Pages = " + requests.size() + " ~ Rounds = " + rounds);
+        long[] serial = measure(requests, 1, rounds);
+        long[] parallel = measure(requests, inFlight, rounds);
+        System.out.println(String.format(Locale.US, "Speedup (median) = %.2fx", (double) median(serial) / Math.max(median(parallel), 1)));
+        System.out.println(TMDBApi.getLoadLatency().summary());
+        System.out.println("Rate limiter: " + TMDBApi.getLimiterStats());
+        /* The threads of the HTTP stack of the app are not daemons */
+        System.exit(0);
+    }
+
+    /**
+     * @return the wall times (in milliseconds) of the measured rounds of fetching all the pages
+     * with the given number of pages in flight.
+     */
+    private static long[] measure(List<PageRequest> requests, int inFlight, int rounds)
+            throws InterruptedException, IOException {
+        long[] times = new long[rounds];
+        Fetch fetch = null;
+        for (int round = -1; round < rounds; round++) {
+            Thread.sleep(BUCKET_REFILL_MS);
+            long startTime = System.nanoTime();
+            final Fetch roundFetch = new Fetch(requests, inFlight);
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    roundFetch.start();
+                }
+            });
+            roundFetch.done.await();
+            if (roundFetch.movies.size() == 0) {
+                throw new IOException("No page was fetched from " + System.getProperty("tmdbBaseUrl"));
+            }
+            if (round >= 0) {
+                times[round] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            }
+            fetch = roundFetch;
+        }
+        String mode = inFlight == 1 ? "Serial (1 in flight)" : "Parallel (" + inFlight + " in flight)";
+        long median = median(times);
+        System.out.println(String.format(Locale.US,
+                "%s: median = %d ms ~ best = %d ms ~ %.1f pages/s ~ Movies (merged) = %d ~ Failed pages = %d",
+                mode, median, min(times), requests.size() * 1000.0 / Math.max(median, 1),
+                fetch.movies.size(), fetch.failures));
+        return times;
+    }
+
+    /**
+     * A page of a sort order to fetch.
+     */
+    private static final class PageRequest {
+
+        final String sortOrder;
+        final int page;
+
+        PageRequest(String sortOrder, int page) {
+            this.sortOrder = sortOrder;
+            this.page = page;
+        }
+    }
+
+    /**
+     * A fetch of the pages as PageFetchEngine does it: at most "maxInFlight" loads at a time, the
+     * next one started as soon as one completes, the pages delivered in the order of the requests,
+     * and their movies merged once by their id.
+     *
+     * Note: All the methods are called on the main thread, except the wait for {@link #done}.
+     */
+    private static final class Fetch {
+
+        private final List<PageRequest> requests;
+        private final int maxInFlight;
+
+        /* The settled pages by the index of their request, until they are delivered */
+        private final MoviePage[] pages;
+        private final boolean[] settled;
+
+        private int nextToStart;
+        private int nextToDeliver;
+        private int inFlight;
+
+        /* The merged movies, the ids that they include, and the requests without a page */
+        final MovieStore movies = new MovieStore();
+        private final Set<Integer> movieIds = new HashSet<>();
+        int failures;
+
+        /* Released after the last page */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Fetch(List<PageRequest> requests, int maxInFlight) {
+            this.requests = requests;
+            this.maxInFlight = Math.max(maxInFlight, 1);
+            this.pages = new MoviePage[requests.size()];
+            this.settled = new boolean[requests.size()];
+        }
+
+        void start() {
+            while (inFlight < maxInFlight && nextToStart < requests.size()) {
+                final int index = nextToStart++;
+                PageRequest request = requests.get(index);
+                inFlight++;
+                new TMDBApi(new TMDBApi.AsyncTaskCompleteListener<MoviePage>() {
+                    @Override
+                    public void onTaskComplete(MoviePage page) {
+                        /* The batches of a page that is still parsed are not its result */
+                        if (page == null || !page.isPartial()) {
+                            onPageSettled(index, page);
+                        }
+                    }
+                }).start(request.sortOrder, request.page);
+            }
+        }
+
+        private void onPageSettled(int index, MoviePage page) {
+            inFlight--;
+            pages[index] = page;
+            settled[index] = true;
+            start();
+            while (nextToDeliver < requests.size() && settled[nextToDeliver]) {
+                MoviePage delivered = pages[nextToDeliver];
+                pages[nextToDeliver++] = null;
+                if (delivered == null) {
+                    failures++;
+                } else {
+                    merge(delivered.getMovies());
+                }
+            }
+            if (nextToDeliver == requests.size()) {
+                done.countDown();
+            }
+        }
+
+        private void merge(Movie[] pageMovies) {
+            if (pageMovies == null) {
+                return;
+            }
+            Movie[] unique = new Movie[pageMovies.length];
+            int count = 0;
+            for (Movie movie : pageMovies) {
+                if (movieIds.add(movie.getId())) {
+                    unique[count++] = movie;
+                }
+            }
+            movies.append(count == pageMovies.length ? unique : Arrays.copyOf(unique, count));
+        }
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = Arrays.copyOf(times, times.length);
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long min(long[] times) {
+        long min = Long.MAX_VALUE;
+        for (long time : times) {
+            min = Math.min(min, time);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,104 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import net.bplaced.esigala1.popularmovies.utilities.LatencyTracker;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Load test of a (mock) server: concurrent list requests, with the percentiles of their latencies
+ * from the request to the last byte of the body (i.e. the time of the app to get a whole page).
+ * Note: The percentiles are those of the last LatencyTracker.MAX_SAMPLES requests.
+ * Note: The requests are raw HTTP calls, so this measures the server (and the connections) only;
+ * {@link AppLoadTest} measures the loads of the app (TMDBApi) against the same server.
+ *
+ * Options:
+ * --base-url URL        The base URL of the API (default "http://localhost:8080/3/").
+ * --requests N          The number of requests (default 1000).
+ * --concurrency N       The number of requests in flight (default 8).
+ * --pages N             The requests cycle through this many pages of every sort order (default 10).
+ */
+public final class LoadTest {
+
+    private static final String[] SORT_ORDERS = {"popular", "top_rated"};
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = "http://localhost:8080/3/";
+        int requests = 1000;
+        int concurrency = 8;
+        int pages = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--base-url":
+                    baseUrl = args[i + 1];
+                    break;
+                case "--requests":
+                    requests = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--pages":
+                    pages = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        final OkHttpClient client = new OkHttpClient.Builder()
+                .readTimeout(20, TimeUnit.SECONDS)
+                .build();
+        final LatencyTracker tracker = new LatencyTracker("Load test");
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(requests);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int n = next.getAndIncrement();
+            final String url = baseUrl + "movie/" + SORT_ORDERS[n % SORT_ORDERS.length]
+                    + "?api_key=mock&page=" + (1 + (n / SORT_ORDERS.length) % pages);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long requestStart = System.nanoTime();
+                    boolean success = false;
+                    try {
+                        Response response = client.newCall(new Request.Builder().url(url).build()).execute();
+                        try {
+                            /* Read the whole body, as the parser of the app does */
+                            response.body().bytes();
+                            success = response.isSuccessful();
+                        } finally {
+                            response.close();
+                        }
+                    } catch (IOException e) {
+                        success = false;
+                    }
+                    tracker.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStart), success);
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        System.out.println(tracker.summary());
+        System.out.println("Throughput = " + (requests * 1000L / Math.max(elapsedMs, 1)) + " requests/s");
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+}
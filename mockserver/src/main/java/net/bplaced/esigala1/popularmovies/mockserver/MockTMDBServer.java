@@ -0,0 +1,47 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Local stand-in of The Movie Database API, that replays the recorded "movie/popular" and
+ * "movie/top_rated" pages (see {@link PageRecorder}) with injected latency and faults.
+ *
+ * Options:
+ * --host, --port        The address to listen on (default 0.0.0.0:8080).
+ * --recordings DIR      The directory of the recorded pages (default "recordings").
+ * --latency-ms, --jitter-ms
+ *                       The delay of every response, plus a random delay of up to the jitter.
+ * --throttle-kbps       The download speed of the bodies in kilobits per second (default off).
+ * --error-rate          The fraction (0 - 1) of the responses that fail with "503".
+ * --truncate-rate       The fraction (0 - 1) of the bodies that are cut in the middle.
+ * --rate-limit N        Answer "429" with a "Retry-After" beyond N requests per 10 seconds
+ *                       (default off); the number of "429" responses is reported on exit.
+ * --max-age             The "Cache-Control: max-age" of the responses (default 0).
+ * --seed                The seed of the random latencies and faults (default 1).
+ *
+ * The app uses the server when it is built with its URL, e.g. on an emulator:
+ * ./gradlew :app:installDebug -PtmdbBaseUrl=http://10.0.2.2:8080/3/
+ */
+public final class MockTMDBServer {
+
+    private MockTMDBServer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        ServerOptions options = ServerOptions.parse(args);
+        MockWebServer server = new MockWebServer();
+        ReplayDispatcher dispatcher = new ReplayDispatcher(options);
+        server.setDispatcher(dispatcher);
+        server.start(InetAddress.getByName(options.host), options.port);
+        System.out.println("Mock TMDB server listening on " + server.url("/3/"));
+        System.out.println("Recordings: " + options.recordingsDir.getAbsolutePath());
+        System.out.println("Faults: " + options);
+        System.out.println("Press Enter to stop.");
+        System.in.read();
+        server.shutdown();
+        System.out.println(dispatcher.stats());
+    }
+}
@@ -0,0 +1,76 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Recorder of the pages of the live API, for the {@link MockTMDBServer} to replay.
+ *
+ * Options:
+ * --api-key KEY         The API key of "themoviedb.org" (required).
+ * --pages N             The number of pages to record of every sort order (default 5).
+ * --recordings DIR      The directory to write the pages to (default "recordings").
+ */
+public final class PageRecorder {
+
+    private static final String BASE_URL = "https://api.themoviedb.org/3/";
+    private static final String[] SORT_ORDERS = {"popular", "top_rated"};
+
+    private PageRecorder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String apiKey = null;
+        int pages = 5;
+        File recordingsDir = new File("recordings");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--api-key":
+                    apiKey = args[i + 1];
+                    break;
+                case "--pages":
+                    pages = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--recordings":
+                    recordingsDir = new File(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (apiKey == null) {
+            throw new IllegalArgumentException("Missing --api-key");
+        }
+
+        OkHttpClient client = new OkHttpClient();
+        for (String sortOrder : SORT_ORDERS) {
+            File dir = new File(recordingsDir, sortOrder);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            for (int page = 1; page <= pages; page++) {
+                HttpUrl url = HttpUrl.parse(BASE_URL + "movie/" + sortOrder).newBuilder()
+                        .addQueryParameter("api_key", apiKey)
+                        .addQueryParameter("page", String.valueOf(page))
+                        .build();
+                Response response = client.newCall(new Request.Builder().url(url).build()).execute();
+                try {
+                    if (!response.isSuccessful()) {
+                        throw new IOException("HTTP " + response.code() + " for " + sortOrder + " page " + page);
+                    }
+                    File file = new File(dir, "page_" + page + ".json");
+                    Files.write(file.toPath(), response.body().bytes());
+                    System.out.println("Recorded " + file);
+                } finally {
+                    response.close();
+                }
+            }
+        }
+    }
+}
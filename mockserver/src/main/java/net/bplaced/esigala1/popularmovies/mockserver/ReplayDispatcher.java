@@ -0,0 +1,195 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Dispatcher of the {@link MockTMDBServer}, that answers the list requests of the app
+ * ("/3/movie/{sort_order}?page=N") with the recorded pages, with the configured latency and faults.
+ *
+ * A recorded page is read from "{recordings}/{sort_order}/page_{N}.json". A page that was not
+ * recorded is generated (see {@link SyntheticPages}), so the server also works without any
+ * recording. Every page gets an ETag of its content, and a conditional request with that ETag is
+ * answered with "304 Not Modified", as the live API does.
+ *
+ * With a rate limit, the requests beyond the limit in the sliding window are answered with
+ * "429 Too Many Requests" and a "Retry-After" header (in seconds), as the live API does; the
+ * number of these responses shows whether a client kept under the limit (see {@link #stats()}).
+ */
+class ReplayDispatcher extends Dispatcher {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String PATH_PREFIX = "/3/movie/";
+
+    /* The error body of the API for a resource that does not exist */
+    private static final String NOT_FOUND_BODY =
+            "{\"status_code\":34,\"status_message\":\"The resource you requested could not be found.\"}";
+
+    private final ServerOptions options;
+    private final Random random;
+
+    /* The arrival times of the requests within the rate limit window (System.nanoTime() in ms) */
+    private final ArrayDeque<Long> recentRequests = new ArrayDeque<>();
+
+    /* The number of the requests, and of the ones that were answered with "429" */
+    private long requestCount;
+    private long rateLimitedCount;
+
+    /* The pages that were already read or generated, keyed by "{sort_order}/{page}" */
+    private final Map<String, String> pages = new HashMap<>();
+
+    ReplayDispatcher(ServerOptions options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        String path = request.getPath();
+        int queryStart = path.indexOf('?');
+        String endpoint = queryStart >= 0 ? path.substring(0, queryStart) : path;
+        Map<String, String> query = parseQuery(queryStart >= 0 ? path.substring(queryStart + 1) : "");
+
+        if (!endpoint.startsWith(PATH_PREFIX)) {
+            return new MockResponse().setResponseCode(404).setBody(NOT_FOUND_BODY);
+        }
+        /* Rate limited request (answered at once, as the live API does) */
+        long retryAfterSeconds = admit();
+        if (retryAfterSeconds > 0) {
+            return new MockResponse().setResponseCode(429)
+                    .setHeader("Retry-After", retryAfterSeconds)
+                    .setBody("{\"status_code\":25,\"status_message\":\"Your request count is over the allowed limit.\"}");
+        }
+
+        String sortOrder = endpoint.substring(PATH_PREFIX.length());
+        int page = query.containsKey("page") ? Integer.parseInt(query.get("page")) : 1;
+
+        /* The latency before the headers (this thread serves only this connection) */
+        Thread.sleep(nextLatency());
+
+        /* Injected server error */
+        if (nextFault() < options.errorRate) {
+            return new MockResponse().setResponseCode(503)
+                    .setBody("{\"status_code\":11,\"status_message\":\"Internal error.\"}");
+        }
+
+        String body;
+        try {
+            body = readPage(sortOrder, page);
+        } catch (IOException e) {
+            return new MockResponse().setResponseCode(500).setBody(e.toString());
+        }
+        if (body == null) {
+            return new MockResponse().setResponseCode(404).setBody(NOT_FOUND_BODY);
+        }
+
+        String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+        String cacheControl = "public, max-age=" + options.maxAgeSeconds;
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            return new MockResponse().setResponseCode(304)
+                    .setHeader("ETag", etag)
+                    .setHeader("Cache-Control", cacheControl);
+        }
+
+        MockResponse response = new MockResponse()
+                .setHeader("Content-Type", "application/json;charset=utf-8")
+                .setHeader("ETag", etag)
+                .setHeader("Cache-Control", cacheControl)
+                .setBody(body);
+        if (options.throttleBytesPerSecond > 0) {
+            /* Sent in chunks of 1/10 of a second */
+            response.throttleBody(Math.max(options.throttleBytesPerSecond / 10, 1), 100, TimeUnit.MILLISECONDS);
+        }
+        /* Injected truncated body: the connection is closed in the middle of the body */
+        if (nextFault() < options.truncateRate) {
+            response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+        return response;
+    }
+
+    /**
+     * @return the body of the page: the recorded one, else a generated one, or null if the
+     * sort order is not known.
+     */
+    private synchronized String readPage(String sortOrder, int page) throws IOException {
+        String key = sortOrder + "/" + page;
+        String body = pages.get(key);
+        if (body == null) {
+            File file = new File(new File(options.recordingsDir, sortOrder), "page_" + page + ".json");
+            if (file.isFile()) {
+                body = new String(Files.readAllBytes(file.toPath()), UTF_8);
+            } else {
+                body = SyntheticPages.page(sortOrder, page);
+            }
+            if (body != null) {
+                pages.put(key, body);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Method to count a request against the rate limit.
+     *
+     * @return 0 if the request is within the limit, else the seconds until the next request
+     * would be (i.e. its "Retry-After").
+     */
+    private synchronized long admit() {
+        requestCount++;
+        if (options.rateLimit <= 0) {
+            return 0;
+        }
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        while (!recentRequests.isEmpty() && recentRequests.peekFirst() <= now - ServerOptions.RATE_LIMIT_WINDOW_MS) {
+            recentRequests.pollFirst();
+        }
+        if (recentRequests.size() >= options.rateLimit) {
+            rateLimitedCount++;
+            long waitMs = recentRequests.peekFirst() + ServerOptions.RATE_LIMIT_WINDOW_MS - now;
+            return Math.max((waitMs + 999) / 1000, 1);
+        }
+        /* Only the admitted requests count, so a client that honours the Retry-After gets through */
+        recentRequests.addLast(now);
+        return 0;
+    }
+
+    /**
+     * @return the number of the requests so far, and of the ones that were rate limited.
+     */
+    synchronized String stats() {
+        return "Requests = " + requestCount + " ~ Rate limited (429) = " + rateLimitedCount;
+    }
+
+    private synchronized long nextLatency() {
+        long jitter = options.jitterMs > 0 ? (long) (random.nextDouble() * options.jitterMs) : 0;
+        return options.latencyMs + jitter;
+    }
+
+    private synchronized double nextFault() {
+        return random.nextDouble();
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,100 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import java.io.File;
+
+/**
+ * The command line options of the {@link MockTMDBServer}.
+ */
+class ServerOptions {
+
+    String host = "0.0.0.0";
+    int port = 8080;
+    File recordingsDir = new File("recordings");
+
+    /* The delay of every response before its headers, and its random (uniform) extra delay */
+    long latencyMs;
+    long jitterMs;
+
+    /* The download speed of every response body; 0 for no throttling */
+    long throttleBytesPerSecond;
+
+    /* The fractions (0 - 1) of the responses that fail with a 503, or whose body is cut in half */
+    double errorRate;
+    double truncateRate;
+
+    /* The rate limit of the API: the requests per RATE_LIMIT_WINDOW_MS; 0 for no limit */
+    static final long RATE_LIMIT_WINDOW_MS = 10000;
+    int rateLimit;
+
+    /* The "Cache-Control: max-age" of the responses */
+    int maxAgeSeconds;
+
+    /* The seed of the random latencies and faults, for repeatable runs */
+    long seed = 1;
+
+    /**
+     * Method to parse the command line options.
+     *
+     * @throws IllegalArgumentException if an option is unknown or has no valid value.
+     */
+    static ServerOptions parse(String[] args) {
+        ServerOptions options = new ServerOptions();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing the value of " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--host":
+                    options.host = value;
+                    break;
+                case "--port":
+                    options.port = Integer.parseInt(value);
+                    break;
+                case "--recordings":
+                    options.recordingsDir = new File(value);
+                    break;
+                case "--latency-ms":
+                    options.latencyMs = Long.parseLong(value);
+                    break;
+                case "--jitter-ms":
+                    options.jitterMs = Long.parseLong(value);
+                    break;
+                case "--throttle-kbps":
+                    options.throttleBytesPerSecond = Long.parseLong(value) * 1000 / 8;
+                    break;
+                case "--error-rate":
+                    options.errorRate = Double.parseDouble(value);
+                    break;
+                case "--truncate-rate":
+                    options.truncateRate = Double.parseDouble(value);
+                    break;
+                case "--rate-limit":
+                    options.rateLimit = Integer.parseInt(value);
+                    break;
+                case "--max-age":
+                    options.maxAgeSeconds = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    options.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "latency = " + latencyMs + " ms (+0-" + jitterMs + " ms)"
+                + " ~ throttle = " + (throttleBytesPerSecond > 0 ? throttleBytesPerSecond + " B/s" : "off")
+                + " ~ 5xx = " + errorRate + " ~ truncated = " + truncateRate
+                + " ~ rate limit = " + (rateLimit > 0 ? rateLimit + " per " + RATE_LIMIT_WINDOW_MS / 1000 + " s" : "off")
+                + " ~ max-age = " + maxAgeSeconds + " s ~ seed = " + seed;
+    }
+}
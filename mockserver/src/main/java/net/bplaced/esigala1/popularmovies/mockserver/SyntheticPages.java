@@ -0,0 +1,80 @@
+package net.bplaced.esigala1.popularmovies.mockserver;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generator of list pages with the structure and the field lengths of The Movie Database API
+ * responses, for the pages that were not recorded. A page is the same on every call.
+ */
+final class SyntheticPages {
+
+    /* The sort orders (endpoints) of the app, and the number of their pages */
+    private static final String[] SORT_ORDERS = {"popular", "top_rated"};
+    private static final int TOTAL_PAGES = 500;
+    private static final int PAGE_SIZE = 20;
+
+    private static final String OVERVIEW = "A former soldier returns home to find that the city he "
+            + "once protected has fallen under the control of a ruthless syndicate. With the help of "
+            + "an unlikely ally, he sets out to uncover the truth behind the disappearance of his "
+            + "brother, only to discover a conspiracy that reaches the highest levels of power.";
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private SyntheticPages() {
+    }
+
+    /**
+     * @return the page (JSON) of the sort order, or null if the sort order or the page does not exist.
+     */
+    static String page(String sortOrder, int page) {
+        int sortIndex = -1;
+        for (int i = 0; i < SORT_ORDERS.length; i++) {
+            if (SORT_ORDERS[i].equals(sortOrder)) {
+                sortIndex = i;
+            }
+        }
+        if (sortIndex < 0 || page < 1 || page > TOTAL_PAGES) {
+            return null;
+        }
+        Random random = new Random(31L * sortIndex + page);
+        StringBuilder json = new StringBuilder(PAGE_SIZE * 900);
+        json.append("{\"page\":").append(page)
+                .append(",\"total_results\":").append(TOTAL_PAGES * PAGE_SIZE)
+                .append(",\"total_pages\":").append(TOTAL_PAGES)
+                .append(",\"results\":[");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            /* The ids are unique across the pages of a sort order */
+            int id = 100000 + (sortIndex * TOTAL_PAGES + page - 1) * PAGE_SIZE + i;
+            json.append("{\"vote_count\":").append(random.nextInt(10000))
+                    .append(",\"id\":").append(id)
+                    .append(",\"video\":false")
+                    .append(",\"vote_average\":").append(String.format(Locale.US, "%.1f", random.nextDouble() * 10))
+                    .append(",\"title\":\"Movie Title ").append(id).append('"')
+                    .append(",\"popularity\":").append(String.format(Locale.US, "%.6f", random.nextDouble() * 500))
+                    .append(",\"poster_path\":\"/").append(fileName(random)).append(".jpg\"")
+                    .append(",\"original_language\":\"en\"")
+                    .append(",\"original_title\":\"Movie Title ").append(id).append('"')
+                    .append(",\"genre_ids\":[28,12,878]")
+                    .append(",\"backdrop_path\":\"/").append(fileName(random)).append(".jpg\"")
+                    .append(",\"adult\":false")
+                    .append(",\"overview\":\"").append(OVERVIEW).append('"')
+                    .append(",\"release_date\":\"").append(1990 + random.nextInt(29)).append('-')
+                    .append(String.format(Locale.US, "%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)))
+                    .append("\"}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    private static String fileName(Random random) {
+        char[] name = new char[27];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(name);
+    }
+}